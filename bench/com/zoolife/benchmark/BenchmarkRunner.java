@@ -0,0 +1,211 @@
+package com.zoolife.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A small, dependency-free benchmark harness. Each benchmark is run for a
+ * number of warmup iterations (whose results are discarded) followed by a
+ * number of measurement iterations, each of which calls the benchmarked
+ * operation repeatedly for a fixed amount of time. The score of a benchmark is
+ * its mean throughput in operations per second.
+ * <p>
+ * The results can be written as a JSON array whose layout follows the one of
+ * JMH's JSON output (benchmark, params, mode, and primaryMetric with score,
+ * scoreError, scoreUnit, and rawData), so runs can be compared with the same
+ * tools.
+ *
+ * @see com.zoolife.benchmark.ZooBenchmarks
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public final class BenchmarkRunner {
+
+	/**
+	 * A benchmarked operation
+	 */
+	public interface Operation {
+		/**
+		 * Performs the operation once
+		 *
+		 * @return any value derived from the operation's result, which the
+		 *         harness consumes so that the JIT compiler cannot eliminate
+		 *         the operation
+		 */
+		long run();
+	}
+
+	private static final long BATCH_NANOS = 1000000L; // Time between clock reads
+	private static final double Z_99_9 = 3.29; // Two-sided 99.9% normal quantile
+
+	private long iterationNanos;
+	private int measurementIterations;
+	private List<String> results;
+	private volatile long sink; // Consumes the operations' results
+	private int warmupIterations;
+
+	/**
+	 * @param warmupIterations
+	 *            the number of (discarded) warmup iterations
+	 * @param measurementIterations
+	 *            the number of measured iterations
+	 * @param iterationMillis
+	 *            the duration of each iteration in milliseconds
+	 *
+	 * @throws IllegalArgumentException
+	 *             if warmupIterations is negative or if measurementIterations or
+	 *             iterationMillis is not positive
+	 */
+	public BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationMillis) {
+		if (warmupIterations < 0)
+			throw new IllegalArgumentException("The number of warmup iterations must be >= 0!");
+		if (measurementIterations <= 0)
+			throw new IllegalArgumentException("The number of measurement iterations must be > 0!");
+		if (iterationMillis <= 0)
+			throw new IllegalArgumentException("The iteration duration must be > 0!");
+		this.warmupIterations = warmupIterations;
+		this.measurementIterations = measurementIterations;
+		this.iterationNanos = iterationMillis * 1000000L;
+		this.results = new ArrayList<String>();
+	}
+
+	/**
+	 * Records the results of another runner, e.g. of one in a forked JVM
+	 *
+	 * @param path
+	 *            the JSON file written by the writeJson() of the other runner
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read, or does not hold a JSON array
+	 */
+	public void addResults(Path path) throws IOException {
+		String json = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+		if (!json.startsWith("[") || !json.endsWith("]"))
+			throw new IOException(path + " does not hold benchmark results");
+		String results = json.substring(1, json.length() - 1).trim();
+		if (!results.isEmpty())
+			this.results.add("  " + results);
+	}
+
+	/**
+	 * Runs a benchmark, prints its score, and records its result
+	 *
+	 * @param benchmark
+	 *            the name of the benchmark
+	 * @param params
+	 *            the parameters of this run (e.g. the zoo size)
+	 * @param operation
+	 *            the benchmarked operation
+	 */
+	public void run(String benchmark, Map<String, String> params, Operation operation) {
+		for (int i = 0; i < this.warmupIterations; i++) {
+			runIteration(operation);
+		}
+
+		double[] scores = new double[this.measurementIterations];
+		double sum = 0;
+		for (int i = 0; i < this.measurementIterations; i++) {
+			scores[i] = runIteration(operation);
+			sum += scores[i];
+		}
+		double mean = sum / scores.length;
+		double squares = 0;
+		for (double score : scores) {
+			squares += (score - mean) * (score - mean);
+		}
+		double error = (scores.length < 2) ? Double.NaN
+				: (Z_99_9 * Math.sqrt(squares / (scores.length - 1))) / Math.sqrt(scores.length);
+
+		System.out.printf("%-40s %-30s %16.3f +- %12.3f ops/s%n", benchmark, params, mean, error);
+		this.results.add(toJson(benchmark, params, mean, error, scores));
+	}
+
+	/**
+	 * Writes the results of all the benchmarks run so far
+	 *
+	 * @param path
+	 *            the JSON file to (over)write
+	 *
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void writeJson(Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writer.write("[\n");
+			for (int i = 0; i < this.results.size(); i++) {
+				writer.write(this.results.get(i));
+				writer.write((i < (this.results.size() - 1)) ? ",\n" : "\n");
+			}
+			writer.write("]\n");
+		}
+	}
+
+	private static String jsonNumber(double value) {
+		return (Double.isNaN(value) || Double.isInfinite(value)) ? "\"NaN\"" : String.valueOf(value);
+	}
+
+	private static String jsonString(String value) {
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	/*
+	 * Calls the operation for (at least) one iteration's duration, reading the
+	 * clock only once per batch of calls, and returns the throughput
+	 */
+	private double runIteration(Operation operation) {
+		long localSink = 0;
+		long operations = 0;
+		long batchSize = 1;
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			long batchStart = System.nanoTime();
+			for (long i = 0; i < batchSize; i++) {
+				localSink ^= operation.run();
+			}
+			long now = System.nanoTime();
+			operations += batchSize;
+			if ((now - batchStart) < BATCH_NANOS)
+				batchSize *= 2;
+			elapsed = now - start;
+		} while (elapsed < this.iterationNanos);
+		this.sink ^= localSink;
+		return operations / (elapsed / 1e9);
+	}
+
+	private String toJson(String benchmark, Map<String, String> params, double mean, double error,
+			double[] scores) {
+		StringBuilder json = new StringBuilder();
+		json.append("  {\n    \"benchmark\" : ").append(jsonString(benchmark)).append(",\n");
+		json.append("    \"mode\" : \"thrpt\",\n");
+		json.append("    \"warmupIterations\" : ").append(this.warmupIterations).append(",\n");
+		json.append("    \"measurementIterations\" : ").append(this.measurementIterations).append(",\n");
+		json.append("    \"params\" : {");
+		String separator = "";
+		for (Map.Entry<String, String> param : params.entrySet()) {
+			json.append(separator).append("\n      ").append(jsonString(param.getKey())).append(" : ")
+					.append(jsonString(param.getValue()));
+			separator = ",";
+		}
+		json.append("\n    },\n");
+		json.append("    \"primaryMetric\" : {\n");
+		json.append("      \"score\" : ").append(jsonNumber(mean)).append(",\n");
+		json.append("      \"scoreError\" : ").append(jsonNumber(error)).append(",\n");
+		json.append("      \"scoreUnit\" : \"ops/s\",\n");
+		json.append("      \"rawData\" : [ [ ");
+		for (int i = 0; i < scores.length; i++) {
+			json.append((i == 0) ? "" : ", ").append(jsonNumber(scores[i]));
+		}
+		json.append(" ] ]\n    }\n  }");
+		return json.toString();
+	}
+}
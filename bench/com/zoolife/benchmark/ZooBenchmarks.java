@@ -0,0 +1,354 @@
+package com.zoolife.benchmark;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.zoolife.model.Animal;
+import com.zoolife.model.Chicken;
+import com.zoolife.model.Dog;
+import com.zoolife.model.Parrot;
+import com.zoolife.model.Zoo;
+import com.zoolife.model.ZooKeeper;
+import com.zoolife.view.Viewer;
+
+/**
+ * Benchmarks of the hot paths of ZooLife: editing and querying friendships in
+ * {@link com.zoolife.model.Zoo}, building the zoo properties, simulating a day
+ * with {@link com.zoolife.model.ZooKeeper}, and rendering the zoo properties
+ * with {@link com.zoolife.view.Viewer}. Every benchmark is run for each
+ * combination of zoo size and friendship density (the mean number of friends
+ * per animal).
+ * <p>
+ * As with JMH, each benchmark is run, for each combination, in a JVM of its
+ * own (started with the same JVM options), whose results are then merged.
+ * Otherwise, the profile that the JIT compiler gathers from the benchmarks run
+ * first (e.g. at the call site of the benchmarked operations, which sees more
+ * and more of them) would change the scores of the ones run after them.
+ * <p>
+ * Usage: <code>bench/run-benchmarks.sh [options]</code> (which compiles
+ * ZooLife and the benchmarks with javac, and then runs
+ * <code>java com.zoolife.benchmark.ZooBenchmarks [options]</code>), where the
+ * options are:
+ * <ul>
+ * <li><code>--sizes 10,1000,...</code>: the zoo sizes (number of animals)</li>
+ * <li><code>--degrees 0,4,...</code>: the mean numbers of friends per
+ * animal</li>
+ * <li><code>--benchmarks name,...</code>: only run the benchmarks whose name
+ * contains one of the passed strings</li>
+ * <li><code>--warmup n</code>, <code>--iterations n</code>, and
+ * <code>--iteration-ms n</code>: the harness settings</li>
+ * <li><code>--fork false</code>: run all the benchmarks in this JVM (faster,
+ * but only fit to check that they work)</li>
+ * <li><code>--out file</code>: the JSON results file</li>
+ * <li><code>--fork-out file</code>: the JSON results file of a forked JVM,
+ * which writes it without a word (used by the forking JVM)</li>
+ * </ul>
+ *
+ * @see com.zoolife.benchmark.BenchmarkRunner
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public final class ZooBenchmarks {
+
+	private static final List<String> BENCHMARKS = Arrays.asList("Zoo.areFriends", "Zoo.addRemoveFirendship",
+			"Zoo.getZooProperties", "Viewer.displayZooProperties", "ZooKeeper.simulateOneDay"); // In run order
+	private static final int PAIRS_COUNT = 4096; // Pre-drawn random animal pairs
+
+	private List<String> benchmarkFilters;
+	private int[] degrees;
+	private int[] sizes;
+
+	private ZooBenchmarks(int[] sizes, int[] degrees, List<String> benchmarkFilters) {
+		this.sizes = sizes;
+		this.degrees = degrees;
+		this.benchmarkFilters = benchmarkFilters;
+	}
+
+	/**
+	 * @param args
+	 *            the options described in the class description
+	 */
+	public static void main(String[] args) {
+		int[] sizes = { 10, 1000, 100000, 1000000 };
+		int[] degrees = { 0, 4, 16 };
+		List<String> benchmarkFilters = new ArrayList<String>();
+		int warmup = 3;
+		int iterations = 5;
+		long iterationMillis = 1000;
+		boolean isForking = true;
+		Path out = Paths.get("zoolife-benchmarks.json");
+		Path forkOut = null;
+
+		try {
+			for (int i = 0; i < args.length; i += 2) {
+				if ((i + 1) >= args.length)
+					throw new IllegalArgumentException("Missing value of option " + args[i]);
+				String value = args[i + 1];
+				switch (args[i]) {
+				case "--sizes":
+					sizes = parseInts(value);
+					break;
+				case "--degrees":
+					degrees = parseInts(value);
+					break;
+				case "--benchmarks":
+					for (String filter : value.split(",")) {
+						benchmarkFilters.add(filter.trim());
+					}
+					break;
+				case "--warmup":
+					warmup = Integer.parseInt(value);
+					break;
+				case "--iterations":
+					iterations = Integer.parseInt(value);
+					break;
+				case "--iteration-ms":
+					iterationMillis = Long.parseLong(value);
+					break;
+				case "--fork":
+					if (!"true".equals(value) && !"false".equals(value))
+						throw new IllegalArgumentException("The value of --fork must be true or false");
+					isForking = Boolean.parseBoolean(value);
+					break;
+				case "--out":
+					out = Paths.get(value);
+					break;
+				case "--fork-out":
+					forkOut = Paths.get(value);
+					isForking = false;
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+
+		BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, iterationMillis);
+		ZooBenchmarks benchmarks = new ZooBenchmarks(sizes, degrees, benchmarkFilters);
+		try {
+			if (isForking) {
+				benchmarks.forkAll(runner, Arrays.asList("--warmup", String.valueOf(warmup), "--iterations",
+						String.valueOf(iterations), "--iteration-ms", String.valueOf(iterationMillis)));
+			} else {
+				benchmarks.runAll(runner);
+			}
+			if (forkOut != null) {
+				runner.writeJson(forkOut);
+			} else {
+				runner.writeJson(out);
+				System.out.println("Results written to " + out.toAbsolutePath());
+			}
+		} catch (IOException e) {
+			System.err.println("Cannot run the benchmarks or write their results: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static Set<Animal> buildAnimals(int size) {
+		Set<Animal> animals = new HashSet<Animal>();
+		for (int i = 0; i < size; i++) {
+			switch (i % 3) {
+			case 0:
+				animals.add(new Dog("Dog " + i, "Meat", "Hunting dog"));
+				break;
+			case 1:
+				animals.add(new Parrot("Parrot " + i, "Grain", 0.25f, (i % 2) == 0));
+				break;
+			default:
+				animals.add(new Chicken("Chicken " + i, "Corn", 0.75f, (i % 2) == 0));
+				break;
+			}
+		}
+		return animals;
+	}
+
+	/*
+	 * Builds a zoo whose friendships were all established on its first day, so
+	 * that its daily changes are empty when it is returned
+	 */
+	private static Zoo buildZoo(Animal[] animals, int meanDegree, Random random) {
+		Set<Animal> animalsSet = new HashSet<Animal>(animals.length * 2);
+		for (Animal anim : animals) {
+			animalsSet.add(anim);
+		}
+		Zoo zoo = new Zoo(animalsSet);
+		zoo.incrementDay();
+		long friendships = ((long) animals.length * meanDegree) / 2;
+		while (friendships > 0) {
+			Animal anim1 = animals[random.nextInt(animals.length)];
+			Animal anim2 = animals[random.nextInt(animals.length)];
+			if (!anim1.equals(anim2) && !zoo.areFriends(anim1, anim2)) {
+				zoo.addFirendship(anim1, anim2);
+				friendships--;
+			}
+		}
+		zoo.incrementDay();
+		return zoo;
+	}
+
+	/*
+	 * Runs each selected benchmark, for each combination of size and degree,
+	 * in a new JVM, and records its results
+	 */
+	private void forkAll(BenchmarkRunner runner, List<String> harnessOptions) throws IOException {
+		List<String> javaCommand = new ArrayList<String>();
+		javaCommand.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		javaCommand.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		javaCommand.add("-cp");
+		javaCommand.add(System.getProperty("java.class.path"));
+		javaCommand.add(ZooBenchmarks.class.getName());
+		javaCommand.addAll(harnessOptions);
+
+		Path forkOut = Files.createTempFile("zoolife-benchmark", ".json");
+		try {
+			for (int size : this.sizes) {
+				for (int degree : this.degrees) {
+					if (degree >= size)
+						continue;
+					for (String benchmark : BENCHMARKS) {
+						if (!isSelected(benchmark))
+							continue;
+						List<String> command = new ArrayList<String>(javaCommand);
+						command.addAll(Arrays.asList("--benchmarks", benchmark, "--sizes", String.valueOf(size),
+								"--degrees", String.valueOf(degree), "--fork-out", forkOut.toString()));
+						Process fork = new ProcessBuilder(command).inheritIO().start();
+						int status;
+						try {
+							status = fork.waitFor();
+						} catch (InterruptedException e) {
+							fork.destroy();
+							Thread.currentThread().interrupt();
+							throw new InterruptedIOException("Interrupted while running " + benchmark);
+						}
+						if (status != 0)
+							throw new IOException("The JVM that ran " + benchmark + " with " + size
+									+ " animals and a mean degree of " + degree + " exited with status " + status);
+						runner.addResults(forkOut);
+					}
+				}
+			}
+		} finally {
+			Files.delete(forkOut);
+		}
+	}
+
+	private static int[] parseInts(String csv) {
+		String[] parts = csv.split(",");
+		int[] values = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			values[i] = Integer.parseInt(parts[i].trim());
+		}
+		return values;
+	}
+
+	private void runAll(BenchmarkRunner runner) {
+		for (int size : this.sizes) {
+			Animal[] animals = buildAnimals(size).toArray(new Animal[size]);
+			for (int degree : this.degrees) {
+				if (degree >= size)
+					continue;
+				Map<String, String> params = new LinkedHashMap<String, String>();
+				params.put("animals", String.valueOf(size));
+				params.put("meanDegree", String.valueOf(degree));
+				runForZoo(runner, params, animals, degree);
+			}
+		}
+	}
+
+	private void runForZoo(BenchmarkRunner runner, Map<String, String> params, Animal[] animals, int degree) {
+		Random random = new Random(1234);
+		Zoo zoo = buildZoo(animals, degree, random);
+
+		// Pre-draw the pairs of (different) animals used by the friendship
+		// benchmarks, so that drawing them is not measured
+		Animal[] firsts = new Animal[PAIRS_COUNT];
+		Animal[] seconds = new Animal[PAIRS_COUNT];
+		for (int i = 0; i < PAIRS_COUNT; i++) {
+			do {
+				firsts[i] = animals[random.nextInt(animals.length)];
+				seconds[i] = animals[random.nextInt(animals.length)];
+			} while (firsts[i].equals(seconds[i]));
+		}
+		int[] next = new int[1];
+
+		if (isSelected("Zoo.areFriends")) {
+			runner.run("Zoo.areFriends", params, () -> {
+				int i = next[0]++ & (PAIRS_COUNT - 1);
+				return zoo.areFriends(firsts[i], seconds[i]) ? 1 : 0;
+			});
+		}
+
+		if (isSelected("Zoo.addRemoveFirendship")) {
+			// Toggles a friendship twice, so the network is left unchanged
+			runner.run("Zoo.addRemoveFirendship", params, () -> {
+				int i = next[0]++ & (PAIRS_COUNT - 1);
+				if (zoo.areFriends(firsts[i], seconds[i])) {
+					zoo.removeFirendship(firsts[i], seconds[i]);
+					zoo.addFirendship(firsts[i], seconds[i]);
+				} else {
+					zoo.addFirendship(firsts[i], seconds[i]);
+					zoo.removeFirendship(firsts[i], seconds[i]);
+				}
+				return i;
+			});
+		}
+
+		if (isSelected("Zoo.getZooProperties")) {
+			runner.run("Zoo.getZooProperties", params, () -> zoo.getZooProperties().size());
+		}
+
+		if (isSelected("Viewer.displayZooProperties")) {
+			Viewer viewer = new Viewer(new OutputStream() {
+				@Override
+				public void write(byte[] b, int off, int len) {
+				}
+
+				@Override
+				public void write(int b) {
+				}
+			});
+			runner.run("Viewer.displayZooProperties", params, () -> {
+				viewer.displayZooProperties(zoo);
+				return zoo.getAnimalsNumber();
+			});
+		}
+
+		if (isSelected("ZooKeeper.simulateOneDay")) {
+			// Runs last since it changes the zoo
+			ZooKeeper zKeeper = new ZooKeeper(1, 1, 1234);
+			runner.run("ZooKeeper.simulateOneDay", params, () -> {
+				zKeeper.simulateOneDay(zoo);
+				return zoo.getDayCount();
+			});
+		}
+	}
+
+	private boolean isSelected(String benchmark) {
+		if (this.benchmarkFilters.isEmpty())
+			return true;
+		for (String filter : this.benchmarkFilters) {
+			if (benchmark.contains(filter))
+				return true;
+		}
+		return false;
+	}
+}
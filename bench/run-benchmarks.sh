@@ -0,0 +1,19 @@
+#!/bin/sh
+# Compiles ZooLife and its benchmarks with the plain JDK (no network access or
+# build tool needed), and runs the benchmarks. The options are passed on to
+# com.zoolife.benchmark.ZooBenchmarks, and JAVA_OPTS to the JVM (and to the
+# JVMs that it forks, one per benchmark and combination of parameters), e.g.:
+#
+#   JAVA_OPTS=-Xmx4g bench/run-benchmarks.sh --sizes 10,1000 --degrees 0,4 --out results.json
+set -e
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+CLASSES=${ZOOLIFE_BENCH_CLASSES:-"$ROOT/build/bench-classes"}
+
+rm -rf "$CLASSES"
+mkdir -p "$CLASSES"
+# The tests are left out, since they need JUnit
+find "$ROOT/src" "$ROOT/bench" -name '*.java' -not -path '*/com/zoolife/test/*' > "$CLASSES/sources.txt"
+javac -encoding ISO-8859-1 -d "$CLASSES" @"$CLASSES/sources.txt"
+
+exec java $JAVA_OPTS -cp "$CLASSES" com.zoolife.benchmark.ZooBenchmarks "$@"
@@ -1,9 +1,19 @@
 package com.zoolife.control;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 import com.zoolife.model.Zoo;
+import com.zoolife.model.ZooExporter;
 import com.zoolife.model.ZooKeeper;
+import com.zoolife.model.ZooSnapshot;
 import com.zoolife.view.Viewer;
 
 public class Controller {
@@ -16,6 +26,167 @@ public class Controller {
 		this.viewer = viewer;
 	}
 
+	/**
+	 * Runs the simulation without any interaction with the user: simulates
+	 * the passed number of days flat out, exporting the friendships gained and
+	 * lost on each day and then the final properties of the zoo, and saving a
+	 * snapshot of the zoo at regular intervals. A timing summary is displayed
+	 * at the end.
+	 *
+	 * @param zoo
+	 *            the zoo to simulate
+	 * @param zKeeper
+	 *            the zoo keeper that simulates it
+	 * @param days
+	 *            the number of days to simulate
+	 * @param changesExporter
+	 *            the exporter to write the daily changes with (can be null)
+	 * @param propertiesExporter
+	 *            the exporter to write the final properties with (can be null),
+	 *            which can be the changes exporter itself unless the two are
+	 *            CSV, whose rows must all have the columns of one header
+	 * @param snapshotPath
+	 *            the file to save the snapshots to (can be null)
+	 * @param snapshotInterval
+	 *            the number of days between two snapshots, or 0 to only save
+	 *            one after the last day
+	 *
+	 * @throws IllegalArgumentException
+	 *             if days or snapshotInterval is less than 0, or if the same
+	 *             CSV exporter was passed for the changes and the properties
+	 * @throws IOException
+	 *             if the results or a snapshot cannot be written
+	 */
+	public void runHeadless(Zoo zoo, ZooKeeper zKeeper, int days, ZooExporter changesExporter,
+			ZooExporter propertiesExporter, Path snapshotPath, int snapshotInterval) throws IOException {
+		if (snapshotInterval < 0)
+			throw new IllegalArgumentException("The number of days between snapshots must be >= 0!");
+		if ((changesExporter != null) && (changesExporter == propertiesExporter)
+				&& (changesExporter.getFormat() == ZooExporter.Format.CSV))
+			throw new IllegalArgumentException("The changes and the properties cannot be exported to the same CSV!");
+		long[] exportNanos = new long[1];
+		long[] snapshotNanos = new long[1];
+		int[] snapshotDays = { -1, 0 }; // The last day saved, and the number of snapshots
+
+		long start = System.nanoTime();
+		try {
+			zKeeper.simulateDays(zoo, days, simulatedZoo -> {
+				try {
+					long exportStart = System.nanoTime();
+					if (changesExporter != null)
+						changesExporter.exportDailyChanges(simulatedZoo);
+					long snapshotStart = System.nanoTime();
+					exportNanos[0] += snapshotStart - exportStart;
+					if ((snapshotPath != null) && (snapshotInterval > 0)
+							&& ((simulatedZoo.getDayCount() % snapshotInterval) == 0)) {
+						ZooSnapshot.save(simulatedZoo, snapshotPath);
+						snapshotDays[0] = simulatedZoo.getDayCount();
+						snapshotDays[1]++;
+					}
+					snapshotNanos[0] += System.nanoTime() - snapshotStart;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		long simulationNanos = System.nanoTime() - start - exportNanos[0] - snapshotNanos[0];
+
+		long exportStart = System.nanoTime();
+		if (changesExporter != null)
+			changesExporter.flush();
+		if (propertiesExporter != null) {
+			propertiesExporter.exportZooProperties(zoo);
+			propertiesExporter.flush();
+		}
+		long snapshotStart = System.nanoTime();
+		exportNanos[0] += snapshotStart - exportStart;
+		if ((snapshotPath != null) && (snapshotDays[0] != zoo.getDayCount())) {
+			ZooSnapshot.save(zoo, snapshotPath);
+			snapshotDays[1]++;
+		}
+		snapshotNanos[0] += System.nanoTime() - snapshotStart;
+
+		this.viewer.displayHeadlessSummary(zoo, days, simulationNanos, exportNanos[0], snapshotNanos[0],
+				snapshotDays[1]);
+	}
+
+	/**
+	 * Runs a script of commands, one per line (blank lines and lines starting
+	 * with '#' are skipped):
+	 * <ul>
+	 * <li>simulate &lt;days&gt;: simulates the passed number of days</li>
+	 * <li>display: displays the properties of all the zoo animals</li>
+	 * <li>snapshot &lt;path&gt;: saves a snapshot of the zoo to the file</li>
+	 * <li>export &lt;path&gt;: exports the properties of all the zoo animals to
+	 * the file, as CSV if its name ends with .csv, as JSON lines if it ends
+	 * with .jsonl, .ndjson, or .json, and in the binary format otherwise</li>
+	 * </ul>
+	 * The whole script is parsed before any command is run, so a script with an
+	 * invalid command does nothing
+	 *
+	 * @param zoo
+	 *            the zoo to run the script on
+	 * @param zKeeper
+	 *            the zoo keeper that simulates it
+	 * @param scriptFile
+	 *            the file of commands (in UTF-8)
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the script has an invalid command (the message starts with
+	 *             its line number)
+	 * @throws IOException
+	 *             if the script cannot be read, or a file cannot be written
+	 */
+	public void runScript(Zoo zoo, ZooKeeper zKeeper, Path scriptFile) throws IOException {
+		runScript(zoo, zKeeper, Files.readAllLines(scriptFile, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Runs a script of commands (see runScript(Zoo, ZooKeeper, Path))
+	 *
+	 * @param zoo
+	 *            the zoo to run the script on
+	 * @param zKeeper
+	 *            the zoo keeper that simulates it
+	 * @param scriptLines
+	 *            the lines of the script
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the script has an invalid command (the message starts with
+	 *             its line number)
+	 * @throws IOException
+	 *             if a file cannot be written
+	 */
+	public void runScript(Zoo zoo, ZooKeeper zKeeper, List<String> scriptLines) throws IOException {
+		List<ScriptCommand> commands = new ArrayList<ScriptCommand>();
+		for (int i = 0; i < scriptLines.size(); i++) {
+			String line = scriptLines.get(i).trim();
+			if (!line.isEmpty() && !line.startsWith("#"))
+				commands.add(ScriptCommand.parse(line, i + 1));
+		}
+
+		for (ScriptCommand command : commands) {
+			switch (command.name) {
+			case "simulate":
+				zKeeper.simulateDays(zoo, command.days);
+				break;
+			case "display":
+				this.viewer.displayZooProperties(zoo);
+				break;
+			case "snapshot":
+				ZooSnapshot.save(zoo, command.path);
+				break;
+			case "export":
+				try (ZooExporter exporter = new ZooExporter(Files.newOutputStream(command.path), command.format)) {
+					exporter.exportZooProperties(zoo);
+				}
+				break;
+			}
+		}
+	}
+
 	public void takeControl(Zoo zoo, ZooKeeper zKeeper) {
 		this.viewer.displayAppIntro();
 		this.viewer.displayVaildInputs();
@@ -27,7 +198,7 @@ public class Controller {
 
 			if (userInput.equals("d") || userInput.equals("D")) {
 				// System.out.println(zoo.getZooProperties() + "\n");
-				this.viewer.displayZooProperties(zoo.getZooProperties());
+				this.viewer.displayZooProperties(zoo);
 			} else if (userInput.equals("s") || userInput.equals("S")) {
 				this.viewer.displaySimulationStartingMessage(zoo);
 				zKeeper.simulateOneDay(zoo);
@@ -57,4 +228,55 @@ public class Controller {
 
 	}
 
+	/*
+	 * A parsed command of a script (see runScript())
+	 */
+	private static final class ScriptCommand {
+
+		int days; // Of a simulate command
+		ZooExporter.Format format; // Of an export command
+		String name;
+		Path path; // Of a snapshot or an export command
+
+		static ScriptCommand parse(String line, int lineNumber) {
+			ScriptCommand command = new ScriptCommand();
+			String[] words = line.split("\\s+", 2);
+			command.name = words[0].toLowerCase();
+			String argument = (words.length > 1) ? words[1] : null;
+			try {
+				switch (command.name) {
+				case "simulate":
+					command.days = Integer.parseInt((argument == null) ? "" : argument);
+					if (command.days < 0)
+						throw new IllegalArgumentException("the number of days must be >= 0");
+					break;
+				case "display":
+					if (argument != null)
+						throw new IllegalArgumentException("display takes no argument");
+					break;
+				case "snapshot":
+				case "export":
+					if (argument == null)
+						throw new IllegalArgumentException(command.name + " needs a file");
+					command.path = Paths.get(argument);
+					String fileName = argument.toLowerCase();
+					if (fileName.endsWith(".csv"))
+						command.format = ZooExporter.Format.CSV;
+					else if (fileName.endsWith(".jsonl") || fileName.endsWith(".ndjson") || fileName.endsWith(".json"))
+						command.format = ZooExporter.Format.JSON_LINES;
+					else
+						command.format = ZooExporter.Format.BINARY;
+					break;
+				default:
+					throw new IllegalArgumentException("unknown command " + words[0]);
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("line " + lineNumber + ": simulate needs a number of days");
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("line " + lineNumber + ": " + e.getMessage());
+			}
+			return command;
+		}
+	}
+
 }
\ No newline at end of file
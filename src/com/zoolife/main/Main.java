@@ -1,11 +1,28 @@
 package com.zoolife.main;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
 
 import com.zoolife.control.Controller;
+import com.zoolife.metrics.MetricsRegistry;
 import com.zoolife.model.Loader;
 import com.zoolife.model.Zoo;
+import com.zoolife.model.ZooExporter;
 import com.zoolife.model.ZooKeeper;
+import com.zoolife.model.ZooQueryServer;
 import com.zoolife.view.Viewer;
 
 /**
@@ -24,11 +41,28 @@ import com.zoolife.view.Viewer;
  * "Viewer". The "Controller" class then takes control of the interaction with
  * the user and the working of the different parts.
  *
+ * <p>
+ * When started with options (see main()), ZooLife instead runs headless: it
+ * loads the animals (optionally from a roster file), simulates the requested
+ * number of days without any interaction, writes the results through a
+ * {@link com.zoolife.model.ZooExporter}, optionally saves snapshots of the zoo,
+ * and exits with a status code (0 on success, 1 on invalid options, 2 if the
+ * input cannot be loaded or the output cannot be written) after displaying a
+ * timing summary on the standard error. Alternatively, it runs a script of
+ * commands (see Controller.runScript()). In both cases, the metrics of the
+ * simulation can be recorded (see {@link com.zoolife.metrics.MetricsRegistry}),
+ * in which case they are exposed through JMX and dumped to the standard error
+ * periodically and at the end, and the zoo can be queried by other processes
+ * of the host while it is simulated, and then about its last day until
+ * ZooLife is interrupted (see {@link com.zoolife.model.ZooQueryServer}).
+ *
  * @see com.zoolife.model.Loader
  * @see com.zoolife.model.Zoo
  * @see com.zoolife.model.ZooKeeper
  * @see com.zoolife.view.Viewer
  * @see com.zoolife.control.Controller
+ * @see com.zoolife.model.ZooExporter
+ * @see com.zoolife.model.ZooQueryServer
  *
  * @author Tarek Oraby
  * @version 1.0
@@ -37,13 +71,39 @@ import com.zoolife.view.Viewer;
 
 public class Main {
 
+	private static final List<String> HEADLESS_OPTIONS = Arrays.asList("--days", "--format", "--metrics", "--out",
+			"--roster", "--script", "--seed", "--serve", "--snapshot", "--snapshot-every");
+	private static final String HEADLESS_USAGE = "The headless options are: --days <number of days to simulate> "
+			+ "[--seed <integer>] [--roster <CSV or JSON-lines file>] [--out <file, or the standard output>] "
+			+ "[--format jsonl|csv|binary (csv needs --out, and writes the properties to <out>-properties.csv)] [--snapshot <file> [--snapshot-every <number of days>]], or: "
+			+ "--script <file of commands> [--seed <integer>] [--roster <CSV or JSON-lines file>]; "
+			+ "both modes also accept [--metrics <seconds between two dumps of the metrics>] "
+			+ "[--serve <port of the query server, 0 for any, which answers about the last day "
+			+ "after the run until ZooLife is interrupted>]";
+
 	/**
 	 * @param args
-	 *            accepts zero or one (optional) argument to be passed: an
-	 *            integer of type long that serves as the seed of the random
-	 *            number generator used to simulate life in the zoo
+	 *            accepts either zero or one (optional) argument to be passed:
+	 *            an integer of type long that serves as the seed of the random
+	 *            number generator used to simulate life in the zoo; or the
+	 *            options of the headless mode (each followed by its value),
+	 *            among which --days is required: --days, --seed, --roster,
+	 *            --out, --format (jsonl, csv, or binary; csv writes the daily
+	 *            changes to --out, which it requires, and the final properties
+	 *            next to it: results.csv gives results-properties.csv),
+	 *            --snapshot, and
+	 *            --snapshot-every; or the options of the script mode: --script
+	 *            (required), --seed, and --roster. Both modes accept --metrics
+	 *            (the number of seconds between two dumps of the metrics) and
+	 *            --serve (the port of the query server, 0 for any free port,
+	 *            which keeps answering about the last day once the run is
+	 *            over, until the process is interrupted)
 	 */
 	public static void main(String[] args) {
+		if ((args.length > 0) && args[0].startsWith("--")) {
+			System.exit(runHeadless(args));
+		}
+
 		if (args.length > 1) {
 			System.err.println("You entered an invalid number of arguments");
 			System.out.println("This program accepts one optional argument: "
@@ -75,4 +135,182 @@ public class Main {
 
 		System.exit(0);
 	}
+
+	/*
+	 * Blocks until the thread is interrupted (or the JVM is stopped, e.g. by
+	 * Ctrl+C, which stops the daemon threads of the query server with it)
+	 */
+	private static void awaitInterruption() {
+		try {
+			new CountDownLatch(1).await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static ZooExporter.Format parseFormat(String format) {
+		switch (format) {
+		case "jsonl":
+			return ZooExporter.Format.JSON_LINES;
+		case "csv":
+			return ZooExporter.Format.CSV;
+		case "binary":
+			return ZooExporter.Format.BINARY;
+		default:
+			throw new IllegalArgumentException("You entered an invalid export format: " + format);
+		}
+	}
+
+	private static long parseNumber(Map<String, String> options, String option, long defaultValue, long min,
+			long max) {
+		if (!options.containsKey(option))
+			return defaultValue;
+		try {
+			long value = Long.parseLong(options.get(option));
+			if ((value >= min) && (value <= max))
+				return value;
+		} catch (NumberFormatException e) {
+			// Reported below
+		}
+		throw new IllegalArgumentException("The value of " + option + " must be an integer between " + min
+				+ " and " + max);
+	}
+
+	/*
+	 * Returns the file that the CSV properties are written to, next to the CSV
+	 * daily changes: results.csv gives results-properties.csv
+	 */
+	private static Path propertiesPathOf(Path outPath) {
+		String name = outPath.getFileName().toString();
+		if (name.toLowerCase().endsWith(".csv"))
+			name = name.substring(0, name.length() - ".csv".length());
+		return outPath.resolveSibling(name + "-properties.csv");
+	}
+
+	/*
+	 * Runs the simulation with the passed headless options, and returns the
+	 * exit status
+	 */
+	private static int runHeadless(String[] args) {
+		Map<String, String> options = new HashMap<String, String>();
+		int days;
+		int metricsPeriod;
+		long randomSeed;
+		int servePort;
+		int snapshotInterval;
+		ZooExporter.Format format;
+		try {
+			for (int i = 0; i < args.length; i += 2) {
+				if (!HEADLESS_OPTIONS.contains(args[i]))
+					throw new IllegalArgumentException("You entered an invalid option: " + args[i]);
+				if ((i + 1) == args.length)
+					throw new IllegalArgumentException("You entered no value for the option " + args[i]);
+				options.put(args[i], args[i + 1]);
+			}
+			if (options.containsKey("--script")) {
+				for (String option : Arrays.asList("--days", "--format", "--out", "--snapshot", "--snapshot-every")) {
+					if (options.containsKey(option))
+						throw new IllegalArgumentException("The option " + option + " cannot be used with a script");
+				}
+			} else if (!options.containsKey("--days")) {
+				throw new IllegalArgumentException("You entered no number of days to simulate");
+			}
+			days = (int) parseNumber(options, "--days", 0, 0, Integer.MAX_VALUE);
+			metricsPeriod = (int) parseNumber(options, "--metrics", 0, 1, Integer.MAX_VALUE);
+			randomSeed = parseNumber(options, "--seed", (new Date()).getTime(), Long.MIN_VALUE, Long.MAX_VALUE);
+			servePort = (int) parseNumber(options, "--serve", -1, 0, 65535);
+			snapshotInterval = (int) parseNumber(options, "--snapshot-every", 0, 1, Integer.MAX_VALUE);
+			if (options.containsKey("--snapshot-every") && !options.containsKey("--snapshot"))
+				throw new IllegalArgumentException("You entered a snapshot interval without a snapshot file");
+			format = parseFormat(options.getOrDefault("--format", "jsonl"));
+			if ((format == ZooExporter.Format.CSV) && !options.containsKey("--out"))
+				throw new IllegalArgumentException("The csv format needs an output file (--out)");
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.out.println(HEADLESS_USAGE);
+			return 1;
+		}
+
+		Viewer viewer = new Viewer(System.err);
+		try {
+			Loader loader = options.containsKey("--roster") ? new Loader(Paths.get(options.get("--roster")))
+					: new Loader();
+			Zoo zoo = new Zoo(loader.loadAnimals());
+			viewer.displayLoadWarnings(loader.getLoadWarnings(), loader.getMalformedRecordsCount());
+			ZooKeeper zKeeper = new ZooKeeper(loader.loadMaxLosableFriends(), loader.maxGainableFriends(),
+					randomSeed);
+			Controller controller = new Controller(viewer);
+			Path snapshotPath = options.containsKey("--snapshot") ? Paths.get(options.get("--snapshot")) : null;
+			MetricsRegistry metrics = null;
+			if (metricsPeriod > 0) {
+				metrics = new MetricsRegistry();
+				zoo.setMetrics(metrics);
+				zKeeper.setMetrics(metrics);
+				metrics.registerMBean("zoolife");
+			}
+
+			Closeable metricsDumps = null;
+			ZooQueryServer server = null;
+			try {
+				if (metrics != null)
+					metricsDumps = metrics.startPeriodicDump(System.err, metricsPeriod, TimeUnit.SECONDS);
+				if (servePort >= 0)
+					server = startQueryServer(zoo, servePort);
+
+				if (options.containsKey("--script")) {
+					new Controller(new Viewer()).runScript(zoo, zKeeper, Paths.get(options.get("--script")));
+				} else if (options.containsKey("--out")) {
+					Path outPath = Paths.get(options.get("--out"));
+					// The rows of a CSV file all have the columns of its header, so
+					// the properties get a file of their own
+					try (ZooExporter exporter = new ZooExporter(Files.newOutputStream(outPath), format);
+							ZooExporter propertiesExporter = (format == ZooExporter.Format.CSV)
+									? new ZooExporter(Files.newOutputStream(propertiesPathOf(outPath)), format)
+									: null) {
+						controller.runHeadless(zoo, zKeeper, days, exporter,
+								(propertiesExporter != null) ? propertiesExporter : exporter, snapshotPath,
+								snapshotInterval);
+					}
+				} else {
+					// The standard output is flushed, but not closed
+					ZooExporter exporter = new ZooExporter(System.out, format);
+					controller.runHeadless(zoo, zKeeper, days, exporter, exporter, snapshotPath, snapshotInterval);
+				}
+
+				if (metricsDumps != null) {
+					metricsDumps.close();
+					metricsDumps = null;
+					metrics.dump(System.err);
+				}
+				if (server != null) {
+					// Otherwise only published when a next day starts
+					zoo.publishSnapshot();
+					System.err.println("The run is over. Answering queries about day " + zoo.getDayCount()
+							+ " until ZooLife is interrupted");
+					awaitInterruption();
+				}
+			} finally {
+				// Even if the run failed
+				if (server != null)
+					server.close();
+				if (metricsDumps != null)
+					metricsDumps.close();
+			}
+		} catch (IOException | UncheckedIOException | IllegalArgumentException | JMException e) {
+			System.err.println("ZooLife failed: " + e.getMessage());
+			return 2;
+		}
+		return 0;
+	}
+
+	/*
+	 * Starts publishing the snapshots of the zoo, and starts a server that
+	 * answers queries about them
+	 */
+	private static ZooQueryServer startQueryServer(Zoo zoo, int port) throws IOException {
+		zoo.setSnapshotPublishing(true);
+		ZooQueryServer server = new ZooQueryServer(zoo, port, Runtime.getRuntime().availableProcessors());
+		System.err.println("Answering queries on http://localhost:" + server.getPort() + "/");
+		return server;
+	}
 }
@@ -0,0 +1,45 @@
+package com.zoolife.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count of events (e.g. of friendships added), which can be incremented by
+ * any number of threads at once
+ *
+ * @see com.zoolife.metrics.MetricsRegistry
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public final class Counter {
+
+	private LongAdder count;
+
+	Counter() {
+		this.count = new LongAdder();
+	}
+
+	/**
+	 * @param events
+	 *            the number of events to add to the count
+	 */
+	public void add(long events) {
+		this.count.add(events);
+	}
+
+	/**
+	 * @return the number of events counted so far
+	 */
+	public long get() {
+		return this.count.sum();
+	}
+
+	/**
+	 * Counts one event
+	 */
+	public void increment() {
+		this.count.increment();
+	}
+}
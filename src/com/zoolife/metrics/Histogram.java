@@ -0,0 +1,134 @@
+package com.zoolife.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The distribution of a non-negative value (e.g. of the number of friends of
+ * the animals), which can be recorded by any number of threads at once.
+ * <p>
+ * The values are counted in buckets: each power of two is split into 8 equal
+ * buckets, so a percentile is known to within 12.5% of its value while the
+ * histogram takes a fixed 4KB whatever the range of the values. The count, the
+ * sum (hence the mean), and the maximum are exact.
+ *
+ * @see com.zoolife.metrics.MetricsRegistry
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public final class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // Per power of two
+
+	private AtomicLongArray buckets;
+	private LongAdder count;
+	private AtomicLong max;
+	private LongAdder sum;
+
+	/**
+	 * Creates an empty histogram (which can also be used on its own, outside
+	 * of a registry)
+	 */
+	public Histogram() {
+		this.buckets = new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+		this.count = new LongAdder();
+		this.max = new AtomicLong();
+		this.sum = new LongAdder();
+	}
+
+	/**
+	 * @return the number of recorded values
+	 */
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	/**
+	 * @return the largest recorded value (0 if there is none)
+	 */
+	public long getMax() {
+		return this.max.get();
+	}
+
+	/**
+	 * @return the mean of the recorded values (0 if there is none)
+	 */
+	public double getMean() {
+		long valuesCount = this.count.sum();
+		return (valuesCount == 0) ? 0 : ((double) this.sum.sum() / valuesCount);
+	}
+
+	/**
+	 * @param percentile
+	 *            the percentile to return (e.g. 99 for the value that 99% of
+	 *            the recorded values do not exceed)
+	 * @return the upper bound of the bucket that holds the percentile (never
+	 *         more than the maximum), or 0 if no value was recorded
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the percentile is not between 0 and 100
+	 */
+	public long getPercentile(double percentile) {
+		if ((percentile < 0) || (percentile > 100))
+			throw new IllegalArgumentException("The percentile must be between 0 and 100!");
+		long valuesCount = this.count.sum();
+		if (valuesCount == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil((percentile / 100) * valuesCount));
+		long seen = 0;
+		for (int bucket = 0; bucket < this.buckets.length(); bucket++) {
+			seen += this.buckets.get(bucket);
+			if (seen >= rank)
+				return Math.min(upperBoundOf(bucket), getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * @return the sum of the recorded values
+	 */
+	public long getSum() {
+		return this.sum.sum();
+	}
+
+	/**
+	 * @param value
+	 *            the value to record (negative values are recorded as 0)
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		this.buckets.incrementAndGet(bucketOf(value));
+		this.count.increment();
+		this.sum.add(value);
+		long currentMax = this.max.get();
+		while ((value > currentMax) && !this.max.compareAndSet(currentMax, value)) {
+			currentMax = this.max.get();
+		}
+	}
+
+	/*
+	 * Values below SUB_BUCKETS have a bucket each. Above, the bucket is given
+	 * by the position of the highest bit and by the SUB_BUCKET_BITS bits below
+	 * it
+	 */
+	private static int bucketOf(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+		return ((shift + 1) * SUB_BUCKETS) + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	private static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int shift = (bucket / SUB_BUCKETS) - 1;
+		long lowerBound = ((long) (SUB_BUCKETS + (bucket % SUB_BUCKETS))) << shift;
+		return lowerBound + ((1L << shift) - 1);
+	}
+}
@@ -0,0 +1,84 @@
+package com.zoolife.metrics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedSet;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Exposes the metrics of a registry to JMX clients as read-only attributes of
+ * type Double (see MetricsRegistry.getValues()). The attributes are those of
+ * the metrics registered at the time the MBean info is asked for, so metrics
+ * registered later show up once the client refreshes it. Only the metrics of
+ * the attributes that are read are computed, since some of them (such as the
+ * gauges of a large zoo) take time to compute, and clients poll often.
+ *
+ * @see com.zoolife.metrics.MetricsRegistry
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+final class MetricsMBean implements DynamicMBean {
+
+	private MetricsRegistry registry;
+
+	MetricsMBean(MetricsRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Double value = this.registry.getValues(Collections.singleton(attribute)).get(attribute);
+		if (value == null)
+			throw new AttributeNotFoundException("No metric is named " + attribute);
+		return value;
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		Map<String, Double> values = this.registry.getValues(Arrays.asList(attributes));
+		AttributeList attributeList = new AttributeList();
+		for (String attribute : attributes) {
+			if (values.containsKey(attribute))
+				attributeList.add(new Attribute(attribute, values.get(attribute)));
+		}
+		return attributeList;
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		SortedSet<String> names = this.registry.getValueNames();
+		MBeanAttributeInfo[] attributeInfos = new MBeanAttributeInfo[names.size()];
+		int i = 0;
+		for (String name : names) {
+			attributeInfos[i++] = new MBeanAttributeInfo(name, Double.class.getName(), name, true, false, false);
+		}
+		return new MBeanInfo(MetricsRegistry.class.getName(), "ZooLife metrics", attributeInfos, null, null,
+				null);
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(actionName), "The metrics have no operations");
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("The metrics are read-only");
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+}
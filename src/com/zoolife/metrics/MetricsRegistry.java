@@ -0,0 +1,373 @@
+package com.zoolife.metrics;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A registry of named metrics: counters, timers, histograms, and gauges (values
+ * that are computed when they are read, e.g. the number of friendships in a
+ * zoo, or histograms that are, e.g. the numbers of friends of its animals).
+ * <p>
+ * The classes that are instrumented (such as Zoo and ZooKeeper) are passed a
+ * registry to record into, and keep references to their metrics so that
+ * recording never involves a lookup. Without a registry, they record nothing,
+ * and the cost of the instrumentation is a null check.
+ * <p>
+ * The metrics can be read with getValues(), written out as text with dump()
+ * (possibly periodically, with startPeriodicDump()), or exposed as the
+ * attributes of a JMX MBean with registerMBean(). Durations are reported in
+ * milliseconds.
+ *
+ * @see com.zoolife.metrics.Counter
+ * @see com.zoolife.metrics.Histogram
+ * @see com.zoolife.metrics.Timer
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public final class MetricsRegistry {
+
+	private static final List<String> HISTOGRAM_VALUES = Arrays.asList("count", "max", "mean", "p50", "p99");
+	private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+	private ConcurrentSkipListMap<String, Object> metrics; // By name
+
+	public MetricsRegistry() {
+		this.metrics = new ConcurrentSkipListMap<String, Object>();
+	}
+
+	/**
+	 * @return the number of bytes allocated so far by the current thread, or -1
+	 *         if the JVM does not measure it
+	 */
+	public static long currentThreadAllocatedBytes() {
+		if ((THREAD_BEAN instanceof com.sun.management.ThreadMXBean)
+				&& ((com.sun.management.ThreadMXBean) THREAD_BEAN).isThreadAllocatedMemoryEnabled())
+			return ((com.sun.management.ThreadMXBean) THREAD_BEAN).getCurrentThreadAllocatedBytes();
+		return -1;
+	}
+
+	/**
+	 * @param name
+	 *            the name of the counter
+	 * @return the counter of that name, which is created if needed
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a metric of another kind has that name
+	 */
+	public Counter counter(String name) {
+		return getOrCreate(name, Counter.class);
+	}
+
+	/**
+	 * Writes the current value of every metric as text, one metric per line
+	 * (in name order)
+	 *
+	 * @param out
+	 *            where to write the metrics
+	 *
+	 * @throws IOException
+	 *             if the metrics cannot be written
+	 */
+	public void dump(Appendable out) throws IOException {
+		StringBuilder text = new StringBuilder("# ZooLife metrics at ").append(Instant.now()).append('\n');
+		for (Map.Entry<String, Object> entry : this.metrics.entrySet()) {
+			Object metric = entry.getValue();
+			text.append(entry.getKey());
+			if (metric instanceof Counter) {
+				text.append(' ').append(((Counter) metric).get());
+			} else if (metric instanceof DoubleSupplier) {
+				text.append(' ').append(((DoubleSupplier) metric).getAsDouble());
+			} else if (!(metric instanceof Timer)) {
+				Histogram histogram = histogramOf(metric);
+				text.append(String.format(" count=%d mean=%.2f p50=%d p99=%d max=%d", histogram.getCount(),
+						histogram.getMean(), histogram.getPercentile(50), histogram.getPercentile(99),
+						histogram.getMax()));
+			} else {
+				Histogram durations = ((Timer) metric).getDurations();
+				text.append(String.format(" count=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms",
+						durations.getCount(), durations.getMean() / 1e6, durations.getPercentile(50) / 1e6,
+						durations.getPercentile(99) / 1e6, durations.getMax() / 1e6));
+			}
+			text.append('\n');
+		}
+		out.append(text);
+		if (out instanceof Flushable)
+			((Flushable) out).flush();
+	}
+
+	/**
+	 * Registers a gauge, i.e. a value that is computed whenever the metrics are
+	 * read. Gauges may be read by other threads (e.g. by a periodic dump or a
+	 * JMX client) while the measured object changes, and so should only read
+	 * it in ways that are safe, if possibly stale.
+	 *
+	 * @param name
+	 *            the name of the gauge (which replaces any previous gauge of
+	 *            that name)
+	 * @param gauge
+	 *            computes the value of the gauge
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the gauge
+	 * @throws IllegalArgumentException
+	 *             if a metric of another kind has that name
+	 */
+	public void gauge(String name, DoubleSupplier gauge) {
+		if (name == null)
+			throw new NullPointerException("A null object was passed as the name of the metric!");
+		if (gauge == null)
+			throw new NullPointerException("A null object was passed as the gauge!");
+		this.metrics.compute(name, (gaugeName, previous) -> {
+			if ((previous != null) && !(previous instanceof DoubleSupplier))
+				throw new IllegalArgumentException("The metric " + name + " is not a gauge!");
+			return gauge;
+		});
+	}
+
+	/**
+	 * @return the names of the values of all the metrics (see getValues()),
+	 *         which are listed without computing the values
+	 */
+	public SortedSet<String> getValueNames() {
+		SortedSet<String> names = new TreeSet<String>();
+		for (Map.Entry<String, Object> entry : this.metrics.entrySet()) {
+			if (isHistogram(entry.getValue())) {
+				for (String value : HISTOGRAM_VALUES) {
+					names.add(entry.getKey() + "." + value);
+				}
+			} else {
+				names.add(entry.getKey());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * @return the current value of every metric, by name. A counter or a
+	 *         gauge has a single value, while a histogram, a histogram gauge,
+	 *         or a timer has the values NAME.count, NAME.mean, NAME.p50,
+	 *         NAME.p99, and NAME.max (in milliseconds for a timer)
+	 */
+	public SortedMap<String, Double> getValues() {
+		SortedMap<String, Double> values = new TreeMap<String, Double>();
+		for (Map.Entry<String, Object> entry : this.metrics.entrySet()) {
+			putValues(values, entry.getKey(), entry.getValue());
+		}
+		return values;
+	}
+
+	/**
+	 * Computes only the metrics that the passed values belong to, each one
+	 * once (e.g. a histogram gauge once for all its values)
+	 *
+	 * @param names
+	 *            the names of the values to return (see getValues())
+	 * @return the current values of those names, by name (the unknown names
+	 *         are left out)
+	 */
+	public SortedMap<String, Double> getValues(Collection<String> names) {
+		Set<String> wantedNames = new HashSet<String>(names);
+		Set<String> metricNames = new HashSet<String>();
+		SortedMap<String, Double> values = new TreeMap<String, Double>();
+		for (String name : wantedNames) {
+			String metricName = metricNameOf(name);
+			if ((metricName != null) && metricNames.add(metricName))
+				putValues(values, metricName, this.metrics.get(metricName));
+		}
+		values.keySet().retainAll(wantedNames);
+		return values;
+	}
+
+	/**
+	 * @param name
+	 *            the name of the histogram
+	 * @return the histogram of that name, which is created if needed
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a metric of another kind has that name
+	 */
+	public Histogram histogram(String name) {
+		return getOrCreate(name, Histogram.class);
+	}
+
+	/**
+	 * Registers a histogram gauge, i.e. a histogram that is computed whenever
+	 * the metrics are read, once for all its values (see gauge() for the
+	 * threads that may read it)
+	 *
+	 * @param name
+	 *            the name of the histogram gauge (which replaces any previous
+	 *            histogram gauge of that name)
+	 * @param gauge
+	 *            computes the histogram
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the gauge
+	 * @throws IllegalArgumentException
+	 *             if a metric of another kind has that name
+	 */
+	public void histogramGauge(String name, Supplier<Histogram> gauge) {
+		if (name == null)
+			throw new NullPointerException("A null object was passed as the name of the metric!");
+		if (gauge == null)
+			throw new NullPointerException("A null object was passed as the gauge!");
+		this.metrics.compute(name, (gaugeName, previous) -> {
+			if ((previous != null) && !(previous instanceof Supplier))
+				throw new IllegalArgumentException("The metric " + name + " is not a histogram gauge!");
+			return gauge;
+		});
+	}
+
+	/**
+	 * Exposes the metrics as the attributes of an MBean of the platform MBean
+	 * server (see getValues() for the names of the attributes)
+	 *
+	 * @param name
+	 *            the name of the MBean, which is registered as
+	 *            com.zoolife:type=Metrics,name=NAME
+	 * @return the object name of the registered MBean
+	 *
+	 * @throws JMException
+	 *             if the MBean cannot be registered (e.g. if the name is
+	 *             already taken)
+	 */
+	public ObjectName registerMBean(String name) throws JMException {
+		ObjectName objectName = new ObjectName("com.zoolife:type=Metrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(this), objectName);
+		return objectName;
+	}
+
+	/**
+	 * Starts dumping the metrics (see dump()) at a fixed rate, from a daemon
+	 * thread. The dumps stop when the returned object is closed, or at the
+	 * first one that cannot be written.
+	 *
+	 * @param out
+	 *            where to write the metrics
+	 * @param period
+	 *            the time between two dumps
+	 * @param unit
+	 *            the unit of the period
+	 * @return the object to close to stop the dumps
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the period is not positive
+	 */
+	public Closeable startPeriodicDump(Appendable out, long period, TimeUnit unit) {
+		if (period <= 0)
+			throw new IllegalArgumentException("The period of the dumps must be > 0!");
+		ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "zoolife-metrics-dump");
+			thread.setDaemon(true);
+			return thread;
+		});
+		dumper.scheduleAtFixedRate(() -> {
+			try {
+				dump(out);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, period, period, unit);
+		return dumper::shutdown;
+	}
+
+	/**
+	 * @param name
+	 *            the name of the timer
+	 * @return the timer of that name, which is created if needed
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a metric of another kind has that name
+	 */
+	public Timer timer(String name) {
+		return getOrCreate(name, Timer.class);
+	}
+
+	private <T> T getOrCreate(String name, Class<T> kind) {
+		if (name == null)
+			throw new NullPointerException("A null object was passed as the name of the metric!");
+		Object metric = this.metrics.get(name);
+		if (metric == null) {
+			Object created = (kind == Counter.class) ? new Counter()
+					: ((kind == Histogram.class) ? new Histogram() : new Timer());
+			metric = this.metrics.putIfAbsent(name, created);
+			if (metric == null)
+				metric = created;
+		}
+		if (!kind.isInstance(metric))
+			throw new IllegalArgumentException("The metric " + name + " is not a " + kind.getSimpleName() + "!");
+		return kind.cast(metric);
+	}
+
+	/*
+	 * Returns the histogram of a histogram, a histogram gauge, or a timer
+	 */
+	private static Histogram histogramOf(Object metric) {
+		if (metric instanceof Histogram)
+			return (Histogram) metric;
+		if (metric instanceof Timer)
+			return ((Timer) metric).getDurations();
+		return (Histogram) ((Supplier<?>) metric).get();
+	}
+
+	private static boolean isHistogram(Object metric) {
+		return (metric != null) && !(metric instanceof Counter) && !(metric instanceof DoubleSupplier);
+	}
+
+	/*
+	 * Returns the name of the metric that a value belongs to, or null
+	 */
+	private String metricNameOf(String valueName) {
+		Object metric = this.metrics.get(valueName);
+		if ((metric != null) && !isHistogram(metric))
+			return valueName;
+		int dot = valueName.lastIndexOf('.');
+		if ((dot > 0) && HISTOGRAM_VALUES.contains(valueName.substring(dot + 1))
+				&& isHistogram(this.metrics.get(valueName.substring(0, dot))))
+			return valueName.substring(0, dot);
+		return null;
+	}
+
+	private static void putValues(SortedMap<String, Double> values, String name, Object metric) {
+		if (metric instanceof Counter) {
+			values.put(name, (double) ((Counter) metric).get());
+		} else if (metric instanceof DoubleSupplier) {
+			values.put(name, ((DoubleSupplier) metric).getAsDouble());
+		} else {
+			Histogram histogram = histogramOf(metric);
+			double unit = (metric instanceof Timer) ? 1e6 : 1;
+			values.put(name + ".count", (double) histogram.getCount());
+			values.put(name + ".mean", histogram.getMean() / unit);
+			values.put(name + ".p50", histogram.getPercentile(50) / unit);
+			values.put(name + ".p99", histogram.getPercentile(99) / unit);
+			values.put(name + ".max", histogram.getMax() / unit);
+		}
+	}
+}
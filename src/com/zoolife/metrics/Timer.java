@@ -0,0 +1,57 @@
+package com.zoolife.metrics;
+
+/**
+ * The distribution of the duration of an operation (e.g. of simulating a
+ * day), in nanoseconds
+ *
+ * @see com.zoolife.metrics.MetricsRegistry
+ * @see com.zoolife.metrics.Histogram
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public final class Timer {
+
+	private Histogram durations;
+
+	Timer() {
+		this.durations = new Histogram();
+	}
+
+	/**
+	 * @return the distribution of the recorded durations, in nanoseconds
+	 */
+	public Histogram getDurations() {
+		return this.durations;
+	}
+
+	/**
+	 * @param nanos
+	 *            the duration to record, in nanoseconds
+	 */
+	public void record(long nanos) {
+		this.durations.record(nanos);
+	}
+
+	/**
+	 * @return the time to pass to stop() at the end of the operation
+	 */
+	public long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records the duration of an operation
+	 *
+	 * @param startTime
+	 *            the time returned by start() at the start of the operation
+	 * @return the recorded duration, in nanoseconds
+	 */
+	public long stop(long startTime) {
+		long nanos = System.nanoTime() - startTime;
+		this.durations.record(nanos);
+		return nanos;
+	}
+}
@@ -3,17 +3,20 @@
  */
 package com.zoolife.model;
 
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Set;
 
 /**
- * This class represents a friendship between two animals (it is essentially a
- * HashSet of two animals). Having this class simplifies working with the set of
- * friendships (especially in the {@link com.zoolife.model.Zoo} class).
+ * This class represents a friendship between two animals (it is essentially an
+ * unordered pair of two animals). Having this class simplifies working with the
+ * set of friendships (especially in the {@link com.zoolife.model.Zoo} class).
  * Specifically, instead of working with two layers of sets (a set of set of
  * animals), this class enables other classes to work only with one set of
  * animal friendships.
+ * <p>
+ * Note that the Zoo class does not store AnimalFriendship objects. It keys
+ * friendships by the packed ids of the two animals, and only creates
+ * AnimalFriendship objects as lightweight views when they are asked for.
  *
  *
  * @see com.zoolife.model.Zoo
@@ -25,7 +28,8 @@ import java.util.Set;
 
 public class AnimalFriendship {
 
-	private Set<Animal> animalFriendshipSet;
+	private Animal friendOne;
+	private Animal friendTwo;
 
 	/**
 	 * Constructor
@@ -47,9 +51,8 @@ public class AnimalFriendship {
 		if (friendOne.equals(friendTwo))
 			throw new IllegalArgumentException("Both animals are identical. Cannot be friend with oneself!");
 
-		this.animalFriendshipSet = new HashSet<Animal>();
-		this.animalFriendshipSet.add(friendOne);
-		this.animalFriendshipSet.add(friendTwo);
+		this.friendOne = friendOne;
+		this.friendTwo = friendTwo;
 	}
 
 	/**
@@ -63,7 +66,7 @@ public class AnimalFriendship {
 	 *         otherwise <code>false</code>
 	 */
 	public boolean contains(Animal anim) {
-		return this.animalFriendshipSet.contains(anim);
+		return this.friendOne.equals(anim) || this.friendTwo.equals(anim);
 	}
 
 	/*
@@ -80,12 +83,12 @@ public class AnimalFriendship {
 		if (!(obj instanceof AnimalFriendship))
 			return false;
 		AnimalFriendship other = (AnimalFriendship) obj;
-		if (this.animalFriendshipSet == null) {
-			if (other.animalFriendshipSet != null)
-				return false;
-		} else if (!this.animalFriendshipSet.equals(other.animalFriendshipSet))
-			return false;
-		return true;
+		// The order of the two animals is not significant
+		if (this.friendOne.equals(other.friendOne) && this.friendTwo.equals(other.friendTwo))
+			return true;
+		if (this.friendOne.equals(other.friendTwo) && this.friendTwo.equals(other.friendOne))
+			return true;
+		return false;
 	}
 
 	/**
@@ -98,21 +101,18 @@ public class AnimalFriendship {
 	 * @return the friend of anim
 	 */
 	public Animal getFriendOf(Animal anim) {
-		if (!this.animalFriendshipSet.contains(anim))
-			throw new IllegalArgumentException("The passed Animal object is not a part of this AnimalFriendship");
-
-		for (Animal a : this.animalFriendshipSet) {
-			if (a != anim)
-				return (a);
-		}
-		return null;
+		if (this.friendOne.equals(anim))
+			return this.friendTwo;
+		if (this.friendTwo.equals(anim))
+			return this.friendOne;
+		throw new IllegalArgumentException("The passed Animal object is not a part of this AnimalFriendship");
 	}
 
 	/**
 	 * @return a java.util.Iterator object of the friendship
 	 */
 	public Iterator<Animal> getIterator() {
-		return this.animalFriendshipSet.iterator();
+		return Arrays.asList(this.friendOne, this.friendTwo).iterator();
 	}
 
 	/*
@@ -124,7 +124,8 @@ public class AnimalFriendship {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = (prime * result) + ((this.animalFriendshipSet == null) ? 0 : this.animalFriendshipSet.hashCode());
+		// A sum, so that the hash code does not depend on the animals' order
+		result = (prime * result) + (this.friendOne.hashCode() + this.friendTwo.hashCode());
 		return result;
 	}
 
@@ -0,0 +1,121 @@
+package com.zoolife.model;
+
+import java.util.Arrays;
+
+/**
+ * The table of the animals of a zoo, which assigns each animal a dense integer
+ * id (its position in the table). Looking up the id of an Animal object goes
+ * through an open-addressed table of ids keyed by the animals' hash codes, so
+ * the table holds no boxed values and needs only a few bytes per animal beyond
+ * the Animal objects themselves.
+ * <p>
+ * Animals can only be added, and only until the table is handed over to a
+ * {@link com.zoolife.model.Zoo}. The table is never modified afterwards.
+ *
+ * @see com.zoolife.model.Zoo
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+final class AnimalTable {
+
+	private Animal[] animals; // The animals indexed by their ids
+	private int size;
+	private int[] slots; // (id + 1) of the animals, keyed by hash code, or 0
+
+	/**
+	 * @param expectedSize
+	 *            the expected number of animals (the table grows if needed)
+	 */
+	AnimalTable(int expectedSize) {
+		this.animals = new Animal[Math.max(1, expectedSize)];
+		this.slots = new int[slotsCapacityFor(expectedSize)];
+	}
+
+	/**
+	 * Adds an animal, giving it the next free id
+	 *
+	 * @return false (and leaves the table unchanged) if an equal animal is
+	 *         already in the table
+	 */
+	boolean add(Animal anim) {
+		int mask = this.slots.length - 1;
+		int slot = hash(anim) & mask;
+		while (this.slots[slot] != 0) {
+			if (this.animals[this.slots[slot] - 1].equals(anim))
+				return false;
+			slot = (slot + 1) & mask;
+		}
+
+		if (this.size == this.animals.length)
+			this.animals = Arrays.copyOf(this.animals, this.size * 2);
+		this.animals[this.size] = anim;
+		this.slots[slot] = ++this.size;
+		if ((this.size * 2) > this.slots.length)
+			rehash();
+		return true;
+	}
+
+	/**
+	 * @return the animal with the passed id
+	 */
+	Animal animalAt(int id) {
+		return this.animals[id];
+	}
+
+	/**
+	 * @return the id of the passed animal, or -1 if it is not in the table
+	 */
+	int idOf(Animal anim) {
+		if (anim == null)
+			return -1;
+		int mask = this.slots.length - 1;
+		int slot = hash(anim) & mask;
+		while (this.slots[slot] != 0) {
+			int id = this.slots[slot] - 1;
+			if (this.animals[id].equals(anim))
+				return id;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Releases the unused capacity once all the animals are added
+	 */
+	void trimToSize() {
+		if (this.animals.length > this.size)
+			this.animals = Arrays.copyOf(this.animals, this.size);
+	}
+
+	private static int hash(Animal anim) {
+		int h = anim.hashCode() * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	private void rehash() {
+		this.slots = new int[this.slots.length * 2];
+		int mask = this.slots.length - 1;
+		for (int id = 0; id < this.size; id++) {
+			int slot = hash(this.animals[id]) & mask;
+			while (this.slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			this.slots[slot] = id + 1;
+		}
+	}
+
+	private static int slotsCapacityFor(int expectedSize) {
+		int capacity = 16;
+		while (capacity < (expectedSize * 2)) {
+			capacity *= 2;
+		}
+		return capacity;
+	}
+}
@@ -0,0 +1,210 @@
+package com.zoolife.model;
+
+import java.util.Arrays;
+
+/**
+ * A thread-safe way of editing the friendships of a
+ * {@link com.zoolife.model.Zoo}: any number of threads can add and remove
+ * friendships through the same editor at once, and the zoo receives the
+ * result of all their edits when the editor is closed.
+ * <p>
+ * While the editor is open, the zoo's friendship network is frozen (the zoo
+ * refuses direct edits and new days), so every thread can read it without
+ * locking. The edits are kept apart, as the set of friendships whose state
+ * was toggled since the editor was opened. That set is split into stripes by
+ * the hash of the animal id pair, each stripe with its own lock, so an edit
+ * locks a single stripe: two threads only contend if their pairs fall into
+ * the same stripe, which becomes unlikely with enough stripes, and the edits
+ * scale with the number of threads. A friendship exists if it existed when
+ * the editor was opened, unless it was toggled since, and the check and the
+ * toggle are made under the stripe's lock, so each edit is atomic.
+ * <p>
+ * Since friendships are stored as pairs, the network stays symmetric. Closing
+ * the editor applies each toggled friendship once, through the zoo's usual
+ * edits and in the order of the packed keys (so that the result does not
+ * depend on how the threads were scheduled), which keeps the daily gained and
+ * lost friendships, the properties cache, the event log, and the metrics up to
+ * date. A friendship that was removed and added back while the editor was
+ * open is therefore no change at all.
+ *
+ * @see com.zoolife.model.Zoo
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public final class ConcurrentZooEditor implements AutoCloseable {
+
+	private static final int STRIPES_PER_THREAD = 64;
+
+	private FriendshipGraph friendsGraph; // Frozen until the editor is closed
+	private volatile boolean isClosed;
+	private int stripeShift; // 64 - log2(the number of stripes)
+	private LongHashSet[] toggledKeys; // By stripe, each guarded by itself
+	private Zoo zoo;
+
+	/**
+	 * @param zoo
+	 *            the zoo to edit, which has already checked that it can be
+	 *            edited
+	 * @param writersCount
+	 *            the expected number of threads that edit at once (at
+	 *            least 1), which sizes the stripes
+	 */
+	ConcurrentZooEditor(Zoo zoo, int writersCount) {
+		this.zoo = zoo;
+		this.friendsGraph = zoo.getFriendsGraph();
+		int stripesCount = Math.min(writersCount, 1 << 16) * STRIPES_PER_THREAD;
+		int stripeBits = 32 - Integer.numberOfLeadingZeros(stripesCount - 1);
+		this.stripeShift = 64 - stripeBits;
+		this.toggledKeys = new LongHashSet[1 << stripeBits];
+		for (int stripe = 0; stripe < this.toggledKeys.length; stripe++) {
+			this.toggledKeys[stripe] = new LongHashSet();
+		}
+	}
+
+	/**
+	 * Makes two animals friends, if they are not already
+	 *
+	 * @param anim1
+	 *            animal friend number one
+	 * @param anim2
+	 *            animal friend number two
+	 * @return true if the friendship was added, false if the two animals were
+	 *         already friends
+	 *
+	 * @throws NullPointerException
+	 *             if either of the passed two Animal objects are null
+	 * @throws IllegalArgumentException
+	 *             if either of the two animals doesn't belong to the zoo or if
+	 *             the two animals are identical
+	 */
+	public boolean addFriendship(Animal anim1, Animal anim2) {
+		return toggleIf(getCheckedKey(anim1, anim2), false);
+	}
+
+	/**
+	 * @param anim1
+	 *            animal friend number one
+	 * @param anim2
+	 *            animal friend number two
+	 * @return true if the two animals are friends, counting the edits made
+	 *         through this editor
+	 *
+	 * @throws NullPointerException
+	 *             if either of the passed two Animal objects are null
+	 * @throws IllegalArgumentException
+	 *             if either of the two animals doesn't belong to the zoo or if
+	 *             the two animals are identical
+	 */
+	public boolean areFriends(Animal anim1, Animal anim2) {
+		long key = getCheckedKey(anim1, anim2);
+		LongHashSet stripe = stripeOf(key);
+		synchronized (stripe) {
+			return this.friendsGraph.hasEdge(FriendshipGraph.smallerId(key), FriendshipGraph.largerId(key))
+					^ stripe.contains(key);
+		}
+	}
+
+	/**
+	 * Applies the edits to the zoo, which can then be used (and edited
+	 * directly) again. This must be called once all the threads are done
+	 * editing, and by the thread that owns the zoo. The editor cannot be used
+	 * afterwards, and closing it again does nothing.
+	 */
+	@Override
+	public void close() {
+		if (this.isClosed)
+			return;
+		this.isClosed = true;
+		this.zoo.endConcurrentEdits(this);
+
+		// Each stripe is read under its lock, which makes the edits of the
+		// other threads visible
+		long[] keys = new long[0];
+		int keysCount = 0;
+		for (LongHashSet stripe : this.toggledKeys) {
+			synchronized (stripe) {
+				if ((keysCount + stripe.size()) > keys.length)
+					keys = Arrays.copyOf(keys, Math.max(keys.length * 2, keysCount + stripe.size()));
+				for (int slot = 0; slot < stripe.capacity(); slot++) {
+					if (stripe.valueAt(slot) != 0)
+						keys[keysCount++] = stripe.valueAt(slot);
+				}
+			}
+		}
+		keys = Arrays.copyOf(keys, keysCount);
+		Arrays.sort(keys);
+		for (long key : keys) {
+			int smallerId = FriendshipGraph.smallerId(key);
+			int largerId = FriendshipGraph.largerId(key);
+			if (!this.zoo.removeFriendshipById(smallerId, largerId))
+				this.zoo.addFriendshipById(smallerId, largerId);
+		}
+	}
+
+	/**
+	 * Breaks up the friendship of two animals, if they are friends
+	 *
+	 * @param anim1
+	 *            animal friend number one
+	 * @param anim2
+	 *            animal friend number two
+	 * @return true if the friendship was removed, false if the two animals
+	 *         were not friends
+	 *
+	 * @throws NullPointerException
+	 *             if either of the passed two Animal objects are null
+	 * @throws IllegalArgumentException
+	 *             if either of the two animals doesn't belong to the zoo or if
+	 *             the two animals are identical
+	 */
+	public boolean removeFriendship(Animal anim1, Animal anim2) {
+		return toggleIf(getCheckedKey(anim1, anim2), true);
+	}
+
+	private long getCheckedKey(Animal anim1, Animal anim2) {
+		if ((anim1 == null) || (anim2 == null))
+			throw new NullPointerException("Cannot update the friendship of a null Animal object!");
+		int id1 = this.zoo.getAnimalId(anim1);
+		if (id1 < 0)
+			throw new IllegalArgumentException("Animal 1 is not in this zoo. cannot set its friendship!");
+		int id2 = this.zoo.getAnimalId(anim2);
+		if (id2 < 0)
+			throw new IllegalArgumentException("Animal 2 is not in this zoo. cannot set its friendship!");
+		if (id1 == id2)
+			throw new IllegalArgumentException("Both animals are identical. Cannot be friend with oneself!");
+		return FriendshipGraph.friendshipKey(id1, id2);
+	}
+
+	/*
+	 * The stripe is given by the high bits of the key times the golden ratio,
+	 * which do not follow the slots of the LongHashSet of the stripe
+	 */
+	private LongHashSet stripeOf(long key) {
+		return this.toggledKeys[(int) ((key * 0x9e3779b97f4a7c15L) >>> this.stripeShift)];
+	}
+
+	/*
+	 * Toggles the friendship if it exists (or does not exist), and tells
+	 * whether it did
+	 */
+	private boolean toggleIf(long key, boolean exists) {
+		if (this.isClosed)
+			throw new IllegalStateException("The editor is closed. Cannot edit the zoo through it!");
+		LongHashSet stripe = stripeOf(key);
+		synchronized (stripe) {
+			boolean isToggled = stripe.contains(key);
+			boolean existsNow = this.friendsGraph.hasEdge(FriendshipGraph.smallerId(key),
+					FriendshipGraph.largerId(key)) ^ isToggled;
+			if (existsNow != exists)
+				return false;
+			if (isToggled)
+				stripe.remove(key);
+			else
+				stripe.add(key);
+			return true;
+		}
+	}
+}
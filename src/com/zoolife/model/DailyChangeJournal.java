@@ -0,0 +1,227 @@
+package com.zoolife.model;
+
+import java.util.Arrays;
+
+/**
+ * The journal of the friendships that were touched (added or removed) during
+ * the current day in the zoo. The first time a friendship is touched on a
+ * given day, it gets an entry that records whether it existed yesterday; later
+ * touches on the same day only update whether it exists now. A friendship was
+ * thus gained today if it exists now but not yesterday, and lost today if it
+ * existed yesterday but not now. Friendships that were added and removed again
+ * (or vice versa) on the same day are journaled, but are neither.
+ * <p>
+ * The entries of a day are numbered from 0, and the entries that touch a given
+ * animal are chained together, so the journal can be enumerated either as a
+ * whole or per animal. Starting a new day (see reset()) takes constant time:
+ * the entry count goes back to 0, and the per-animal chains and the key lookup
+ * table are validated lazily against the current day rather than wiped.
+ *
+ * @see com.zoolife.model.Zoo
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+final class DailyChangeJournal {
+
+	private static final byte EXISTED_YESTERDAY = 1;
+	private static final byte EXISTS_NOW = 2;
+	private static final int MIN_TABLE_CAPACITY = 16;
+
+	private int entryCount;
+	private byte[] entryFlags; // EXISTED_YESTERDAY and/or EXISTS_NOW
+	private long[] entryKeys; // The packed friendship key of each entry
+	private int[] nextOfLarger; // The next entry in the chain of the entry's
+								// larger id, or -1
+	private int[] nextOfSmaller; // The next entry in the chain of the entry's
+									// smaller id, or -1
+
+	private int epoch; // Incremented each day, to invalidate the chain heads
+	private int[] headEntries; // The last entry that touched each animal
+	private int[] headEpochs; // The epoch in which headEntries[id] was set
+
+	/*
+	 * An open-addressed table of (entry + 1) values keyed by the entries'
+	 * friendship keys. A slot counts as occupied if its value refers to an
+	 * entry of the current day, so the slots of past days need no clearing.
+	 * They may still make the table look fuller than it is, which is why the
+	 * table is rebuilt once half of its slots have been written to.
+	 */
+	private int[] table;
+	private int tableWrites; // Slots written since the table was built
+
+	/**
+	 * @param nodeCount
+	 *            the number of animals in the zoo
+	 */
+	DailyChangeJournal(int nodeCount) {
+		this.entryKeys = new long[16];
+		this.entryFlags = new byte[16];
+		this.nextOfSmaller = new int[16];
+		this.nextOfLarger = new int[16];
+		this.headEntries = new int[nodeCount];
+		this.headEpochs = new int[nodeCount];
+		this.epoch = 1;
+		this.table = new int[MIN_TABLE_CAPACITY];
+	}
+
+	/**
+	 * @return the number of entries (i.e. of friendships touched today)
+	 */
+	int entryCount() {
+		return this.entryCount;
+	}
+
+	/**
+	 * @return the first entry in the chain of the passed animal, or -1 if the
+	 *         animal was not touched today
+	 */
+	int firstEntryOf(int node) {
+		if (this.headEpochs[node] != this.epoch)
+			return -1;
+		return this.headEntries[node];
+	}
+
+	/**
+	 * @return true if the friendship of the passed entry was gained today
+	 */
+	boolean isGained(int entry) {
+		return this.entryFlags[entry] == EXISTS_NOW;
+	}
+
+	/**
+	 * @return true if the friendship of the passed entry was lost today
+	 */
+	boolean isLost(int entry) {
+		return this.entryFlags[entry] == EXISTED_YESTERDAY;
+	}
+
+	/**
+	 * @return the packed friendship key of the passed entry
+	 */
+	long keyOf(int entry) {
+		return this.entryKeys[entry];
+	}
+
+	/**
+	 * @return the entry that follows the passed one in the chain of the passed
+	 *         animal (which must be one of the entry's two animals), or -1
+	 */
+	int nextEntryOf(int entry, int node) {
+		if (FriendshipGraph.smallerId(this.entryKeys[entry]) == node)
+			return this.nextOfSmaller[entry];
+		return this.nextOfLarger[entry];
+	}
+
+	/**
+	 * Records that the friendship between animals a and b was just added
+	 */
+	void recordAdded(int a, int b) {
+		int entry = findEntry(FriendshipGraph.friendshipKey(a, b));
+		if (entry < 0)
+			addEntry(a, b, EXISTS_NOW);
+		else
+			this.entryFlags[entry] |= EXISTS_NOW;
+	}
+
+	/**
+	 * Records that the friendship between animals a and b was just removed
+	 */
+	void recordRemoved(int a, int b) {
+		int entry = findEntry(FriendshipGraph.friendshipKey(a, b));
+		if (entry < 0)
+			addEntry(a, b, EXISTED_YESTERDAY);
+		else
+			this.entryFlags[entry] &= ~EXISTS_NOW;
+	}
+
+	/**
+	 * Starts a new (empty) day
+	 */
+	void reset() {
+		this.entryCount = 0;
+		this.epoch++;
+	}
+
+	private void addEntry(int a, int b, byte flags) {
+		if (this.entryCount == this.entryKeys.length) {
+			int newLength = this.entryCount * 2;
+			this.entryKeys = Arrays.copyOf(this.entryKeys, newLength);
+			this.entryFlags = Arrays.copyOf(this.entryFlags, newLength);
+			this.nextOfSmaller = Arrays.copyOf(this.nextOfSmaller, newLength);
+			this.nextOfLarger = Arrays.copyOf(this.nextOfLarger, newLength);
+		}
+
+		if (((this.tableWrites + 1) * 2) > this.table.length)
+			rebuildTable();
+
+		long key = FriendshipGraph.friendshipKey(a, b);
+		int entry = this.entryCount++;
+		this.entryKeys[entry] = key;
+		this.entryFlags[entry] = flags;
+		this.nextOfSmaller[entry] = pushEntry(FriendshipGraph.smallerId(key), entry);
+		this.nextOfLarger[entry] = pushEntry(FriendshipGraph.largerId(key), entry);
+		insertIntoTable(key, entry);
+	}
+
+	private int findEntry(long key) {
+		int mask = this.table.length - 1;
+		int slot = hash(key) & mask;
+		while (isOccupied(slot)) {
+			int entry = this.table[slot] - 1;
+			if (this.entryKeys[entry] == key)
+				return entry;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	private void insertIntoTable(long key, int entry) {
+		int mask = this.table.length - 1;
+		int slot = hash(key) & mask;
+		while (isOccupied(slot)) {
+			slot = (slot + 1) & mask;
+		}
+		this.table[slot] = entry + 1;
+		this.tableWrites++;
+	}
+
+	private boolean isOccupied(int slot) {
+		int value = this.table[slot];
+		// Values beyond entryCount can only be left over from past days. Older
+		// values within it behave like a slot holding some other key, which
+		// only lengthens the probe sequence
+		return (value != 0) && (value <= this.entryCount);
+	}
+
+	/*
+	 * Pushes entry onto the chain of node, returning the previous head
+	 */
+	private int pushEntry(int node, int entry) {
+		int previousHead = firstEntryOf(node);
+		this.headEntries[node] = entry;
+		this.headEpochs[node] = this.epoch;
+		return previousHead;
+	}
+
+	private void rebuildTable() {
+		int capacity = MIN_TABLE_CAPACITY;
+		while (capacity < (this.entryCount * 4)) {
+			capacity *= 2;
+		}
+		this.table = new int[capacity];
+		this.tableWrites = 0;
+		for (int entry = 0; entry < this.entryCount; entry++) {
+			insertIntoTable(this.entryKeys[entry], entry);
+		}
+	}
+}
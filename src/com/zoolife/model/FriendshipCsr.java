@@ -0,0 +1,215 @@
+package com.zoolife.model;
+
+/**
+ * A frozen copy of the friendship network of a {@link com.zoolife.model.Zoo},
+ * in compressed sparse row (CSR) form: the friends of the animal with id i are
+ * the ids stored in getNeighbours() from index getOffsets()[i] (inclusive) to
+ * getOffsets()[i + 1] (exclusive), in increasing order. Every friendship
+ * therefore appears twice, once in the row of each of its two animals.
+ * <p>
+ * The two arrays are built once, in time linear in the size of the network,
+ * and never change afterwards, so a query that scans the whole network reads
+ * memory sequentially and does not touch the zoo's mutable structures. Later
+ * changes to the zoo are not reflected: get a new copy from
+ * Zoo.getFriendshipCsr() to see them. Since nothing is ever written after
+ * construction, a copy can be read by any number of threads.
+ *
+ * @see com.zoolife.model.Zoo
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public final class FriendshipCsr {
+
+	private AnimalTable animalTable; // The animals of the zoo, by id
+	private int day; // The day of the zoo when the copy was made
+	private int[] neighbours; // The rows of all the animals, one after the other
+	private int[] offsets; // Where the row of each animal starts (plus the end)
+
+	/**
+	 * Copies a friendship network. The rows are filled by visiting the
+	 * animals in id order and appending each one to the rows of its friends,
+	 * which leaves every row sorted without sorting it.
+	 *
+	 * @param animalTable
+	 *            the animals of the zoo
+	 * @param friendsGraph
+	 *            the friendships to copy
+	 * @param day
+	 *            the current day of the zoo
+	 */
+	FriendshipCsr(AnimalTable animalTable, FriendshipGraph friendsGraph, int day) {
+		this.animalTable = animalTable;
+		this.day = day;
+		int animalCount = friendsGraph.nodeCount();
+		this.offsets = new int[animalCount + 1];
+		for (int id = 0; id < animalCount; id++) {
+			this.offsets[id + 1] = this.offsets[id] + friendsGraph.degree(id);
+		}
+		this.neighbours = new int[this.offsets[animalCount]];
+		int[] rowEnds = new int[animalCount];
+		System.arraycopy(this.offsets, 0, rowEnds, 0, animalCount);
+		for (int id = 0; id < animalCount; id++) {
+			int degree = friendsGraph.degree(id);
+			for (int i = 0; i < degree; i++) {
+				this.neighbours[rowEnds[friendsGraph.neighbourAt(id, i)]++] = id;
+			}
+		}
+	}
+
+	/**
+	 * Copies a set of friendships given by their packed keys (see
+	 * FriendshipGraph.friendshipKey()). Since the keys are sorted, each row
+	 * receives its friends with smaller ids first and then those with larger
+	 * ids, both in increasing order, which again leaves every row sorted.
+	 *
+	 * @param animalTable
+	 *            the animals of the zoo
+	 * @param sortedKeys
+	 *            the distinct keys of the friendships to copy, in increasing
+	 *            order
+	 * @param day
+	 *            the current day of the zoo
+	 */
+	FriendshipCsr(AnimalTable animalTable, long[] sortedKeys, int day) {
+		this.animalTable = animalTable;
+		this.day = day;
+		int animalCount = animalTable.size();
+		this.offsets = new int[animalCount + 1];
+		for (long key : sortedKeys) {
+			this.offsets[FriendshipGraph.smallerId(key) + 1]++;
+			this.offsets[FriendshipGraph.largerId(key) + 1]++;
+		}
+		for (int id = 0; id < animalCount; id++) {
+			this.offsets[id + 1] += this.offsets[id];
+		}
+		this.neighbours = new int[this.offsets[animalCount]];
+		int[] rowEnds = new int[animalCount];
+		System.arraycopy(this.offsets, 0, rowEnds, 0, animalCount);
+		for (long key : sortedKeys) {
+			int smallerId = FriendshipGraph.smallerId(key);
+			int largerId = FriendshipGraph.largerId(key);
+			this.neighbours[rowEnds[smallerId]++] = largerId;
+			this.neighbours[rowEnds[largerId]++] = smallerId;
+		}
+	}
+
+	/**
+	 * @param id1
+	 *            the id of an animal
+	 * @param id2
+	 *            the id of another animal
+	 * @return true if the two animals were friends (found by a binary search in
+	 *         the shorter of their two rows)
+	 *
+	 * @throws IndexOutOfBoundsException
+	 *             if either id is not the id of an animal of the zoo
+	 */
+	public boolean areFriends(int id1, int id2) {
+		checkId(id1);
+		checkId(id2);
+		if (degree(id1) > degree(id2))
+			return indexOf(id2, id1) >= 0;
+		return indexOf(id1, id2) >= 0;
+	}
+
+	/**
+	 * @param id
+	 *            the id of an animal
+	 * @return the number of friends of the animal
+	 *
+	 * @throws IndexOutOfBoundsException
+	 *             if id is not the id of an animal of the zoo
+	 */
+	public int degree(int id) {
+		checkId(id);
+		return this.offsets[id + 1] - this.offsets[id];
+	}
+
+	/**
+	 * @param id
+	 *            the id of an animal
+	 * @return the animal with that id
+	 *
+	 * @throws IndexOutOfBoundsException
+	 *             if id is not the id of an animal of the zoo
+	 */
+	public Animal getAnimal(int id) {
+		checkId(id);
+		return this.animalTable.animalAt(id);
+	}
+
+	/**
+	 * @return the number of animals (i.e. one more than the largest animal id)
+	 */
+	public int getAnimalCount() {
+		return this.offsets.length - 1;
+	}
+
+	/**
+	 * @param anim
+	 *            an animal
+	 * @return the id of the animal in the zoo, or -1 if it is not a zoo animal
+	 */
+	public int getAnimalId(Animal anim) {
+		return this.animalTable.idOf(anim);
+	}
+
+	/**
+	 * @return the day of the zoo when the copy was made
+	 */
+	public int getDay() {
+		return this.day;
+	}
+
+	/**
+	 * @return the number of friendships (i.e. half the number of neighbours)
+	 */
+	public long getFriendshipCount() {
+		return this.neighbours.length / 2;
+	}
+
+	/**
+	 * @return the rows of all the animals, one after the other. The returned
+	 *         array is the copy's own (so that it can be scanned without any
+	 *         call per friend), and must only be read.
+	 */
+	public int[] getNeighbours() {
+		return this.neighbours;
+	}
+
+	/**
+	 * @return where the row of each animal starts in getNeighbours(), followed
+	 *         by the length of getNeighbours(). The returned array is the
+	 *         copy's own, and must only be read.
+	 */
+	public int[] getOffsets() {
+		return this.offsets;
+	}
+
+	private void checkId(int id) {
+		if ((id < 0) || (id >= getAnimalCount()))
+			throw new IndexOutOfBoundsException("There is no animal with the id " + id + "!");
+	}
+
+	/*
+	 * Returns the index of friendId in the row of id, or -1 if it is not there
+	 */
+	private int indexOf(int id, int friendId) {
+		int low = this.offsets[id];
+		int high = this.offsets[id + 1] - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int neighbour = this.neighbours[middle];
+			if (neighbour < friendId)
+				low = middle + 1;
+			else if (neighbour > friendId)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		return -1;
+	}
+}
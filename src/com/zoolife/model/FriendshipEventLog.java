@@ -0,0 +1,523 @@
+package com.zoolife.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A write-ahead log of every change made to the friendship network of a
+ * {@link com.zoolife.model.Zoo}, from which the state of the zoo at the end of
+ * any logged day can be rebuilt.
+ * <p>
+ * The log lives in a directory of its own. When the log is created, the
+ * current state of the zoo is saved there as a
+ * {@link com.zoolife.model.ZooSnapshot}. From then on, every friendship that
+ * is added, removed, or seeded, and the start of every day, is appended as a
+ * small fixed-size record to the current segment file, so that the records are
+ * stamped with the day they happened on. Records are batched in memory and
+ * written through a FileChannel; the segment is forced to disk (group commit)
+ * once every syncEveryDays days, when it is closed, and on sync(). A new segment
+ * is started every segmentDays days.
+ * <p>
+ * Once compactAfterSegments segments are closed, a background thread folds
+ * them into a new snapshot (by replaying them onto the previous one) and
+ * deletes them along with the previous snapshot. Disk use and replay time
+ * therefore stay bounded however many days are simulated, at the cost of only
+ * being able to rebuild the days from the latest snapshot on.
+ * <p>
+ * The log is notified by the zoo, on the thread that changes the zoo. Its
+ * public methods (other than the static replay()) must be called on that same
+ * thread.
+ *
+ * @see com.zoolife.model.Zoo
+ * @see com.zoolife.model.ZooSnapshot
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public final class FriendshipEventLog implements Closeable {
+
+	private static final byte ADDED = 1;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final byte DAY_STARTED = 2;
+	private static final int HEADER_SIZE = 8; // Of each segment
+	private static final int RECORD_SIZE = 9; // A type byte and two ints
+	private static final byte REMOVED = 3;
+	private static final byte SEEDED = 4;
+	private static final int SEGMENT_MAGIC = 0x4c4f4f5a; // "ZOOL" in
+															// little-endian
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final String SNAPSHOT_SUFFIX = ".zsnap";
+	private static final int VERSION = 1;
+
+	private int activeSegment; // The sequence number of the current segment
+	private ByteBuffer buffer; // Records not yet written to the segment
+	private int compactAfterSegments;
+	private Future<?> compaction; // The last scheduled compaction, or null
+	private IOException compactionFailure; // Of a background compaction, not
+											// yet reported
+	private ExecutorService compactor;
+	private int daysInSegment;
+	private int daysSinceSync;
+	private Path directory;
+	private final Object filesLock = new Object(); // Guards snapshotSegment
+													// and the files
+	private FileChannel segmentChannel;
+	private int segmentDays;
+	private int snapshotSegment; // The latest segment folded into the snapshot
+	private int syncEveryDays;
+	private Zoo zoo;
+
+	/**
+	 * Starts logging the changes of a zoo
+	 *
+	 * @param directory
+	 *            the directory of the log, which is created if needed and must
+	 *            not already hold a log
+	 * @param zoo
+	 *            the zoo whose changes are logged
+	 * @param syncEveryDays
+	 *            the number of days between two forces of the log to disk
+	 * @param segmentDays
+	 *            the number of days logged in each segment file
+	 * @param compactAfterSegments
+	 *            the number of closed segments that triggers a compaction
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the directory or the zoo
+	 * @throws IllegalArgumentException
+	 *             if one of the numbers is not positive, if the directory
+	 *             already holds a log, or if the zoo is already logged
+	 * @throws IOException
+	 *             if the log cannot be created
+	 */
+	public FriendshipEventLog(Path directory, Zoo zoo, int syncEveryDays, int segmentDays, int compactAfterSegments)
+			throws IOException {
+		if (directory == null)
+			throw new NullPointerException("A null object was passed as the log directory!");
+		if (zoo == null)
+			throw new NullPointerException("A null object was passed as the zoo to log!");
+		if ((syncEveryDays <= 0) || (segmentDays <= 0) || (compactAfterSegments <= 0))
+			throw new IllegalArgumentException("The sync, segment, and compaction intervals must be > 0!");
+		if (zoo.getEventLog() != null)
+			throw new IllegalArgumentException("The changes of this zoo are already logged!");
+		Files.createDirectories(directory);
+		if ((latestFile(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX) >= 0)
+				|| (latestFile(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX) >= 0))
+			throw new IllegalArgumentException(directory + " already holds an event log!");
+
+		this.directory = directory;
+		this.zoo = zoo;
+		this.syncEveryDays = syncEveryDays;
+		this.segmentDays = segmentDays;
+		this.compactAfterSegments = compactAfterSegments;
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "zoolife-log-compactor");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		ZooSnapshot.save(zoo, snapshotPath(directory, 0));
+		this.snapshotSegment = 0;
+		openSegment(1);
+		zoo.setEventLog(this);
+	}
+
+	/**
+	 * Rebuilds a zoo from a log directory, e.g. after a restart
+	 *
+	 * @param directory
+	 *            the directory of the log
+	 * @param lastDay
+	 *            the day whose end state is rebuilt (Integer.MAX_VALUE for the
+	 *            last logged state)
+	 * @return the zoo as it was at the end of lastDay (or at the end of the
+	 *         log, if lastDay is later)
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the directory
+	 * @throws IllegalArgumentException
+	 *             if lastDay precedes the latest snapshot of the log
+	 * @throws IOException
+	 *             if the log cannot be read or is corrupted
+	 */
+	public static Zoo replay(Path directory, int lastDay) throws IOException {
+		if (directory == null)
+			throw new NullPointerException("A null object was passed as the log directory!");
+		int snapshot = latestFile(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+		if (snapshot < 0)
+			throw new IOException(directory + " does not hold an event log");
+		return replay(directory, snapshot, lastDay);
+	}
+
+	/**
+	 * Stops logging: forces the log to disk, detaches it from the zoo, and
+	 * waits for a running compaction to finish
+	 *
+	 * @throws IOException
+	 *             if the log cannot be written, or if a compaction failed
+	 *             without having been reported by compact()
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.segmentChannel == null)
+			return;
+		try {
+			this.zoo.setEventLog(null);
+			sync();
+			this.segmentChannel.close();
+			this.segmentChannel = null;
+			this.compactor.shutdown();
+			if (this.compaction != null)
+				awaitCompaction(this.compaction);
+			if (this.compactionFailure != null)
+				throw this.compactionFailure;
+		} finally {
+			this.compactor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Folds all the closed segments into a new snapshot in the background.
+	 * Compactions also start on their own once enough segments are closed.
+	 *
+	 * @return the compaction, which completes once its files are replaced. If
+	 *         a compaction is already running, it is returned instead, and the
+	 *         segments closed since it started are left for the next one.
+	 *
+	 * @throws IOException
+	 *             if a previous compaction failed (which is reported once,
+	 *             so that calling compact() again retries it)
+	 */
+	public Future<?> compact() throws IOException {
+		synchronized (this.filesLock) {
+			if ((this.compaction != null) && !this.compaction.isDone())
+				return this.compaction;
+			if (this.compactionFailure != null) {
+				IOException failure = this.compactionFailure;
+				this.compactionFailure = null;
+				throw failure;
+			}
+			Future<?> previous = this.compaction;
+			this.compaction = null;
+			if (previous != null)
+				awaitCompaction(previous);
+			return startCompaction();
+		}
+	}
+
+	/**
+	 * @return the directory of the log
+	 */
+	public Path getDirectory() {
+		return this.directory;
+	}
+
+	/**
+	 * Rebuilds the logged zoo as it was at the end of an earlier day
+	 *
+	 * @param lastDay
+	 *            the day whose end state is rebuilt
+	 * @return a new zoo, which is not logged
+	 *
+	 * @throws IllegalArgumentException
+	 *             if lastDay precedes the latest snapshot of the log
+	 * @throws IOException
+	 *             if the log cannot be read or is corrupted
+	 */
+	public Zoo replayUpTo(int lastDay) throws IOException {
+		writeBuffer();
+		// Hold the lock so that no compaction deletes the files being read
+		synchronized (this.filesLock) {
+			return replay(this.directory, this.snapshotSegment, lastDay);
+		}
+	}
+
+	/**
+	 * Writes all the logged changes and forces them to disk
+	 *
+	 * @throws IOException
+	 *             if the log cannot be written
+	 */
+	public void sync() throws IOException {
+		writeBuffer();
+		this.segmentChannel.force(false);
+		this.daysSinceSync = 0;
+	}
+
+	/*
+	 * Called by the zoo before it moves to the new day. Everything that can
+	 * fail is done before the record of the day is appended, so that either
+	 * the day is logged or nothing is (and the zoo stays on its day). The
+	 * days logged so far are forced to disk before a new segment is started,
+	 * and every syncEveryDays days.
+	 */
+	void dayStarted(int day) {
+		try {
+			if (this.daysInSegment == this.segmentDays) {
+				sync();
+				this.segmentChannel.close();
+				openSegment(this.activeSegment + 1);
+				if ((this.activeSegment - 1 - this.snapshotSegment) >= this.compactAfterSegments)
+					compactInBackground();
+			} else if (this.daysSinceSync >= this.syncEveryDays) {
+				sync();
+			}
+			if (this.buffer.remaining() < RECORD_SIZE)
+				writeBuffer();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot write the friendship event log!", e);
+		}
+		this.daysInSegment++;
+		this.daysSinceSync++;
+		append(DAY_STARTED, day, 0);
+	}
+
+	void friendshipAdded(int id1, int id2) {
+		append(ADDED, id1, id2);
+	}
+
+	void friendshipRemoved(int id1, int id2) {
+		append(REMOVED, id1, id2);
+	}
+
+	void friendshipSeeded(int id1, int id2) {
+		append(SEEDED, id1, id2);
+	}
+
+	/*
+	 * Either appends the record or throws, leaving the log unchanged
+	 */
+	private void append(byte type, int value1, int value2) {
+		if (this.buffer.remaining() < RECORD_SIZE) {
+			try {
+				writeBuffer();
+			} catch (IOException e) {
+				throw new UncheckedIOException("Cannot write the friendship event log!", e);
+			}
+		}
+		this.buffer.put(type).putInt(value1).putInt(value2);
+	}
+
+	/*
+	 * Applies the records of a segment to a zoo, and returns false if a record
+	 * of a day after lastDay was reached. A truncated last record (left by a
+	 * crash) is ignored if the segment is the last one.
+	 */
+	private static boolean applySegment(Zoo zoo, Path segment, int lastDay, boolean isLast) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+			if (!readFully(channel, buffer, HEADER_SIZE)) {
+				// The header of the last segment may not have been written yet
+				if (isLast)
+					return true;
+				throw new IOException(segment + " is truncated");
+			}
+			if ((buffer.getInt() != SEGMENT_MAGIC) || (buffer.getInt() != VERSION))
+				throw new IOException(segment + " is not a friendship event log segment");
+			buffer.compact();
+			while (true) {
+				buffer.flip();
+				while (buffer.remaining() >= RECORD_SIZE) {
+					byte type = buffer.get();
+					int value1 = buffer.getInt();
+					int value2 = buffer.getInt();
+					if ((type == DAY_STARTED) && (value1 > lastDay))
+						return false;
+					if (!applyRecord(zoo, type, value1, value2))
+						throw new IOException(segment + " is corrupted: invalid record of type " + type);
+				}
+				buffer.compact();
+				if (channel.read(buffer) < 0)
+					break;
+			}
+			if ((buffer.position() > 0) && !isLast)
+				throw new IOException(segment + " is truncated");
+		}
+		return true;
+	}
+
+	private static boolean applyRecord(Zoo zoo, byte type, int value1, int value2) {
+		if (type == DAY_STARTED) {
+			if (value1 != (zoo.getDayCount() + 1))
+				return false;
+			zoo.incrementDay();
+			return true;
+		}
+		int animalCount = zoo.getAnimalCount();
+		if ((value1 < 0) || (value1 >= animalCount) || (value2 < 0) || (value2 >= animalCount) || (value1 == value2))
+			return false;
+		switch (type) {
+		case ADDED:
+			return zoo.addFriendshipById(value1, value2);
+		case REMOVED:
+			return zoo.removeFriendshipById(value1, value2);
+		case SEEDED:
+			return (zoo.getDayCount() == 0) && zoo.seedFriendshipById(value1, value2);
+		default:
+			return false;
+		}
+	}
+
+	private void awaitCompaction(Future<?> running) throws IOException {
+		try {
+			running.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the log compaction", e);
+		} catch (ExecutionException e) {
+			throw new IOException("The log compaction failed", e.getCause());
+		}
+	}
+
+	/*
+	 * Runs in the background: replays the segments (fromSnapshot, toSegment]
+	 * onto the snapshot of fromSnapshot, and replaces them with the result
+	 */
+	private void compact(int fromSnapshot, int toSegment) throws IOException {
+		Zoo compacted = ZooSnapshot.load(snapshotPath(this.directory, fromSnapshot));
+		for (int segment = fromSnapshot + 1; segment <= toSegment; segment++) {
+			applySegment(compacted, segmentPath(this.directory, segment), Integer.MAX_VALUE, false);
+		}
+		ZooSnapshot.save(compacted, snapshotPath(this.directory, toSegment));
+
+		synchronized (this.filesLock) {
+			this.snapshotSegment = toSegment;
+			Files.delete(snapshotPath(this.directory, fromSnapshot));
+			for (int segment = fromSnapshot + 1; segment <= toSegment; segment++) {
+				Files.delete(segmentPath(this.directory, segment));
+			}
+		}
+	}
+
+	/*
+	 * Starts a compaction when a segment is closed, unless one is running. The
+	 * failure of the previous one is kept for compact() or close() to report
+	 * (its segments are still there, so the new compaction folds them too).
+	 */
+	private void compactInBackground() {
+		synchronized (this.filesLock) {
+			if (this.compaction != null) {
+				if (!this.compaction.isDone())
+					return;
+				try {
+					awaitCompaction(this.compaction);
+				} catch (IOException e) {
+					if (this.compactionFailure == null)
+						this.compactionFailure = e;
+				}
+			}
+			startCompaction();
+		}
+	}
+
+	/*
+	 * Returns the largest sequence number of the segments (or snapshots) of
+	 * the directory, or -1 if there is none. Leftover temporary files are not
+	 * counted.
+	 */
+	private static int latestFile(Path directory, String prefix, String suffix) throws IOException {
+		int latest = -1;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				try {
+					latest = Math.max(latest,
+							Integer.parseInt(name.substring(prefix.length(), name.length() - suffix.length())));
+				} catch (NumberFormatException | IndexOutOfBoundsException e) {
+					// Not a file of the log
+				}
+			}
+		}
+		return latest;
+	}
+
+	private void openSegment(int segment) throws IOException {
+		this.segmentChannel = FileChannel.open(segmentPath(this.directory, segment), StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.WRITE);
+		this.activeSegment = segment;
+		this.daysInSegment = (segment == 1) ? 1 : 0; // The first segment
+														// continues the
+														// current day
+		this.buffer.putInt(SEGMENT_MAGIC).putInt(VERSION);
+	}
+
+	private static boolean readFully(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		while (buffer.position() < bytes) {
+			if (channel.read(buffer) < 0)
+				return false;
+		}
+		buffer.flip();
+		return true;
+	}
+
+	private static Zoo replay(Path directory, int snapshot, int lastDay) throws IOException {
+		Zoo zoo = ZooSnapshot.load(snapshotPath(directory, snapshot));
+		if (lastDay < zoo.getDayCount())
+			throw new IllegalArgumentException("Day " + lastDay + " was compacted: the log starts from day "
+					+ zoo.getDayCount() + "!");
+		int lastSegment = latestFile(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+		for (int segment = snapshot + 1; segment <= lastSegment; segment++) {
+			if (!applySegment(zoo, segmentPath(directory, segment), lastDay, segment == lastSegment))
+				break;
+		}
+		return zoo;
+	}
+
+	private static Path segmentPath(Path directory, int segment) {
+		return directory.resolve(SEGMENT_PREFIX + String.format("%010d", segment) + SEGMENT_SUFFIX);
+	}
+
+	private static Path snapshotPath(Path directory, int segment) {
+		return directory.resolve(SNAPSHOT_PREFIX + String.format("%010d", segment) + SNAPSHOT_SUFFIX);
+	}
+
+	/*
+	 * Schedules the folding of the closed segments, if there are any. The
+	 * caller holds filesLock, and no compaction is running.
+	 */
+	private Future<?> startCompaction() {
+		int fromSnapshot = this.snapshotSegment;
+		int toSegment = this.activeSegment - 1;
+		if (toSegment <= fromSnapshot)
+			return CompletableFuture.completedFuture(null);
+		this.compaction = this.compactor.submit(() -> {
+			compact(fromSnapshot, toSegment);
+			return null;
+		});
+		return this.compaction;
+	}
+
+	/*
+	 * Writes the buffered records. If the write fails, the records that were
+	 * not written stay buffered (and are written by the next call), rather
+	 * than being overwritten by the next appends.
+	 */
+	private void writeBuffer() throws IOException {
+		this.buffer.flip();
+		try {
+			while (this.buffer.hasRemaining()) {
+				this.segmentChannel.write(this.buffer);
+			}
+		} finally {
+			this.buffer.compact();
+		}
+	}
+}
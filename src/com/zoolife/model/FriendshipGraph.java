@@ -0,0 +1,203 @@
+package com.zoolife.model;
+
+import java.util.Arrays;
+
+/**
+ * The primitive core of the zoo's friendship network. Animals are referred to
+ * by the dense integer ids that the {@link com.zoolife.model.Zoo} class assigns
+ * to them, and the neighbours of each animal are kept in a plain int array.
+ * The network therefore holds no boxed values and no per-friendship objects.
+ * In addition, every edge is kept in a {@link com.zoolife.model.LongHashSet}
+ * under its packed friendship key (see friendshipKey()), so checking whether
+ * two animals are connected takes constant time.
+ * <p>
+ * This class only ensures that the network stays symmetric (i.e. that if b is
+ * a neighbour of a, then a is a neighbour of b). Validating the edits (e.g.
+ * that both animals belong to the zoo) is left to the Zoo class.
+ *
+ * @see com.zoolife.model.Zoo
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+final class FriendshipGraph {
+
+	private static final int INITIAL_NEIGHBOURS_CAPACITY = 4;
+	private static final int[] NO_NEIGHBOURS = new int[0];
+
+	private int[] degrees; // The number of neighbours of each node
+	private LongHashSet edges; // The packed keys of all edges
+	private int[][] neighbours; // The neighbours of each node (only the first
+								// degrees[node] entries are in use)
+
+	/**
+	 * @param nodeCount
+	 *            the number of nodes (animals) in the graph
+	 */
+	FriendshipGraph(int nodeCount) {
+		this(nodeCount, 0);
+	}
+
+	/**
+	 * @param nodeCount
+	 *            the number of nodes (animals) in the graph
+	 * @param expectedEdgeCount
+	 *            the number of edges the graph is expected to hold, so that
+	 *            its edge set can be sized up front
+	 */
+	FriendshipGraph(int nodeCount, long expectedEdgeCount) {
+		this.degrees = new int[nodeCount];
+		this.neighbours = new int[nodeCount][];
+		Arrays.fill(this.neighbours, NO_NEIGHBOURS);
+		this.edges = new LongHashSet(expectedEdgeCount);
+	}
+
+	/**
+	 * Packs the ids of two different animals into a single key. The smaller id
+	 * goes into the high 32 bits, so the key does not depend on the order of
+	 * the two animals.
+	 *
+	 * @return the canonical key of the friendship between animals a and b
+	 */
+	static long friendshipKey(int a, int b) {
+		if (a > b)
+			return ((long) b << 32) | a;
+		return ((long) a << 32) | b;
+	}
+
+	/**
+	 * @return the larger of the two ids packed in key
+	 */
+	static int largerId(long key) {
+		return (int) key;
+	}
+
+	/**
+	 * @return the smaller of the two ids packed in key
+	 */
+	static int smallerId(long key) {
+		return (int) (key >>> 32);
+	}
+
+	/**
+	 * Connects nodes a and b.
+	 *
+	 * @return true if a and b were not already connected
+	 */
+	boolean addEdge(int a, int b) {
+		if (!this.edges.add(friendshipKey(a, b)))
+			return false;
+		appendNeighbour(a, b);
+		appendNeighbour(b, a);
+		return true;
+	}
+
+	int degree(int node) {
+		return this.degrees[node];
+	}
+
+	long edgeCount() {
+		return this.edges.size();
+	}
+
+	/**
+	 * @return the packed keys of all edges. The returned set is the live one
+	 *         and must only be read.
+	 */
+	LongHashSet edges() {
+		return this.edges;
+	}
+
+	/**
+	 * @return true if nodes a and b are connected
+	 */
+	boolean hasEdge(int a, int b) {
+		return this.edges.contains(friendshipKey(a, b));
+	}
+
+	/**
+	 * @return the index-th neighbour of node (0 &lt;= index &lt; degree(node))
+	 */
+	int neighbourAt(int node, int index) {
+		return this.neighbours[node][index];
+	}
+
+	int nodeCount() {
+		return this.degrees.length;
+	}
+
+	/**
+	 * Gives a node that has no neighbours yet its whole list of neighbours at
+	 * once, taking ownership of the passed array. This is how a graph is
+	 * rebuilt from a snapshot: each edge is restored from both of its ends,
+	 * but is only added to the edge set from the end with the smaller id. The
+	 * caller must therefore make sure that the restored lists are symmetric.
+	 *
+	 * @return false (and leaves the graph unchanged) if node already has
+	 *         neighbours, or if a neighbour is not a valid node or is node
+	 *         itself
+	 */
+	boolean restoreNeighbours(int node, int[] nodeNeighbours) {
+		if (this.degrees[node] != 0)
+			return false;
+		for (int neighbour : nodeNeighbours) {
+			if ((neighbour < 0) || (neighbour >= this.degrees.length) || (neighbour == node))
+				return false;
+		}
+		if (nodeNeighbours.length == 0)
+			return true;
+		this.neighbours[node] = nodeNeighbours;
+		this.degrees[node] = nodeNeighbours.length;
+		for (int neighbour : nodeNeighbours) {
+			if (neighbour > node)
+				this.edges.add(friendshipKey(node, neighbour));
+		}
+		return true;
+	}
+
+	/**
+	 * Disconnects nodes a and b.
+	 *
+	 * @return true if a and b were connected
+	 */
+	boolean removeEdge(int a, int b) {
+		if (!this.edges.remove(friendshipKey(a, b)))
+			return false;
+		removeNeighbour(a, b);
+		removeNeighbour(b, a);
+		return true;
+	}
+
+	private void appendNeighbour(int node, int neighbour) {
+		int[] nodeNeighbours = this.neighbours[node];
+		int degree = this.degrees[node];
+		if (nodeNeighbours == NO_NEIGHBOURS) {
+			nodeNeighbours = new int[INITIAL_NEIGHBOURS_CAPACITY];
+			this.neighbours[node] = nodeNeighbours;
+		} else if (degree == nodeNeighbours.length) {
+			nodeNeighbours = Arrays.copyOf(nodeNeighbours, degree * 2);
+			this.neighbours[node] = nodeNeighbours;
+		}
+		nodeNeighbours[degree] = neighbour;
+		this.degrees[node] = degree + 1;
+	}
+
+	private int indexOfNeighbour(int node, int neighbour) {
+		int[] nodeNeighbours = this.neighbours[node];
+		int degree = this.degrees[node];
+		for (int i = 0; i < degree; i++) {
+			if (nodeNeighbours[i] == neighbour)
+				return i;
+		}
+		return -1;
+	}
+
+	private void removeNeighbour(int node, int neighbour) {
+		int index = indexOfNeighbour(node, neighbour);
+		// Swap-remove: the order of the neighbours is not significant
+		int lastIndex = --this.degrees[node];
+		this.neighbours[node][index] = this.neighbours[node][lastIndex];
+	}
+}
@@ -0,0 +1,66 @@
+package com.zoolife.model;
+
+import java.util.Arrays;
+
+/**
+ * A pool of animal ids from which random ids are drawn without replacement.
+ * The ids are kept in an array, and a drawn id is swapped with the last one
+ * before it is removed, so each draw takes constant time.
+ * <p>
+ * A single pool is meant to be reused (cleared and refilled) for every animal
+ * of a simulated day, so that drawing friends allocates nothing once the pool
+ * has grown to its working size.
+ *
+ * @see com.zoolife.model.ZooKeeper
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+final class IdCandidatePool {
+
+	private int[] ids;
+	private int size;
+
+	IdCandidatePool() {
+		this.ids = new int[16];
+	}
+
+	void add(int id) {
+		if (this.size == this.ids.length)
+			this.ids = Arrays.copyOf(this.ids, this.size * 2);
+		this.ids[this.size++] = id;
+	}
+
+	void clear() {
+		this.size = 0;
+	}
+
+	boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Removes the id at the passed position. Drawing the position uniformly
+	 * from [0, size()) draws a uniformly chosen id.
+	 *
+	 * @param index
+	 *            the position of the id to remove (0 &lt;= index &lt; size())
+	 * @return the removed id
+	 *
+	 * @throws IndexOutOfBoundsException
+	 *             if index is out of range
+	 */
+	int removeAt(int index) {
+		if ((index < 0) || (index >= this.size))
+			throw new IndexOutOfBoundsException("No candidate at position " + index + "!");
+		int id = this.ids[index];
+		this.ids[index] = this.ids[--this.size];
+		return id;
+	}
+
+	int size() {
+		return this.size;
+	}
+}
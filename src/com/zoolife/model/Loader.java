@@ -1,16 +1,31 @@
 package com.zoolife.model;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.SplittableRandom;
 
 /**
  *
  * This class loads the initial ZooLife application properties.
  *
- * <b>Note:</b> These properties are currently hard-coded in this class, but
- * could in the future be extended to load from an external source (e.g. from
- * file)
+ * <b>Note:</b> By default, these properties are hard-coded in this class. A
+ * loader created with a file (see Loader(Path)) reads them from that file
+ * instead, streaming its CSV or JSON-lines records one at a time.
+ * <p>
+ * For testing the simulation at scale, this class can also generate any number
+ * of animals (see generateAnimals()) or a whole zoo with an initial friendship
+ * network (see generateZoo()). The generated animals and friendships depend
+ * only on the passed seed.
  *
  * @author Tarek Oraby
  * @version 1.0
@@ -19,16 +34,83 @@ import java.util.Set;
 
 public class Loader {
 
+	/**
+	 * The shapes of the initial friendship network that generateZoo() can
+	 * build
+	 */
+	public enum DegreeDistribution {
+		/**
+		 * Friendships between uniformly drawn pairs of animals (an
+		 * Erd&#337;s-R&eacute;nyi network), so most animals have close to the
+		 * mean number of friends
+		 */
+		UNIFORM,
+		/**
+		 * Preferential attachment (a Barab&aacute;si-Albert network): each
+		 * animal befriends earlier animals with a probability proportional to
+		 * their number of friends, so a few animals end up with very many
+		 * friends
+		 */
+		POWER_LAW,
+		/**
+		 * A ring in which each animal is friends with its nearest neighbours,
+		 * with a small share of the friendships rewired to random animals (a
+		 * Watts-Strogatz network)
+		 */
+		SMALL_WORLD
+	}
+
+	private static final String[] DOG_TYPES = { "Hunting dog", "Assistance dog", "Racing dog", "Guard dog",
+			"Herding dog" };
+	private static final String[] FOODS = { "Meat", "Fresh meat", "Pedigree", "Grain", "Corn", "Seeds", "Fruit" };
+	private static final int MAX_REWIRING_DRAWS = 16; // Per rewired friendship
+	private static final String[] NAME_STEMS = { "Ace", "Bella", "Coco", "Daisy", "Echo", "Finn", "Ginger", "Hazel",
+			"Iris", "Juno", "Kiwi", "Luna", "Max", "Nala", "Oscar", "Pip", "Rex", "Sunny", "Toby", "Ziggy" };
+	private static final double REWIRING_PROBABILITY = 0.1; // For SMALL_WORLD
+
 	private boolean animalsLoaded;
+	private List<String> loadWarnings;
 	private Set<Animal> loadedAnimals;
 	private HashMap<String, Integer> loadedZooKeeperSettings;
+	private int malformedRecords;
+	private Path sourceFile; // null for the hard-coded properties
 	private boolean zooKeeperSettingsLoaded;
 
 	/**
 	 * Default constructor.
 	 */
 	public Loader() {
+		this.loadWarnings = Collections.emptyList();
+	}
 
+	/**
+	 * Creates a loader that reads the animals and the zoo keeper settings from
+	 * a file. The file is read (once) when either of them is first loaded.
+	 * <p>
+	 * Files ending in .jsonl, .ndjson, or .json hold one JSON object per line,
+	 * e.g. <code>{"species":"dog","name":"Rex","favFood":"Meat","dogType":"Guard dog"}</code>
+	 * or <code>{"setting":"maxLosableFriends","value":1}</code>. Any other file
+	 * is read as CSV, with records such as <code>dog,Rex,Meat,Guard dog</code>,
+	 * <code>parrot,Polly,Grain,0.3,true</code> (the last field tells whether
+	 * the parrot can speak), <code>chicken,Henny,Corn,0.7,false</code> (the
+	 * last field tells whether the chicken is a broiler), or
+	 * <code>setting,maxGainableFriends,2</code>. A setting that the file does
+	 * not define keeps its hard-coded value.
+	 * <p>
+	 * Malformed records do not abort the load: they are skipped and reported
+	 * by getLoadWarnings().
+	 *
+	 * @param sourceFile
+	 *            the CSV or JSON-lines file to load from
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the file
+	 */
+	public Loader(Path sourceFile) {
+		if (sourceFile == null)
+			throw new NullPointerException("A null object was passed as the file to load from!");
+		this.sourceFile = sourceFile;
+		this.loadWarnings = Collections.emptyList();
 	}
 
 	/**
@@ -36,16 +118,19 @@ public class Loader {
 	 * Loads and returns the set of {@link com.zoolife.model.Animal} objects
 	 * that the zoo should contain
 	 *
-	 * <b>Note:</b> The set of animals are currently hard-coded in this method.
-	 * In the future, this method could be extended to load the set of zoo
-	 * animals from file
+	 * <b>Note:</b> Unless the loader was created with a file, the set of
+	 * animals is hard-coded in this method
 	 *
 	 * @return a HashSet of {@link com.zoolife.model.Animal} objects that the
 	 *         zoo should contain
 	 *
+	 * @throws UncheckedIOException
+	 *             if the loader was created with a file that cannot be read
 	 */
 	public Set<Animal> loadAnimals() {
-		if (!this.animalsLoaded) {
+		if (!this.animalsLoaded && (this.sourceFile != null)) {
+			loadFile();
+		} else if (!this.animalsLoaded) {
 			this.loadedAnimals = new HashSet<Animal>();
 			this.loadedAnimals.add(new Dog("Dog one", "Meat", "Hunting dog"));
 			this.loadedAnimals.add(new Dog("Dog two", "Fresh meat", "Assistance dog"));
@@ -59,16 +144,164 @@ public class Loader {
 		return this.loadedAnimals;
 	}
 
+	/**
+	 * Generates animals of the three species. The animals are not held in
+	 * memory by the returned collection: each of its iterators creates them
+	 * one at a time, in the same order and with the same properties. This lets
+	 * a large zoo be built without any intermediate copy of its animals, e.g.
+	 * <code>new Zoo(loader.generateAnimals(...))</code>.
+	 * <p>
+	 * Each animal gets a unique name (a name drawn from a fixed list followed
+	 * by the animal's number), a random species picked according to the
+	 * passed weights, and random properties.
+	 *
+	 * @param animalCount
+	 *            the number of animals to generate
+	 * @param dogWeight
+	 *            the relative share of dogs
+	 * @param parrotWeight
+	 *            the relative share of parrots
+	 * @param chickenWeight
+	 *            the relative share of chickens
+	 * @param seed
+	 *            the seed that determines the generated animals
+	 * @return a lazily generated, unmodifiable collection of animalCount
+	 *         distinct animals
+	 *
+	 * @throws IllegalArgumentException
+	 *             if animalCount is not positive, if a weight is negative, or
+	 *             if all the weights are 0
+	 */
+	public Collection<Animal> generateAnimals(int animalCount, int dogWeight, int parrotWeight, int chickenWeight,
+			long seed) {
+		if (animalCount <= 0)
+			throw new IllegalArgumentException("The number of animals must be > 0!");
+		if ((dogWeight < 0) || (parrotWeight < 0) || (chickenWeight < 0))
+			throw new IllegalArgumentException("The species weights cannot be negative!");
+		if (((long) dogWeight + parrotWeight + chickenWeight) <= 0)
+			throw new IllegalArgumentException("At least one species weight must be > 0!");
+		if (((long) dogWeight + parrotWeight + chickenWeight) > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The species weights are too large!");
+
+		return new AbstractCollection<Animal>() {
+			@Override
+			public Iterator<Animal> iterator() {
+				return new GeneratedAnimalsIterator(animalCount, dogWeight, parrotWeight, chickenWeight, seed);
+			}
+
+			@Override
+			public int size() {
+				return animalCount;
+			}
+		};
+	}
+
+	/**
+	 * Generates a zoo of animals (see generateAnimals()) that are already
+	 * friends with one another according to the chosen degree distribution.
+	 * The initial friendships are part of the zoo's starting state: they are
+	 * not reported as friendships established on the first day.
+	 *
+	 * @param animalCount
+	 *            the number of animals to generate
+	 * @param dogWeight
+	 *            the relative share of dogs
+	 * @param parrotWeight
+	 *            the relative share of parrots
+	 * @param chickenWeight
+	 *            the relative share of chickens
+	 * @param distribution
+	 *            the shape of the initial friendship network
+	 * @param meanDegree
+	 *            the mean number of friends per animal (0 for no initial
+	 *            friendships). POWER_LAW and SMALL_WORLD networks have an even
+	 *            mean, so an odd value is rounded down (and 1 is rounded up).
+	 * @param seed
+	 *            the seed that determines the animals and their friendships
+	 * @return the generated zoo, on which incrementDay() has not been called
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the degree distribution
+	 * @throws IllegalArgumentException
+	 *             if the arguments are not accepted by generateAnimals(), or
+	 *             if meanDegree is negative or larger than (animalCount - 1) /
+	 *             2 (the generated networks are meant to be sparse)
+	 */
+	public Zoo generateZoo(int animalCount, int dogWeight, int parrotWeight, int chickenWeight,
+			DegreeDistribution distribution, int meanDegree, long seed) {
+		if (distribution == null)
+			throw new NullPointerException("A null object was passed as the degree distribution!");
+		if ((meanDegree < 0) || (meanDegree > ((animalCount - 1) / 2)))
+			throw new IllegalArgumentException("The mean number of friends must be between 0 and (animals - 1) / 2!");
+
+		Zoo zoo = new Zoo(generateAnimals(animalCount, dogWeight, parrotWeight, chickenWeight, seed));
+		seedFriendships(zoo, distribution, meanDegree, seed);
+		return zoo;
+	}
+
+	/**
+	 * Generates a zoo of the animals of another zoo (see Zoo(Zoo), which
+	 * shares them between the two zoos rather than copying them), whose
+	 * animals are friends with one another according to the chosen degree
+	 * distribution (see the other generateZoo()). This is the way to build
+	 * many zoos of the same animals, each with its own friendships.
+	 *
+	 * @param animalsSource
+	 *            the zoo whose animals are shared
+	 * @param distribution
+	 *            the shape of the initial friendship network
+	 * @param meanDegree
+	 *            the mean number of friends per animal (0 for no initial
+	 *            friendships)
+	 * @param seed
+	 *            the seed that determines the friendships
+	 * @return the generated zoo, on which incrementDay() has not been called
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the zoo or the degree
+	 *             distribution
+	 * @throws IllegalArgumentException
+	 *             if meanDegree is negative or larger than (animals - 1) / 2
+	 */
+	public Zoo generateZoo(Zoo animalsSource, DegreeDistribution distribution, int meanDegree, long seed) {
+		if (distribution == null)
+			throw new NullPointerException("A null object was passed as the degree distribution!");
+		Zoo zoo = new Zoo(animalsSource);
+		if ((meanDegree < 0) || (meanDegree > ((zoo.getAnimalsNumber() - 1) / 2)))
+			throw new IllegalArgumentException("The mean number of friends must be between 0 and (animals - 1) / 2!");
+		seedFriendships(zoo, distribution, meanDegree, seed);
+		return zoo;
+	}
+
+	/**
+	 * @return the number of records of the loaded file that were skipped
+	 *         because they were malformed (0 before the file is loaded)
+	 */
+	public int getMalformedRecordsCount() {
+		return this.malformedRecords;
+	}
+
+	/**
+	 * @return the warnings about the records of the loaded file that were
+	 *         skipped, each starting with the record's line number (at most
+	 *         the first 1000 of them are kept)
+	 */
+	public List<String> getLoadWarnings() {
+		return this.loadWarnings;
+	}
+
 	/**
 	 *
 	 * Loads and returns the maximum number of friends that each zoo animal can
 	 * loose per round of simulation (day)
 	 *
-	 * <b>Note:</b> this maximum number is currently hard-coded in this method.
-	 * In the future, this method could be extended to load the number from file
+	 * <b>Note:</b> unless the loader was created with a file that defines it,
+	 * this maximum number is hard-coded in this method
 	 *
 	 * @return maximum number of friends each animal can loose per day
 	 *
+	 * @throws UncheckedIOException
+	 *             if the loader was created with a file that cannot be read
 	 */
 	public int loadMaxLosableFriends() {
 		if (!this.zooKeeperSettingsLoaded) {
@@ -82,11 +315,13 @@ public class Loader {
 	 * Loads and returns the maximum number of friends that each zoo animal can
 	 * gain per round of simulation (day)
 	 *
-	 * <b>Note:</b> this maximum number is currently hard-coded in this method.
-	 * In the future, this method could be extended to load the number from file
+	 * <b>Note:</b> unless the loader was created with a file that defines it,
+	 * this maximum number is hard-coded in this method
 	 *
 	 * @return maximum number of friends each animal can gain per day
 	 *
+	 * @throws UncheckedIOException
+	 *             if the loader was created with a file that cannot be read
 	 */
 	public int maxGainableFriends() {
 		if (!this.zooKeeperSettingsLoaded) {
@@ -95,11 +330,179 @@ public class Loader {
 		return this.loadedZooKeeperSettings.get("maxGainableFriends");
 	}
 
+	/*
+	 * Seeds the initial friendships of a zoo with the passed distribution
+	 */
+	private static void seedFriendships(Zoo zoo, DegreeDistribution distribution, int meanDegree, long seed) {
+		if (meanDegree == 0)
+			return;
+
+		// A different stream than the one of the animals
+		SplittableRandom random = new SplittableRandom(seed).split();
+		switch (distribution) {
+		case UNIFORM:
+			seedUniformFriendships(zoo, meanDegree, random);
+			break;
+		case POWER_LAW:
+			seedPowerLawFriendships(zoo, Math.max(1, meanDegree / 2), random);
+			break;
+		case SMALL_WORLD:
+			seedSmallWorldFriendships(zoo, Math.max(1, meanDegree / 2), random);
+			break;
+		}
+	}
+
+	/*
+	 * Barabasi-Albert: each animal after the first (edgesPerAnimal + 1) ones,
+	 * which are all friends, befriends edgesPerAnimal distinct earlier animals.
+	 * Picking a random end of a random friendship picks an animal with a
+	 * probability proportional to its number of friends.
+	 */
+	private static void seedPowerLawFriendships(Zoo zoo, int edgesPerAnimal, SplittableRandom random) {
+		int n = zoo.getAnimalCount();
+		int[] endpoints = new int[(int) Math.min(Integer.MAX_VALUE - 8, 2L * edgesPerAnimal * n)];
+		int endpointCount = 0;
+		for (int a = 0; a <= edgesPerAnimal; a++) {
+			for (int b = 0; b < a; b++) {
+				zoo.seedFriendshipById(a, b);
+				endpoints[endpointCount++] = a;
+				endpoints[endpointCount++] = b;
+			}
+		}
+		for (int a = edgesPerAnimal + 1; a < n; a++) {
+			// Only the endpoints of the previous animals are candidates, so a
+			// never befriends itself
+			int candidates = endpointCount;
+			int added = 0;
+			while (added < edgesPerAnimal) {
+				int b = endpoints[random.nextInt(candidates)];
+				if (zoo.seedFriendshipById(a, b)) {
+					endpoints[endpointCount++] = a;
+					endpoints[endpointCount++] = b;
+					added++;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Watts-Strogatz: each animal befriends its neighboursPerSide next animals
+	 * on a ring, except that some of these friendships go to a random animal
+	 * instead
+	 */
+	private static void seedSmallWorldFriendships(Zoo zoo, int neighboursPerSide, SplittableRandom random) {
+		int n = zoo.getAnimalCount();
+		for (int a = 0; a < n; a++) {
+			for (int j = 1; j <= neighboursPerSide; j++) {
+				boolean rewired = false;
+				if (random.nextDouble() < REWIRING_PROBABILITY) {
+					for (int draw = 0; !rewired && (draw < MAX_REWIRING_DRAWS); draw++) {
+						rewired = zoo.seedFriendshipById(a, random.nextInt(n));
+					}
+				}
+				if (!rewired)
+					zoo.seedFriendshipById(a, (a + j) % n);
+			}
+		}
+	}
+
+	/*
+	 * Erdos-Renyi: befriends uniformly drawn pairs until the network has the
+	 * wanted number of friendships. Since the network is sparse, few pairs are
+	 * rejected for being the same animal or already friends.
+	 */
+	private static void seedUniformFriendships(Zoo zoo, int meanDegree, SplittableRandom random) {
+		int n = zoo.getAnimalCount();
+		long friendships = ((long) n * meanDegree) / 2;
+		while (friendships > 0) {
+			if (zoo.seedFriendshipById(random.nextInt(n), random.nextInt(n)))
+				friendships--;
+		}
+	}
+
+	// called once
+	private void loadFile() {
+		ZooFileReader reader = new ZooFileReader(this.sourceFile);
+		try {
+			reader.read();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot load the zoo from " + this.sourceFile, e);
+		}
+		this.loadedAnimals = reader.getAnimals();
+		this.animalsLoaded = true;
+		this.loadedZooKeeperSettings = defaultZooKeeperSettings();
+		this.loadedZooKeeperSettings.putAll(reader.getSettings());
+		this.zooKeeperSettingsLoaded = true;
+		this.loadWarnings = Collections.unmodifiableList(reader.getWarnings());
+		this.malformedRecords = reader.getMalformedRecords();
+	}
+
 	// called once
 	private void loadZooKeeperSettings() {
-		this.loadedZooKeeperSettings = new HashMap<String, Integer>();
-		this.loadedZooKeeperSettings.put("maxLosableFriends", 1);
-		this.loadedZooKeeperSettings.put("maxGainableFriends", 1);
+		if (this.sourceFile != null) {
+			loadFile();
+			return;
+		}
+		this.loadedZooKeeperSettings = defaultZooKeeperSettings();
 		this.zooKeeperSettingsLoaded = true;
 	}
+
+	private static HashMap<String, Integer> defaultZooKeeperSettings() {
+		HashMap<String, Integer> settings = new HashMap<String, Integer>();
+		settings.put("maxLosableFriends", 1);
+		settings.put("maxGainableFriends", 1);
+		return settings;
+	}
+
+	/*
+	 * Creates the generated animals one at a time
+	 */
+	private static final class GeneratedAnimalsIterator implements Iterator<Animal> {
+
+		private int animalCount;
+		private int chickenThreshold; // Draws below it (and above the parrots')
+										// are chickens
+		private int dogThreshold; // Draws below it are dogs
+		private int nextNumber;
+		private int parrotThreshold; // Draws below it (and above the dogs') are
+										// parrots
+		private SplittableRandom random;
+
+		GeneratedAnimalsIterator(int animalCount, int dogWeight, int parrotWeight, int chickenWeight, long seed) {
+			this.animalCount = animalCount;
+			this.dogThreshold = dogWeight;
+			this.parrotThreshold = dogWeight + parrotWeight;
+			this.chickenThreshold = dogWeight + parrotWeight + chickenWeight;
+			this.random = new SplittableRandom(seed);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.nextNumber < this.animalCount;
+		}
+
+		@Override
+		public Animal next() {
+			if (!hasNext())
+				throw new NoSuchElementException("All the animals were generated!");
+			int number = ++this.nextNumber;
+			// The number makes the name unique, and keeps it within the 20
+			// characters allowed (the longest stem has 6)
+			String name = NAME_STEMS[this.random.nextInt(NAME_STEMS.length)] + " " + number;
+			String favFood = FOODS[this.random.nextInt(FOODS.length)];
+			int species = this.random.nextInt(this.chickenThreshold);
+			if (species < this.dogThreshold)
+				return new Dog(name, favFood, DOG_TYPES[this.random.nextInt(DOG_TYPES.length)]);
+			if (species < this.parrotThreshold)
+				return new Parrot(name, favFood, randomWingspan(0.2f, 0.6f), this.random.nextBoolean());
+			return new Chicken(name, favFood, randomWingspan(0.5f, 0.9f), this.random.nextBoolean());
+		}
+
+		/*
+		 * Draws a wingspan in [min, max), rounded to the centimetre
+		 */
+		private float randomWingspan(float min, float max) {
+			return Math.round((min + (this.random.nextFloat() * (max - min))) * 100) / 100f;
+		}
+	}
 }
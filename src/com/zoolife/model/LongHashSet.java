@@ -0,0 +1,195 @@
+package com.zoolife.model;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressed hash set of primitive long values. It is used to hold
+ * friendships in their packed form (see FriendshipGraph.friendshipKey()), so
+ * adding, removing, or looking up a friendship allocates nothing.
+ * <p>
+ * The value 0 is reserved to mark empty slots and therefore cannot be stored.
+ * This is never a restriction for friendship keys, since a friendship always
+ * involves two different animals.
+ *
+ * @see com.zoolife.model.Zoo
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+final class LongHashSet {
+
+	private static final long EMPTY = 0L;
+	private static final int MAX_CAPACITY = 1 << 30; // The largest power of two array
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] slots;
+	private int size;
+
+	LongHashSet() {
+		this.slots = new long[MIN_CAPACITY];
+	}
+
+	/**
+	 * @param expectedSize
+	 *            the number of values the set is expected to hold, so that it
+	 *            does not need to grow while they are added
+	 */
+	LongHashSet(long expectedSize) {
+		long capacity = MIN_CAPACITY;
+		while ((capacity < (expectedSize * 2)) && (capacity < MAX_CAPACITY)) {
+			capacity *= 2;
+		}
+		this.slots = new long[(int) capacity];
+	}
+
+	/**
+	 * @return true if the value was not already in the set
+	 *
+	 * @throws IllegalStateException
+	 *             if the set is full (i.e. holds MAX_CAPACITY - 1 values, one
+	 *             slot being always left empty to end the probes)
+	 */
+	boolean add(long value) {
+		checkValue(value);
+		int mask = this.slots.length - 1;
+		int slot = hash(value) & mask;
+		while (this.slots[slot] != EMPTY) {
+			if (this.slots[slot] == value)
+				return false;
+			slot = (slot + 1) & mask;
+		}
+		if ((this.size + 1) == this.slots.length)
+			throw new IllegalStateException("The set is full. Cannot hold more than " + (MAX_CAPACITY - 1)
+					+ " values!");
+		this.slots[slot] = value;
+		this.size++;
+		// Keep the load factor at or below one half, as long as the slots can
+		// still be doubled
+		if (((this.size * 2) > this.slots.length) && (this.slots.length < MAX_CAPACITY))
+			rehash(this.slots.length * 2);
+		return true;
+	}
+
+	/**
+	 * @return the number of slots, which bounds the values of the slot index
+	 *         accepted by valueAt()
+	 */
+	int capacity() {
+		return this.slots.length;
+	}
+
+	/**
+	 * Removes all values. A set that was grown far beyond its current size is
+	 * given smaller storage instead of wiping all its slots, so the cost of a
+	 * clear is proportional to the number of values that were in the set.
+	 */
+	void clear() {
+		int neededCapacity = MIN_CAPACITY;
+		while ((neededCapacity < (this.size * 2)) && (neededCapacity < MAX_CAPACITY)) {
+			neededCapacity *= 2;
+		}
+		if (neededCapacity < this.slots.length)
+			this.slots = new long[neededCapacity];
+		else
+			Arrays.fill(this.slots, EMPTY);
+		this.size = 0;
+	}
+
+	boolean contains(long value) {
+		// 0 marks the empty slots, so it is never in the set
+		if (value == EMPTY)
+			return false;
+		int mask = this.slots.length - 1;
+		int slot = hash(value) & mask;
+		while (this.slots[slot] != EMPTY) {
+			if (this.slots[slot] == value)
+				return true;
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * @return true if the value was in the set
+	 */
+	boolean remove(long value) {
+		if (value == EMPTY)
+			return false;
+		int mask = this.slots.length - 1;
+		int slot = hash(value) & mask;
+		while (this.slots[slot] != value) {
+			if (this.slots[slot] == EMPTY)
+				return false;
+			slot = (slot + 1) & mask;
+		}
+
+		// Shift the following values of the probe sequence back, so that no
+		// tombstones are needed
+		int gap = slot;
+		int next = (gap + 1) & mask;
+		while (this.slots[next] != EMPTY) {
+			int home = hash(this.slots[next]) & mask;
+			// Move the value into the gap only if its home slot is not
+			// (cyclically) between the gap and the value's current slot
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				this.slots[gap] = this.slots[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		this.slots[gap] = EMPTY;
+		this.size--;
+		return true;
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Gives access to the raw slots so that callers can enumerate the set
+	 * without allocating an iterator.
+	 *
+	 * @return the value held at the passed slot, or 0 if the slot is empty
+	 */
+	long valueAt(int slot) {
+		return this.slots[slot];
+	}
+
+	private void checkValue(long value) {
+		if (value == EMPTY)
+			throw new IllegalArgumentException("0 cannot be stored in a LongHashSet!");
+	}
+
+	private static int hash(long value) {
+		// The finalization step of MurmurHash3, which spreads the bits of
+		// packed ids that would otherwise only differ in their low bits
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return (int) value;
+	}
+
+	private void rehash(int newCapacity) {
+		long[] oldSlots = this.slots;
+		this.slots = new long[newCapacity];
+		int mask = newCapacity - 1;
+		for (long value : oldSlots) {
+			if (value != EMPTY) {
+				int slot = hash(value) & mask;
+				while (this.slots[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				this.slots[slot] = value;
+			}
+		}
+	}
+}
@@ -0,0 +1,393 @@
+package com.zoolife.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates many independent zoos in one JVM, each one with its own
+ * {@link com.zoolife.model.ZooKeeper}. The days of all the zoos are simulated
+ * by a shared pool of worker threads, whose size does not depend on the
+ * number of zoos.
+ * <p>
+ * A zoo is never simulated by two workers at once (its days follow each other,
+ * as with ZooKeeper.simulateDays()), and it is simulated in turns: in each
+ * turn, it runs whole days until its time slice (the runner's time slice times
+ * the zoo's weight) is used up, and then goes to the back of the queue that
+ * all the workers share. A giant zoo therefore occupies at most one worker,
+ * for about one time slice (or one of its days, if a day takes longer) at a
+ * time, and the small zoos keep moving in between. The weight of a zoo gives
+ * it more time per turn, and its progress (days completed, time spent) can be
+ * followed while it runs.
+ * <p>
+ * The zoos themselves can share their immutable parts: zoos generated by
+ * Loader.generateZoo() from the same zoo share its animals and the table of
+ * their ids, so each zoo only takes the memory of its own friendship network.
+ * <p>
+ * A zoo that is submitted to the runner must not be used by any other thread
+ * until its run is over (see ZooRun.getCompletion()), although its published
+ * snapshots (see Zoo.setSnapshotPublishing()) can be read at any time.
+ *
+ * @see com.zoolife.model.Zoo
+ * @see com.zoolife.model.ZooKeeper
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public final class MultiZooRunner implements AutoCloseable {
+
+	/**
+	 * The time slice that a zoo of weight 1 gets per turn, unless another one
+	 * is passed to the constructor
+	 */
+	public static final long DEFAULT_TIME_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	/**
+	 * The simulation of one zoo by a {@link com.zoolife.model.MultiZooRunner}:
+	 * its progress, and the way to wait for it or to cancel it
+	 *
+	 * @author Tarek Oraby
+	 * @version 1.0
+	 *
+	 */
+	public static final class ZooRun {
+
+		private volatile long busyNanos; // Written by one worker at a time
+		private volatile int completedDays; // Written by one worker at a time
+		private CompletableFuture<Zoo> completion;
+		private int days;
+		private volatile boolean isCancelled;
+		private SimulationListener listener; // Can be null
+		private String name;
+		private MultiZooRunner runner;
+		private int weight;
+		private Zoo zoo;
+		private ZooKeeper zKeeper;
+
+		private ZooRun(MultiZooRunner runner, String name, Zoo zoo, ZooKeeper zKeeper, int days, int weight,
+				SimulationListener listener) {
+			this.runner = runner;
+			this.name = name;
+			this.zoo = zoo;
+			this.zKeeper = zKeeper;
+			this.days = days;
+			this.weight = weight;
+			this.listener = listener;
+			this.completion = new CompletableFuture<Zoo>();
+		}
+
+		/**
+		 * Asks for the run to stop. A day that is being simulated is finished,
+		 * and the completion is then cancelled (unless all the days were
+		 * simulated by then).
+		 */
+		public void cancel() {
+			this.isCancelled = true;
+		}
+
+		/**
+		 * @return the time the workers have spent simulating the zoo so far,
+		 *         in nanoseconds
+		 */
+		public long getBusyNanos() {
+			return this.busyNanos;
+		}
+
+		/**
+		 * @return the number of days simulated so far
+		 */
+		public int getCompletedDays() {
+			return this.completedDays;
+		}
+
+		/**
+		 * @return a future that completes with the zoo when all its days are
+		 *         simulated, exceptionally if simulating a day or notifying
+		 *         the listener threw (an exception or an error), or that
+		 *         is cancelled if the run was cancelled. Once it is complete,
+		 *         the zoo is no longer touched by the runner. Completing or
+		 *         cancelling it stops the run as cancel() does, except that
+		 *         a day that is being simulated is still finished.
+		 */
+		public CompletableFuture<Zoo> getCompletion() {
+			return this.completion;
+		}
+
+		/**
+		 * @return the number of days to simulate
+		 */
+		public int getDays() {
+			return this.days;
+		}
+
+		/**
+		 * @return the name given to the zoo when it was submitted
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * @return the weight of the zoo (see MultiZooRunner.submit())
+		 */
+		public int getWeight() {
+			return this.weight;
+		}
+
+		/**
+		 * @return the simulated zoo
+		 */
+		public Zoo getZoo() {
+			return this.zoo;
+		}
+
+		/**
+		 * @return true if the run is over (completed, failed or cancelled)
+		 */
+		public boolean isDone() {
+			return this.completion.isDone();
+		}
+
+		/*
+		 * Drops the run from the runner, and then completes it with the zoo,
+		 * or exceptionally with the failure, or cancels it if both are null:
+		 * once the completion is done, getRuns() no longer returns the run
+		 */
+		private void finish(Zoo result, Throwable failure) {
+			this.runner.removeRun(this);
+			if (result != null)
+				this.completion.complete(result);
+			else if (failure != null)
+				this.completion.completeExceptionally(failure);
+			else
+				this.completion.cancel(false);
+		}
+
+		/*
+		 * Runs one turn of the zoo, and queues the next one if days are left
+		 */
+		private void runTurn() {
+			if (this.isCancelled) {
+				finish(null, null);
+				return;
+			}
+			long start = System.nanoTime();
+			long slice = this.runner.timeSliceNanos * this.weight;
+			try {
+				// At least one day per turn, so that every zoo moves on
+				while (this.completedDays < this.days) {
+					this.zKeeper.simulateOneDay(this.zoo);
+					this.completedDays++;
+					if (this.listener != null)
+						this.listener.daySimulated(this.zoo);
+					if (this.isCancelled || ((System.nanoTime() - start) >= slice))
+						break;
+				}
+			} catch (Throwable e) {
+				// Errors too, or the completion would never come
+				this.busyNanos += System.nanoTime() - start;
+				finish(null, e);
+				return;
+			}
+			this.busyNanos += System.nanoTime() - start;
+
+			if (this.completedDays == this.days)
+				finish(this.zoo, null);
+			else if (this.isCancelled)
+				finish(null, null);
+			else
+				this.runner.schedule(this);
+		}
+	}
+
+	private boolean isClosed; // Guarded by this
+	private ExecutorService pool;
+	private LinkedHashSet<ZooRun> runs; // Not yet finished, guarded by this
+	private long timeSliceNanos;
+
+	/**
+	 * The constructor with the default time slice (see
+	 * DEFAULT_TIME_SLICE_NANOS)
+	 *
+	 * @param parallelism
+	 *            the number of worker threads (at least 1)
+	 *
+	 * @throws IllegalArgumentException
+	 *             if parallelism is less than 1
+	 */
+	public MultiZooRunner(int parallelism) {
+		this(parallelism, DEFAULT_TIME_SLICE_NANOS);
+	}
+
+	/**
+	 * @param parallelism
+	 *            the number of worker threads (at least 1)
+	 * @param timeSliceNanos
+	 *            how long a zoo of weight 1 runs its days per turn, in
+	 *            nanoseconds, before giving its worker to the next zoo (at
+	 *            least one day is always simulated per turn)
+	 *
+	 * @throws IllegalArgumentException
+	 *             if parallelism is less than 1 or if timeSliceNanos is
+	 *             negative
+	 */
+	public MultiZooRunner(int parallelism, long timeSliceNanos) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("The number of worker threads must be >= 1!");
+		if (timeSliceNanos < 0)
+			throw new IllegalArgumentException("The time slice must be >= 0!");
+		this.timeSliceNanos = timeSliceNanos;
+		this.runs = new LinkedHashSet<ZooRun>();
+		// A single FIFO queue rather than a work-stealing pool, whose workers
+		// would run the turns they queue themselves before the others
+		this.pool = Executors.newFixedThreadPool(parallelism, task -> {
+			Thread worker = new Thread(task, "zoo-runner");
+			worker.setDaemon(true);
+			return worker;
+		});
+	}
+
+	/**
+	 * Cancels the runs that are not over, waits for the days that are being
+	 * simulated to finish, and stops the worker threads. Closing the runner
+	 * again does nothing.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (this.isClosed)
+				return;
+			this.isClosed = true;
+			for (ZooRun run : this.runs) {
+				run.cancel();
+			}
+		}
+		// The queued turns still run, and cancel their zoos
+		this.pool.shutdown();
+		boolean isInterrupted = false;
+		while (true) {
+			try {
+				if (this.pool.awaitTermination(1, TimeUnit.MINUTES))
+					break;
+			} catch (InterruptedException e) {
+				isInterrupted = true;
+			}
+		}
+		if (isInterrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * @return the runs not yet finished, in the order in which their zoos were
+	 *         submitted (a run is dropped by the runner as soon as its
+	 *         completion is done, so keep the runs returned by submit() to
+	 *         follow them to the end)
+	 */
+	public synchronized List<ZooRun> getRuns() {
+		return Collections.unmodifiableList(new ArrayList<ZooRun>(this.runs));
+	}
+
+	/**
+	 * Submits a zoo with a weight of 1 and no listener (see the other
+	 * submit())
+	 *
+	 * @param name
+	 *            a name for the zoo, to tell it apart from the others
+	 * @param zoo
+	 *            the zoo to simulate
+	 * @param zKeeper
+	 *            the zoo keeper that simulates the zoo's days
+	 * @param days
+	 *            the number of days to simulate
+	 * @return the run of the zoo
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the name, the zoo or the zoo
+	 *             keeper
+	 * @throws IllegalArgumentException
+	 *             if days is less than 0
+	 * @throws IllegalStateException
+	 *             if the runner is closed
+	 */
+	public ZooRun submit(String name, Zoo zoo, ZooKeeper zKeeper, int days) {
+		return submit(name, zoo, zKeeper, days, 1, null);
+	}
+
+	/**
+	 * Submits a zoo, whose days start being simulated as soon as a worker is
+	 * free. Neither the zoo nor its zoo keeper may be submitted again before
+	 * the run is over.
+	 *
+	 * @param name
+	 *            a name for the zoo, to tell it apart from the others
+	 * @param zoo
+	 *            the zoo to simulate
+	 * @param zKeeper
+	 *            the zoo keeper that simulates the zoo's days
+	 * @param days
+	 *            the number of days to simulate
+	 * @param weight
+	 *            the number of time slices the zoo gets per turn (at least 1)
+	 * @param listener
+	 *            the listener to notify after each day (can be null), which
+	 *            is called by the worker that simulated the day
+	 * @return the run of the zoo
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the name, the zoo or the zoo
+	 *             keeper
+	 * @throws IllegalArgumentException
+	 *             if days is less than 0 or if weight is less than 1
+	 * @throws IllegalStateException
+	 *             if the runner is closed
+	 */
+	public synchronized ZooRun submit(String name, Zoo zoo, ZooKeeper zKeeper, int days, int weight,
+			SimulationListener listener) {
+		if ((name == null) || (zoo == null) || (zKeeper == null))
+			throw new NullPointerException("Cannot run a null name, zoo or zoo keeper!");
+		if (days < 0)
+			throw new IllegalArgumentException("The number of days to simulate must be >= 0!");
+		if (weight < 1)
+			throw new IllegalArgumentException("The weight of a zoo must be >= 1!");
+		if (this.isClosed)
+			throw new IllegalStateException("The runner is closed. Cannot run more zoos!");
+
+		ZooRun run = new ZooRun(this, name, zoo, zKeeper, days, weight, listener);
+		this.runs.add(run);
+		// For the completions that are completed or cancelled by their
+		// callers, which stops the run like cancel() does
+		run.completion.whenComplete((result, e) -> {
+			run.isCancelled = true;
+			removeRun(run);
+		});
+		if (days == 0)
+			run.finish(zoo, null);
+		else
+			schedule(run);
+		return run;
+	}
+
+	private synchronized void removeRun(ZooRun run) {
+		this.runs.remove(run);
+	}
+
+	/*
+	 * Queues a turn of the run, after the turns of all the other zoos
+	 */
+	private void schedule(ZooRun run) {
+		try {
+			this.pool.execute(run::runTurn);
+		} catch (RejectedExecutionException e) {
+			// The runner was closed, which cancelled the run
+			run.finish(null, null);
+		}
+	}
+}
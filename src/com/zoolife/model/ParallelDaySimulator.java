@@ -0,0 +1,266 @@
+package com.zoolife.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.zoolife.metrics.MetricsRegistry;
+import com.zoolife.metrics.Timer;
+import com.zoolife.model.SimulationEvents.PhaseEvent;
+
+/**
+ * The engine behind the parallel simulation mode of
+ * {@link com.zoolife.model.ZooKeeper}. A day is simulated in two phases:
+ * <ol>
+ * <li>The animals are split into fixed-size chunks, which are processed by a
+ * ForkJoinPool. For each animal, the friends to lose and to gain are drawn
+ * against the friendship network as it was at the start of the day (which is
+ * not modified during this phase). Each animal draws from its own random
+ * stream, which is derived from the seed, the day number, and the animal's
+ * id.</li>
+ * <li>The drawn edits are applied to the zoo in animal id order. An edit that
+ * has become redundant because of an earlier one (e.g. two animals that both
+ * drew each other as a new friend) is skipped.</li>
+ * </ol>
+ * Since neither the random streams nor the chunks nor the order in which edits
+ * are applied depend on the number of worker threads, a seeded run gives the
+ * same result regardless of the parallelism.
+ *
+ * @see com.zoolife.model.ZooKeeper
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+final class ParallelDaySimulator {
+
+	private static final int CHUNK_SIZE = 4096;
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private static final int MAX_SCANNED_DRAWS = 16; // Above this number of
+														// friends to gain, the
+														// drawn ones are hashed
+
+	/*
+	 * The friends drawn for the animals of one chunk. The friends of animal
+	 * (firstAnimal + i) are held at positions [offsets[i], offsets[i + 1]) of
+	 * the respective array.
+	 */
+	private static final class ChunkDraws {
+		private int[] friendsToGain = new int[16];
+		private int[] friendsToLose = new int[16];
+		private int[] gainOffsets;
+		private int gainSize;
+		private int[] loseOffsets;
+		private int loseSize;
+
+		private ChunkDraws(int chunkLength) {
+			this.gainOffsets = new int[chunkLength + 1];
+			this.loseOffsets = new int[chunkLength + 1];
+		}
+
+		private void addFriendToGain(int friend) {
+			if (this.gainSize == this.friendsToGain.length)
+				this.friendsToGain = Arrays.copyOf(this.friendsToGain, this.gainSize * 2);
+			this.friendsToGain[this.gainSize++] = friend;
+		}
+
+		private void addFriendToLose(int friend) {
+			if (this.loseSize == this.friendsToLose.length)
+				this.friendsToLose = Arrays.copyOf(this.friendsToLose, this.loseSize * 2);
+			this.friendsToLose[this.loseSize++] = friend;
+		}
+	}
+
+	private Timer applyPhaseTimer; // null unless metrics are recorded
+	private Timer drawPhaseTimer; // null unless metrics are recorded
+	private ForkJoinPool pool;
+
+	/**
+	 * @param parallelism
+	 *            the number of worker threads
+	 */
+	ParallelDaySimulator(int parallelism) {
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	int getParallelism() {
+		return this.pool.getParallelism();
+	}
+
+	/**
+	 * @param metrics
+	 *            the registry to record the time of each phase into, or null
+	 */
+	void setMetrics(MetricsRegistry metrics) {
+		this.applyPhaseTimer = (metrics == null) ? null : metrics.timer("zooKeeper.applyPhase");
+		this.drawPhaseTimer = (metrics == null) ? null : metrics.timer("zooKeeper.drawPhase");
+	}
+
+	/**
+	 * Releases the worker threads. The simulator cannot be used afterwards.
+	 */
+	void shutdown() {
+		this.pool.shutdown();
+	}
+
+	/**
+	 * Simulates one day in the passed zoo
+	 *
+	 * @param zoo
+	 *            the zoo whose friendship network is to simulated
+	 * @param maxLosable
+	 *            the maximum number of friends that each animal can lose
+	 * @param maxGainable
+	 *            the maximum number of friends that each animal can gain
+	 * @param randomSeed
+	 *            the seed from which the random streams of the animals are
+	 *            derived
+	 */
+	void simulateOneDay(Zoo zoo, int maxLosable, int maxGainable, long randomSeed) {
+		zoo.incrementDay();
+		long daySeed = mix64(randomSeed + (GOLDEN_GAMMA * zoo.getDayCount()));
+
+		int animalCount = zoo.getAnimalCount();
+		int chunkCount = ((animalCount - 1) / CHUNK_SIZE) + 1;
+		List<Callable<ChunkDraws>> drawTasks = new ArrayList<Callable<ChunkDraws>>(chunkCount);
+		for (int chunk = 0; chunk < chunkCount; chunk++) {
+			int firstAnimal = chunk * CHUNK_SIZE;
+			int endAnimal = Math.min(animalCount, firstAnimal + CHUNK_SIZE);
+			drawTasks.add(() -> drawChunk(zoo, firstAnimal, endAnimal, maxLosable, maxGainable, daySeed));
+		}
+
+		PhaseEvent drawEvent = new PhaseEvent("draw");
+		drawEvent.begin();
+		long drawStart = System.nanoTime();
+		List<Future<ChunkDraws>> chunkResults = this.pool.invokeAll(drawTasks);
+		ChunkDraws[] chunkDraws = new ChunkDraws[chunkCount];
+		long drawnCount = 0;
+		for (int chunk = 0; chunk < chunkCount; chunk++) {
+			chunkDraws[chunk] = getChunkResult(chunkResults.get(chunk));
+			drawnCount += chunkDraws[chunk].loseSize + chunkDraws[chunk].gainSize;
+		}
+		long applyStart = System.nanoTime();
+		drawEvent.finish(zoo, drawnCount, applyStart - drawStart);
+
+		PhaseEvent applyEvent = new PhaseEvent("apply");
+		applyEvent.begin();
+		for (int chunk = 0; chunk < chunkCount; chunk++) {
+			applyChunk(zoo, chunk * CHUNK_SIZE, chunkDraws[chunk]);
+		}
+		applyEvent.finish(zoo, zoo.getDailyChanges().entryCount(), System.nanoTime() - applyStart);
+		if (this.drawPhaseTimer != null) {
+			this.drawPhaseTimer.record(applyStart - drawStart);
+			this.applyPhaseTimer.stop(applyStart);
+		}
+	}
+
+	private static void applyChunk(Zoo zoo, int firstAnimal, ChunkDraws draws) {
+		int chunkLength = draws.loseOffsets.length - 1;
+		for (int i = 0; i < chunkLength; i++) {
+			int anim = firstAnimal + i;
+			// A friend drawn for losing might already have been lost to an
+			// animal with a smaller id, in which case nothing is done
+			for (int j = draws.loseOffsets[i]; j < draws.loseOffsets[i + 1]; j++) {
+				zoo.removeFriendshipById(anim, draws.friendsToLose[j]);
+			}
+			// Likewise, a friend drawn for gaining might already have been
+			// gained by an animal with a smaller id
+			for (int j = draws.gainOffsets[i]; j < draws.gainOffsets[i + 1]; j++) {
+				zoo.addFriendshipById(anim, draws.friendsToGain[j]);
+			}
+		}
+	}
+
+	private static ChunkDraws drawChunk(Zoo zoo, int firstAnimal, int endAnimal, int maxLosable, int maxGainable,
+			long daySeed) {
+		FriendshipGraph friendsGraph = zoo.getFriendsGraph();
+		int animalCount = zoo.getAnimalCount();
+		ChunkDraws draws = new ChunkDraws(endAnimal - firstAnimal);
+		IdCandidatePool candidatePool = new IdCandidatePool();
+		LongHashSet drawnFriends = new LongHashSet(); // Plus one, since 0 cannot be stored
+
+		for (int anim = firstAnimal; anim < endAnimal; anim++) {
+			SplittableRandom randomGenerator = new SplittableRandom(mix64(daySeed + (GOLDEN_GAMMA * (anim + 1))));
+			int i = anim - firstAnimal;
+
+			// Draw the friends to lose without replacement
+			int degree = friendsGraph.degree(anim);
+			candidatePool.clear();
+			for (int j = 0; j < degree; j++) {
+				candidatePool.add(friendsGraph.neighbourAt(anim, j));
+			}
+			for (int j = 0; (j < maxLosable) && !candidatePool.isEmpty(); j++) {
+				draws.addFriendToLose(candidatePool.removeAt(randomGenerator.nextInt(candidatePool.size())));
+			}
+			draws.loseOffsets[i + 1] = draws.loseSize;
+
+			// Draw the friends to gain without replacement
+			int gainableCount = animalCount - 1 - degree;
+			int toGain = Math.min(maxGainable, gainableCount);
+			if (((gainableCount - toGain) * 2) >= animalCount) {
+				// At least one in two draws is accepted, up to the last friend
+				// to gain. Few drawn friends are found again by a scan, more
+				// through a hash set.
+				int gainStart = draws.gainSize;
+				boolean scansDraws = toGain <= MAX_SCANNED_DRAWS;
+				if (!scansDraws)
+					drawnFriends.clear();
+				while ((draws.gainSize - gainStart) < toGain) {
+					int candidate = randomGenerator.nextInt(animalCount);
+					if ((candidate != anim) && !friendsGraph.hasEdge(anim, candidate)
+							&& (scansDraws ? !contains(draws.friendsToGain, gainStart, draws.gainSize, candidate)
+									: drawnFriends.add(candidate + 1L)))
+						draws.addFriendToGain(candidate);
+				}
+			} else {
+				// The animal is nearly friends with the whole zoo, so most
+				// draws would be rejected: sample from an explicit pool
+				candidatePool.clear();
+				for (int candidate = 0; candidate < animalCount; candidate++) {
+					if ((candidate != anim) && !friendsGraph.hasEdge(anim, candidate))
+						candidatePool.add(candidate);
+				}
+				for (int j = 0; j < toGain; j++) {
+					draws.addFriendToGain(candidatePool.removeAt(randomGenerator.nextInt(candidatePool.size())));
+				}
+			}
+			draws.gainOffsets[i + 1] = draws.gainSize;
+		}
+		return draws;
+	}
+
+	private static boolean contains(int[] ids, int from, int to, int id) {
+		for (int i = from; i < to; i++) {
+			if (ids[i] == id)
+				return true;
+		}
+		return false;
+	}
+
+	private static ChunkDraws getChunkResult(Future<ChunkDraws> chunkResult) {
+		try {
+			return chunkResult.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while simulating a day!", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Failed to simulate a day!", e.getCause());
+		}
+	}
+
+	/*
+	 * The finalization step of SplitMix64. Turns consecutive seeds into
+	 * unrelated ones.
+	 */
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
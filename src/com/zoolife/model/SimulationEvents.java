@@ -0,0 +1,152 @@
+package com.zoolife.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The custom Java Flight Recorder events of ZooLife, which line the simulated
+ * days, their phases, and the snapshot and export operations up with the rest
+ * of a recording (GC pauses, CPU samples, etc.) in JDK Mission Control. Every
+ * event carries the day number, the number of animals, and the number of
+ * friendships that the operation touched.
+ * <p>
+ * An event is created, begun, and ended around its operation, and its fields
+ * are only filled in if the recording wants it (see ZooEvent.finish()). When
+ * no recording is running, this costs a few checks per operation. The events
+ * of the simulation phases are the exception: they need each animal's phases
+ * to be timed, which is only done while a recording has them enabled (see
+ * PhaseEvent.isRecorded()).
+ *
+ * @see com.zoolife.model.ZooKeeper
+ * @see com.zoolife.model.ZooSnapshot
+ * @see com.zoolife.model.ZooExporter
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+final class SimulationEvents {
+
+	private SimulationEvents() {
+	}
+
+	/*
+	 * The fields that all the events share
+	 */
+	@Category("ZooLife")
+	@StackTrace(false)
+	abstract static class ZooEvent extends Event {
+
+		@Label("Animal Count")
+		int animalCount;
+
+		@Label("Day")
+		int day;
+
+		@Label("Friendships Touched")
+		long edgesTouched;
+
+		/**
+		 * Ends the event, and commits it with the passed values if the
+		 * recording wants it
+		 */
+		void finish(Zoo zoo, long touchedEdges) {
+			end();
+			if (shouldCommit()) {
+				this.animalCount = zoo.getAnimalCount();
+				this.day = zoo.getDayCount();
+				this.edgesTouched = touchedEdges;
+				commit();
+			}
+		}
+	}
+
+	@Name("com.zoolife.Export")
+	@Label("Export")
+	@Description("An export of the zoo's daily changes or properties")
+	static final class ExportEvent extends ZooEvent {
+
+		@Label("Format")
+		String format;
+
+		@Label("Records")
+		String records;
+
+		ExportEvent(String records, ZooExporter.Format format) {
+			this.records = records;
+			this.format = format.name();
+		}
+	}
+
+	@Name("com.zoolife.IncrementDay")
+	@Label("Increment Day")
+	@Description("The start of a new day, which closes the journal of the previous one")
+	static final class IncrementDayEvent extends ZooEvent {
+	}
+
+	@Name("com.zoolife.SimulationPhase")
+	@Label("Simulation Phase")
+	@Description("A phase of a simulated day: lose and gain (sequential mode, in which the phases alternate "
+			+ "animal by animal, so that the event spans the day and the phase's own time is given apart), "
+			+ "or draw and apply (parallel mode)")
+	static final class PhaseEvent extends ZooEvent {
+
+		private static final PhaseEvent PROBE = new PhaseEvent(null);
+
+		@Label("Phase")
+		String phase;
+
+		@Label("Phase Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long phaseTime;
+
+		PhaseEvent(String phase) {
+			this.phase = phase;
+		}
+
+		/**
+		 * @return true if a running recording has the phase events enabled
+		 */
+		static boolean isRecorded() {
+			return PROBE.isEnabled();
+		}
+
+		/**
+		 * Ends the event, and commits it with the passed values if the
+		 * recording wants it
+		 */
+		void finish(Zoo zoo, long touchedEdges, long phaseNanos) {
+			this.phaseTime = phaseNanos;
+			finish(zoo, touchedEdges);
+		}
+	}
+
+	@Name("com.zoolife.SimulateDay")
+	@Label("Simulate Day")
+	@Description("A simulated day, from the start of the day to the last edit")
+	static final class SimulateDayEvent extends ZooEvent {
+	}
+
+	@Name("com.zoolife.Snapshot")
+	@Label("Snapshot")
+	@Description("A zoo saved to or loaded from a snapshot file")
+	static final class SnapshotEvent extends ZooEvent {
+
+		@Label("Operation")
+		String operation;
+
+		@Label("Path")
+		String path;
+
+		SnapshotEvent(String operation, String path) {
+			this.operation = operation;
+			this.path = path;
+		}
+	}
+}
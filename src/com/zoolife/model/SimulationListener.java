@@ -0,0 +1,27 @@
+package com.zoolife.model;
+
+/**
+ * A callback that is notified after each day simulated by
+ * {@link com.zoolife.model.ZooKeeper#simulateDays(Zoo, int, SimulationListener)}.
+ * It lets callers observe (or record) the daily changes of a long simulation
+ * without driving it one day at a time.
+ *
+ * @see com.zoolife.model.ZooKeeper
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public interface SimulationListener {
+
+	/**
+	 * Called after each simulated day. The zoo's daily changes (e.g.
+	 * {@link com.zoolife.model.Zoo#getDailyFriendsAdded()}) reflect the day
+	 * that was just simulated.
+	 *
+	 * @param zoo
+	 *            the zoo whose day was simulated
+	 */
+	void daySimulated(Zoo zoo);
+}
@@ -1,11 +1,20 @@
 package com.zoolife.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.TreeMap;
 
+import com.zoolife.metrics.Counter;
+import com.zoolife.metrics.Histogram;
+import com.zoolife.metrics.MetricsRegistry;
+import com.zoolife.model.SimulationEvents.IncrementDayEvent;
+
 /**
  * This class holds information about (1) the set of animals in the Zoo, (2) the
  * set of friendships among these animals, and (3) the set of friendships that
@@ -17,6 +26,29 @@ import java.util.TreeMap;
  * B, then B becomes also friend with A. Alternatively, to take another example,
  * the Zoo class ensures that friendships are established only among animals
  * that are already in the zoo.
+ * <p>
+ * Internally, each animal is given a dense integer id when the zoo is built
+ * (see the package-private AnimalTable class), and the friendships are kept in
+ * primitive int adjacency lists (see the package-private FriendshipGraph
+ * class). The public methods of this class
+ * translate between these ids and {@link com.zoolife.model.Animal} objects.
+ * A friendship is identified by the two ids packed into a single long (the
+ * smaller id first), and {@link com.zoolife.model.AnimalFriendship} objects
+ * are only created when a caller asks for a set of friendships. Read-heavy
+ * callers can instead scan a frozen copy of the network in compressed sparse
+ * row form (see getFriendshipCsr()).
+ * <p>
+ * Yesterday's friendships are not stored. Instead, the daily changes are kept
+ * in a journal (see the package-private DailyChangeJournal class), which
+ * records whether a friendship existed yesterday the first time it is touched
+ * on a given day. Starting a new day therefore takes constant time, no matter
+ * how large the friendship network is.
+ * <p>
+ * A zoo is not thread-safe: it must only be used by the thread that simulates
+ * it. Other threads can follow the simulation through the immutable snapshots
+ * of the completed days that a zoo publishes on request (see
+ * setSnapshotPublishing()), and several threads can edit the friendships at
+ * once through a striped editor (see startConcurrentEdits()).
  *
  * @see com.zoolife.model.Animal
  * @see com.zoolife.model.AnimalFriendship
@@ -29,35 +61,82 @@ import java.util.TreeMap;
 
 public class Zoo {
 
-	private Set<Animal> animalsSet; // The set of all animals in the zoo
-	private Set<AnimalFriendship> dailyFriendsAdded; // The set of friendships
-														// added daily
-	private Set<AnimalFriendship> dailyFriendsRemoved; // The set of friendships
-														// removed daily
+	private AnimalTable animalTable; // The zoo animals and their ids
+	private ConcurrentZooEditor concurrentEditor; // The open editor, or null
+	private DailyChangeJournal dailyChanges; // The friendships added or
+												// removed daily
 	private int dayCount;
-	private Set<AnimalFriendship> friendsSet; // The set of current friendships
-
-	private Set<AnimalFriendship> prevDayFriendsSet; // The set of yesterday's
-														// friendships
+	private FriendshipEventLog eventLog; // Logs every change, or null
+	private FriendshipCsr friendshipCsr; // Made on demand, dropped by changes
+	private FriendshipGraph friendsGraph; // The current friendships
+	private Counter friendshipsAdded; // null unless metrics are recorded
+	private Counter friendshipsRemoved; // null unless metrics are recorded
+	private ZooPropertiesCache propertiesCache; // Created on first use
+	private volatile ZooDaySnapshot publishedSnapshot; // Read by any thread
+	private boolean publishesSnapshots;
 
 	/**
 	 * The constructor
 	 *
 	 * @param newAnimalsSet
-	 *            The animal set of the zoo
+	 *            The animals of the zoo. Any collection of distinct animals is
+	 *            accepted (e.g. a Set, or the lazily generated collection of
+	 *            Loader.generateAnimals()), and it is iterated only once.
 	 *
 	 * @throws NullPointerException
 	 *             if a null object was passed as the zoo's animal set or if a
 	 *             null object was passed as one of the zoo's animals
 	 * @throws IllegalArgumentException
-	 *             if the animal set is empty
+	 *             if the animal set is empty or if it holds the same animal
+	 *             more than once
 	 */
-	public Zoo(Set<Animal> newAnimalsSet) {
+	public Zoo(Collection<? extends Animal> newAnimalsSet) {
 		setAnimalsSet(newAnimalsSet);
-		this.friendsSet = new HashSet<AnimalFriendship>();
+		this.friendsGraph = new FriendshipGraph(this.animalTable.size());
+		this.dailyChanges = new DailyChangeJournal(this.animalTable.size());
 		this.dayCount = 0;
 	}
 
+	/**
+	 * Creates a zoo with the same animals as the passed one, with no
+	 * friendships, at day 0. The two zoos share the animals and the table of
+	 * their ids (which is never modified), so each additional zoo of the same
+	 * animals only takes the memory of its own friendship network.
+	 *
+	 * @param animalsSource
+	 *            the zoo whose animals are shared
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the zoo
+	 */
+	public Zoo(Zoo animalsSource) {
+		if (animalsSource == null)
+			throw new NullPointerException("A null object was passed as the zoo whose animals are shared!");
+		this.animalTable = animalsSource.animalTable;
+		this.friendsGraph = new FriendshipGraph(this.animalTable.size());
+		this.dailyChanges = new DailyChangeJournal(this.animalTable.size());
+		this.dayCount = 0;
+	}
+
+	/**
+	 * Restores a zoo from its parts (see
+	 * {@link com.zoolife.model.ZooSnapshot}). The daily changes start empty
+	 * and are restored through getDailyChanges().
+	 *
+	 * @param animalTable
+	 *            the (non-empty) animals of the zoo
+	 * @param friendsGraph
+	 *            the current friendships, over the ids of animalTable
+	 * @param dayCount
+	 *            the current day
+	 */
+	Zoo(AnimalTable animalTable, FriendshipGraph friendsGraph, int dayCount) {
+		this.animalTable = animalTable;
+		this.friendsGraph = friendsGraph;
+		this.dailyChanges = new DailyChangeJournal(animalTable.size());
+		this.dayCount = dayCount;
+	}
+
 	/**
 	 * Adds two animals as friends and updates the sets that reflect the daily
 	 * changes in the zoo's friendship network. Note that the incrementDay()
@@ -81,27 +160,47 @@ public class Zoo {
 	public void addFirendship(Animal anim1, Animal anim2) {
 		if ((anim1 == null) || (anim2 == null))
 			throw new NullPointerException("Cannot update the friendship of a null Animal object!");
-		if (!this.animalsSet.contains(anim1))
+		int id1 = getAnimalId(anim1);
+		if (id1 < 0)
 			throw new IllegalArgumentException("Animal 1 is not in this zoo. cannot set its friendship!");
-		if (!this.animalsSet.contains(anim2))
+		int id2 = getAnimalId(anim2);
+		if (id2 < 0)
 			throw new IllegalArgumentException("Animal 2 is not in this zoo. cannot set its friendship!");
+		checkNoConcurrentEdits();
 		if (this.dayCount == 0)
 			throw new RuntimeException("Call incrementDay() before editing frindships!");
-		if (areFriends(anim1, anim2))
+		if (id1 == id2)
+			throw new IllegalArgumentException("Both animals are identical. Cannot be friend with oneself!");
+		if (!addFriendshipById(id1, id2))
 			throw new IllegalArgumentException("These animals are already friends!");
+	}
 
-		AnimalFriendship newFriendship = new AnimalFriendship(anim1, anim2);
-		this.friendsSet.add(newFriendship);
-
-		// In case this friendship was removed today,
-		// remove it from the daily lost friendships
-		this.dailyFriendsRemoved.remove(newFriendship);
-
-		// Only add to daily gained friendships set if
-		// this friendship didn't exist yesterday
-		if (!this.prevDayFriendsSet.contains(newFriendship)) {
-			this.dailyFriendsAdded.add(newFriendship);
+	/**
+	 * The unchecked counterpart of addFirendship() for callers that work with
+	 * animal ids. The caller must make sure that both ids are valid and
+	 * different, and that incrementDay() was called at least once.
+	 *
+	 * @return false (and leaves the zoo unchanged) if the two animals are
+	 *         already friends
+	 */
+	boolean addFriendshipById(int id1, int id2) {
+		if (this.eventLog != null) {
+			// Logged before it is made, so that a failed append leaves the
+			// zoo as the log knows it
+			if (this.friendsGraph.hasEdge(id1, id2))
+				return false;
+			this.eventLog.friendshipAdded(id1, id2);
 		}
+		if (!this.friendsGraph.addEdge(id1, id2))
+			return false;
+
+		// The journal knows whether this friendship existed yesterday, and
+		// therefore whether it is a gained friendship or a restored one
+		this.dailyChanges.recordAdded(id1, id2);
+		invalidateCaches(id1, id2);
+		if (this.friendshipsAdded != null)
+			this.friendshipsAdded.increment();
+		return true;
 	}
 
 	/**
@@ -113,16 +212,20 @@ public class Zoo {
 	 * @return return true if anim1 and anim2 are friends
 	 *
 	 * @throws IllegalArgumentException
-	 *             if the two animals don't belong to the zoo
+	 *             if the two animals don't belong to the zoo or if the two
+	 *             animals are identical
 	 */
 	public boolean areFriends(Animal anim1, Animal anim2) {
-		if (!this.animalsSet.contains(anim1))
+		int id1 = getAnimalId(anim1);
+		if (id1 < 0)
 			throw new IllegalArgumentException("Animal 1 is not in this zoo. cannot check its friendship status!");
-		if (!this.animalsSet.contains(anim2))
+		int id2 = getAnimalId(anim2);
+		if (id2 < 0)
 			throw new IllegalArgumentException("Animal 2 is not in this zoo. cannot check its friendship status!");
+		if (id1 == id2)
+			throw new IllegalArgumentException("Both animals are identical. Cannot be friend with oneself!");
 
-		AnimalFriendship possibleFriendship = new AnimalFriendship(anim1, anim2);
-		if (this.friendsSet.contains(possibleFriendship))
+		if (this.friendsGraph.hasEdge(id1, id2))
 			return true;
 		else
 			return false;
@@ -134,7 +237,7 @@ public class Zoo {
 	 * @return the set of anim friends
 	 */
 	public Set<Animal> getAnimalFirends(Animal anim) {
-		return getAnimalFirendsInSet(anim, this.friendsSet);
+		return getAnimalFirends(getCheckedAnimalId(anim));
 	}
 
 	/**
@@ -144,7 +247,7 @@ public class Zoo {
 	 *         friendship today
 	 */
 	public Set<Animal> getAnimalFriendsGained(Animal anim) {
-		return getAnimalFirendsInSet(anim, this.dailyFriendsAdded);
+		return getAnimalFirendsInJournal(anim, true);
 	}
 
 	/**
@@ -154,14 +257,35 @@ public class Zoo {
 	 *         today
 	 */
 	public Set<Animal> getAnimalFriendsLost(Animal anim) {
-		return getAnimalFirendsInSet(anim, this.dailyFriendsRemoved);
+		return getAnimalFirendsInJournal(anim, false);
+	}
+
+	/**
+	 * @return the number of zoo animals
+	 */
+	public int getAnimalsNumber() {
+		return this.animalTable.size();
 	}
 
 	/**
-	 * @return the set of zoo animals
+	 * @return the set of zoo animals (a copy: see getAnimalsView() for a view
+	 *         that copies nothing)
 	 */
 	public Set<Animal> getAnimalsSet() {
-		return new HashSet<>(this.animalsSet);
+		Set<Animal> animalsSet = new HashSet<Animal>(Math.max(16, (this.animalTable.size() * 4) / 3 + 1));
+		for (int id = 0; id < this.animalTable.size(); id++) {
+			animalsSet.add(this.animalTable.animalAt(id));
+		}
+		return animalsSet;
+	}
+
+	/**
+	 * @return a read-only view of the zoo animals, in the order of their ids
+	 *         (see getFriendshipCsr()). Its spliterator splits evenly, so the
+	 *         view can back a parallel stream.
+	 */
+	public Set<Animal> getAnimalsView() {
+		return new ZooViews.AnimalsView(this.animalTable);
 	}
 
 	/**
@@ -169,7 +293,16 @@ public class Zoo {
 	 *         the ones that didn't exist in the previous day)
 	 */
 	public Set<AnimalFriendship> getDailyFriendsAdded() {
-		return new HashSet<>(this.dailyFriendsAdded);
+		return toFriendshipSet(true);
+	}
+
+	/**
+	 * @return a live, read-only view of the friendships that were established
+	 *         today (see getDailyFriendsAdded()), which must not be iterated
+	 *         while the zoo changes. Its size is counted on each call.
+	 */
+	public Set<AnimalFriendship> getDailyFriendsAddedView() {
+		return new ZooViews.DailyFriendshipsView(this, true);
 	}
 
 	/**
@@ -177,7 +310,16 @@ public class Zoo {
 	 *         existed in the previous day)
 	 */
 	public Set<AnimalFriendship> getDailyFriendsRemoved() {
-		return new HashSet<>(this.dailyFriendsRemoved);
+		return toFriendshipSet(false);
+	}
+
+	/**
+	 * @return a live, read-only view of the friendships that were broken up
+	 *         today (see getDailyFriendsRemoved()), which must not be iterated
+	 *         while the zoo changes. Its size is counted on each call.
+	 */
+	public Set<AnimalFriendship> getDailyFriendsRemovedView() {
+		return new ZooViews.DailyFriendshipsView(this, false);
 	}
 
 	/**
@@ -197,15 +339,10 @@ public class Zoo {
 	public String getFriendsNames(Animal anim) {
 		if (anim == null)
 			throw new NullPointerException("Cannot check the friendship of a null Animal object!");
-		if (!this.animalsSet.contains(anim))
+		int id = getAnimalId(anim);
+		if (id < 0)
 			throw new IllegalArgumentException("Animal is not in this zoo. don't know its friends!");
-		Set<Animal> friends = getAnimalFirends(anim);
-		ArrayList<String> friendsNames = new ArrayList<String>();
-		for (Animal animFriend : friends) {
-			friendsNames.add(animFriend.getName());
-		}
-		Collections.sort(friendsNames);
-		return String.join(", ", friendsNames);
+		return getFriendsNames(id);
 	}
 
 	/**
@@ -216,34 +353,94 @@ public class Zoo {
 	public int getFriendsNumber(Animal anim) {
 		if (anim == null)
 			throw new NullPointerException("Cannot check the friendship of a null Animal object!");
-		if (!this.animalsSet.contains(anim))
+		int id = getAnimalId(anim);
+		if (id < 0)
 			throw new IllegalArgumentException("Animal is not in this zoo. don't know its friends number!");
-		return getAnimalFirends(anim).size();
+		return this.friendsGraph.degree(id);
 
 	}
 
+	/**
+	 * Returns a frozen copy of the zoo's friendship network, in compressed
+	 * sparse row form (see {@link com.zoolife.model.FriendshipCsr}). The copy
+	 * is made the first time it is asked for after a change to the zoo (in
+	 * time linear in the size of the network), and the same copy is returned
+	 * until the next change or the next day. It is typically asked for at the
+	 * end of a day, and then scanned by any number of queries.
+	 *
+	 * @return the friendships of the zoo as they are now
+	 */
+	public FriendshipCsr getFriendshipCsr() {
+		if (this.friendshipCsr == null)
+			this.friendshipCsr = new FriendshipCsr(this.animalTable, this.friendsGraph, this.dayCount);
+		return this.friendshipCsr;
+	}
+
+	/**
+	 * Returns the latest published snapshot of the zoo (see
+	 * setSnapshotPublishing()). Unlike the other methods of this class, this
+	 * one can be called from any thread, at any time, and never blocks: it
+	 * only reads a volatile field.
+	 *
+	 * @return the snapshot of the last completed day, or null if the zoo does
+	 *         not publish snapshots
+	 */
+	public ZooDaySnapshot getPublishedSnapshot() {
+		return this.publishedSnapshot;
+	}
+
 	/**
 	 * @return the set of the zoo's current animal friendships
 	 */
 	public Set<AnimalFriendship> getFriendsSet() {
-		return new HashSet<>(this.friendsSet);
+		LongHashSet edges = this.friendsGraph.edges();
+		Set<AnimalFriendship> friendshipSet = new HashSet<AnimalFriendship>(Math.max(16, (edges.size() * 4) / 3 + 1));
+		for (int slot = 0; slot < edges.capacity(); slot++) {
+			long key = edges.valueAt(slot);
+			if (key != 0) {
+				friendshipSet.add(toFriendship(key));
+			}
+		}
+		return friendshipSet;
+	}
+
+	/**
+	 * @return a live, read-only view of the zoo's current friendships, which
+	 *         must not be iterated while the zoo changes. Each friendship is
+	 *         wrapped in a new AnimalFriendship object as it is visited, and
+	 *         the view's spliterator splits evenly, so the view can back a
+	 *         parallel stream.
+	 */
+	public Set<AnimalFriendship> getFriendsView() {
+		return new ZooViews.CurrentFriendshipsView(this);
 	}
 
 	/**
 	 * @return The properties of the Zoo animals both individually (their names,
 	 *         favorite food, etc.) as well as in terms of Friendships (who's
-	 *         friend with whom).
+	 *         friend with whom). The properties are cached, and only those of
+	 *         the animals whose friends changed since the last call are
+	 *         rebuilt. The returned maps are copies that the caller may
+	 *         modify.
 	 */
 	public TreeMap<String, TreeMap<String, String>> getZooProperties() {
-		Set<Animal> animalSet = getAnimalsSet();
-		TreeMap<String, TreeMap<String, String>> zooProperties = new TreeMap<String, TreeMap<String, String>>();
-		for (Animal anim : animalSet) {
-			TreeMap<String, String> currAnimProp = anim.getProperties();
-			currAnimProp.put("friends", getFriendsNames(anim));
-			currAnimProp.put("friendsNumber", String.valueOf(getFriendsNumber(anim)));
-			zooProperties.put(currAnimProp.get("name"), currAnimProp);
-		}
-		return zooProperties;
+		if (this.propertiesCache == null)
+			this.propertiesCache = new ZooPropertiesCache(this);
+		return this.propertiesCache.getZooProperties();
+	}
+
+	/**
+	 * Streams the zoo properties (see getZooProperties()) one animal at a
+	 * time, without copying them. The iterator must not be used after the
+	 * zoo changes.
+	 *
+	 * @return an iterator over read-only views of the properties of the zoo
+	 *         animals, in the order of their names
+	 */
+	public Iterator<SortedMap<String, String>> getZooPropertiesIterator() {
+		if (this.propertiesCache == null)
+			this.propertiesCache = new ZooPropertiesCache(this);
+		return this.propertiesCache.iterator();
 	}
 
 	/**
@@ -252,10 +449,20 @@ public class Zoo {
 	 * changes in of the zoo's social network
 	 */
 	public void incrementDay() {
+		checkNoConcurrentEdits();
+		IncrementDayEvent event = new IncrementDayEvent();
+		event.begin();
+		// The log goes first, so that if it cannot be written, the zoo stays
+		// on its day and the two do not drift apart
+		if (this.eventLog != null)
+			this.eventLog.dayStarted(this.dayCount + 1);
+		int closedEntries = this.dailyChanges.entryCount();
+		if (this.publishesSnapshots)
+			this.publishedSnapshot = takeSnapshot();
 		this.dayCount++;
-		this.prevDayFriendsSet = new HashSet<AnimalFriendship>(this.friendsSet);
-		this.dailyFriendsAdded = new HashSet<AnimalFriendship>();
-		this.dailyFriendsRemoved = new HashSet<AnimalFriendship>();
+		this.dailyChanges.reset();
+		this.friendshipCsr = null;
+		event.finish(this, closedEntries);
 	}
 
 	/**
@@ -272,59 +479,372 @@ public class Zoo {
 	 *
 	 * @exception IllegalArgumentException
 	 *                if either of the two animals are not part of this zoo or
-	 *                if anim1 and anim2 are not friends in the first place
+	 *                if anim1 and anim2 are not friends in the first place or
+	 *                if the two animals are identical
 	 *
 	 */
 	public void removeFirendship(Animal anim1, Animal anim2) {
 		if ((anim1 == null) || (anim2 == null))
 			throw new NullPointerException("Cannot update the friendship of a null Animal object!");
-		if (!this.animalsSet.contains(anim1))
+		int id1 = getAnimalId(anim1);
+		if (id1 < 0)
 			throw new IllegalArgumentException("Animal 1 is not in this zoo. cannot set its friendship!");
-		if (!this.animalsSet.contains(anim2))
+		int id2 = getAnimalId(anim2);
+		if (id2 < 0)
 			throw new IllegalArgumentException("Animal 2 is not in this zoo. cannot set its friendship!");
-		if (!areFriends(anim1, anim2))
+		if (id1 == id2)
+			throw new IllegalArgumentException("Both animals are identical. Cannot be friend with oneself!");
+		checkNoConcurrentEdits();
+		if (!removeFriendshipById(id1, id2))
 			throw new IllegalArgumentException("These animals are already non-friends!");
+	}
 
-		AnimalFriendship lostFriendship = new AnimalFriendship(anim1, anim2);
-		this.friendsSet.remove(lostFriendship);
+	/**
+	 * The unchecked counterpart of removeFirendship() for callers that work
+	 * with animal ids. The caller must make sure that both ids are valid.
+	 *
+	 * @return false (and leaves the zoo unchanged) if the two animals are not
+	 *         friends
+	 */
+	boolean removeFriendshipById(int id1, int id2) {
+		if (this.eventLog != null) {
+			// Logged before it is made (see addFriendshipById())
+			if (!this.friendsGraph.hasEdge(id1, id2))
+				return false;
+			this.eventLog.friendshipRemoved(id1, id2);
+		}
+		if (!this.friendsGraph.removeEdge(id1, id2))
+			return false;
+
+		// The journal knows whether this friendship existed yesterday, and
+		// therefore whether it is a lost friendship or an undone new one
+		this.dailyChanges.recordRemoved(id1, id2);
+		invalidateCaches(id1, id2);
+		if (this.friendshipsRemoved != null)
+			this.friendshipsRemoved.increment();
+		return true;
+	}
+
+	/**
+	 * Publishes a snapshot of the zoo as it is now (see
+	 * getPublishedSnapshot()), without waiting for the day to be over: e.g.
+	 * after the last simulated day, which is otherwise only published when the
+	 * next day starts
+	 *
+	 * @throws IllegalStateException
+	 *             if the zoo does not publish snapshots
+	 */
+	public void publishSnapshot() {
+		if (!this.publishesSnapshots)
+			throw new IllegalStateException("The zoo does not publish snapshots. Call setSnapshotPublishing() first!");
+		this.publishedSnapshot = takeSnapshot();
+	}
 
-		// In case this friendship was added today,
-		// remove it from the daily new friendships
-		this.dailyFriendsAdded.remove(lostFriendship);
+	/**
+	 * Starts (or stops) publishing an immutable snapshot of the zoo each time
+	 * a day is over, i.e. from incrementDay(), before the new day starts. A
+	 * snapshot of the zoo as it is now is published at once. Taking a
+	 * snapshot costs the simulating thread time and memory linear in the size
+	 * of the friendship network (see getFriendshipCsr(), whose copy is reused
+	 * if it is up to date), which is why the publishing is off by default.
+	 *
+	 * @param publishes
+	 *            true to publish snapshots, false to stop (which also drops
+	 *            the published snapshot)
+	 */
+	public void setSnapshotPublishing(boolean publishes) {
+		this.publishesSnapshots = publishes;
+		this.publishedSnapshot = publishes ? takeSnapshot() : null;
+	}
 
-		// Only adjust the daily lost friendships sets if
-		// this friendship existed yesterday
-		if (this.prevDayFriendsSet.contains(lostFriendship)) {
-			this.dailyFriendsRemoved.add(lostFriendship);
+	/**
+	 * Opens an editor through which any number of threads can add and remove
+	 * friendships at once (see {@link com.zoolife.model.ConcurrentZooEditor}).
+	 * Until the editor is closed, the zoo can still be read, but it cannot be
+	 * edited directly nor moved to a new day, and it does not reflect the
+	 * edits made through the editor.
+	 *
+	 * @param writersCount
+	 *            the expected number of threads that edit at once, which sizes
+	 *            the editor's lock stripes
+	 * @return the editor, which must be closed to apply the edits
+	 *
+	 * @throws IllegalArgumentException
+	 *             if writersCount is not positive
+	 * @throws IllegalStateException
+	 *             if another editor is open
+	 * @throws RuntimeException
+	 *             if incrementDay() was not called at least once before the
+	 *             call to this method
+	 */
+	public ConcurrentZooEditor startConcurrentEdits(int writersCount) {
+		if (writersCount <= 0)
+			throw new IllegalArgumentException("The number of writer threads must be > 0!");
+		checkNoConcurrentEdits();
+		if (this.dayCount == 0)
+			throw new RuntimeException("Call incrementDay() before editing frindships!");
+		this.concurrentEditor = new ConcurrentZooEditor(this, writersCount);
+		return this.concurrentEditor;
+	}
+
+	/**
+	 * Starts recording the metrics of this zoo into the passed registry: the
+	 * counters zoo.friendshipsAdded and zoo.friendshipsRemoved, the gauges
+	 * zoo.day and zoo.friendships, and the histogram gauge zoo.degree of the
+	 * numbers of friends of the animals (which scans all the animals, once,
+	 * whenever it is read)
+	 *
+	 * @param metrics
+	 *            the registry to record into, or null to stop counting the
+	 *            friendship changes
+	 */
+	public void setMetrics(MetricsRegistry metrics) {
+		if (metrics == null) {
+			this.friendshipsAdded = null;
+			this.friendshipsRemoved = null;
+			return;
+		}
+		this.friendshipsAdded = metrics.counter("zoo.friendshipsAdded");
+		this.friendshipsRemoved = metrics.counter("zoo.friendshipsRemoved");
+		metrics.gauge("zoo.day", () -> this.dayCount);
+		metrics.gauge("zoo.friendships", () -> this.friendsGraph.edgeCount());
+		metrics.histogramGauge("zoo.degree", this::getDegreeDistribution);
+	}
+
+	/**
+	 * Makes two animals friends before the first day of the zoo, without
+	 * journaling the friendship as one that was established today: it is part
+	 * of the zoo's initial friendship network. The caller must make sure that
+	 * both ids are valid.
+	 *
+	 * @return false (and leaves the zoo unchanged) if the two animals are
+	 *         already friends or if id1 and id2 are the same
+	 *
+	 * @throws IllegalStateException
+	 *             if incrementDay() has already been called
+	 */
+	boolean seedFriendshipById(int id1, int id2) {
+		if (this.dayCount != 0)
+			throw new IllegalStateException("The initial friendships can only be set before the first day!");
+		if (id1 == id2)
+			return false;
+		if (this.eventLog != null) {
+			// Logged before it is made (see addFriendshipById())
+			if (this.friendsGraph.hasEdge(id1, id2))
+				return false;
+			this.eventLog.friendshipSeeded(id1, id2);
+		}
+		if (!this.friendsGraph.addEdge(id1, id2))
+			return false;
+		invalidateCaches(id1, id2);
+		return true;
+	}
+
+	/**
+	 * @return the properties of an animal (see getZooProperties()), built from
+	 *         scratch
+	 */
+	TreeMap<String, String> buildAnimalProperties(int id) {
+		TreeMap<String, String> animProp = this.animalTable.animalAt(id).getProperties();
+		animProp.put("friends", getFriendsNames(id));
+		animProp.put("friendsNumber", String.valueOf(this.friendsGraph.degree(id)));
+		return animProp;
+	}
+
+	/**
+	 * @param id
+	 *            an animal id (0 &lt;= id &lt; the number of zoo animals)
+	 * @return the animal that was assigned the passed id
+	 */
+	Animal getAnimal(int id) {
+		return this.animalTable.animalAt(id);
+	}
+
+	/**
+	 * @return the number of zoo animals (i.e. one more than the largest animal
+	 *         id)
+	 */
+	int getAnimalCount() {
+		return this.animalTable.size();
+	}
+
+	/**
+	 * @param anim
+	 *            a zoo animal
+	 * @return the dense id assigned to anim when the zoo was built, or -1 if
+	 *         anim is not in this zoo
+	 */
+	int getAnimalId(Animal anim) {
+		return this.animalTable.idOf(anim);
+	}
+
+	/**
+	 * Called by the passed editor when it is closed, before it applies its
+	 * edits
+	 */
+	void endConcurrentEdits(ConcurrentZooEditor editor) {
+		if (this.concurrentEditor == editor)
+			this.concurrentEditor = null;
+	}
+
+	/**
+	 * @return the journal of today's friendship changes. The returned journal
+	 *         is the live one.
+	 */
+	DailyChangeJournal getDailyChanges() {
+		return this.dailyChanges;
+	}
+
+	/**
+	 * @return the event log that records the changes of this zoo, or null
+	 */
+	FriendshipEventLog getEventLog() {
+		return this.eventLog;
+	}
+
+	/**
+	 * @return the graph of the zoo's current friendships. The returned graph is
+	 *         the live one and must only be read.
+	 */
+	FriendshipGraph getFriendsGraph() {
+		return this.friendsGraph;
+	}
+
+	/**
+	 * @param eventLog
+	 *            the event log to notify of every change from now on, or null
+	 *            to stop logging
+	 */
+	void setEventLog(FriendshipEventLog eventLog) {
+		this.eventLog = eventLog;
+	}
+
+	private void checkNoConcurrentEdits() {
+		if (this.concurrentEditor != null)
+			throw new IllegalStateException("The zoo is being edited concurrently. Close the editor first!");
+	}
+
+	private Set<Animal> getAnimalFirends(int id) {
+		int degree = this.friendsGraph.degree(id);
+		Set<Animal> animFriends = new HashSet<Animal>(Math.max(16, (degree * 4) / 3 + 1));
+		for (int i = 0; i < degree; i++) {
+			animFriends.add(this.animalTable.animalAt(this.friendsGraph.neighbourAt(id, i)));
 		}
+		return animFriends;
+	}
 
+	/*
+	 * Returns the animals whose friendship with anim was gained (or lost)
+	 * today, by following the journal entries that touch anim
+	 */
+	private Set<Animal> getAnimalFirendsInJournal(Animal anim, boolean gained) {
+		int id = getCheckedAnimalId(anim);
+		Set<Animal> animFriends = new HashSet<Animal>();
+		for (int entry = this.dailyChanges.firstEntryOf(id); entry >= 0; entry = this.dailyChanges
+				.nextEntryOf(entry, id)) {
+			if (gained ? this.dailyChanges.isGained(entry) : this.dailyChanges.isLost(entry)) {
+				long key = this.dailyChanges.keyOf(entry);
+				int friendId = FriendshipGraph.smallerId(key);
+				if (friendId == id)
+					friendId = FriendshipGraph.largerId(key);
+				animFriends.add(this.animalTable.animalAt(friendId));
+			}
+		}
+		return animFriends;
 	}
 
-	private Set<Animal> getAnimalFirendsInSet(Animal anim, Set<AnimalFriendship> friendshipSet) {
+	private String getFriendsNames(int id) {
+		int degree = this.friendsGraph.degree(id);
+		ArrayList<String> friendsNames = new ArrayList<String>(degree);
+		for (int i = 0; i < degree; i++) {
+			friendsNames.add(this.animalTable.animalAt(this.friendsGraph.neighbourAt(id, i)).getName());
+		}
+		Collections.sort(friendsNames);
+		return String.join(", ", friendsNames);
+	}
+
+	private int getCheckedAnimalId(Animal anim) {
 		if (anim == null)
 			throw new NullPointerException("Cannot check the friendship of a null Animal object!");
-		if (!this.animalsSet.contains(anim))
+		int id = getAnimalId(anim);
+		if (id < 0)
 			throw new IllegalArgumentException("Animal is not in this friendshipSet. Cannot know its friends!");
+		return id;
+	}
 
-		Set<Animal> animFriends = new HashSet<Animal>();
-
-		for (AnimalFriendship friendship : friendshipSet) {
-			if (friendship.contains(anim)) {
-				animFriends.add(friendship.getFriendOf(anim));
-			}
+	private Histogram getDegreeDistribution() {
+		Histogram degrees = new Histogram();
+		for (int id = 0; id < getAnimalCount(); id++) {
+			degrees.record(this.friendsGraph.degree(id));
 		}
+		return degrees;
+	}
 
-		return animFriends;
+	private void invalidateCaches(int id1, int id2) {
+		this.friendshipCsr = null;
+		if (this.propertiesCache != null) {
+			this.propertiesCache.invalidate(id1);
+			this.propertiesCache.invalidate(id2);
+		}
 	}
 
-	private void setAnimalsSet(Set<Animal> newAnimalsSet) {
+	private void setAnimalsSet(Collection<? extends Animal> newAnimalsSet) {
 		if (newAnimalsSet == null)
 			throw new NullPointerException("a null object was passed as the zoo's animal set!");
-		if (newAnimalsSet.contains(null))
-			throw new NullPointerException("a null object was passed as one of the zoo's animals!");
-		if (newAnimalsSet.size() == 0)
+
+		// Give each animal a dense id, in iteration order, without copying the
+		// collection first (it may be generated on the fly)
+		this.animalTable = new AnimalTable(newAnimalsSet.size());
+		for (Animal anim : newAnimalsSet) {
+			if (anim == null)
+				throw new NullPointerException("a null object was passed as one of the zoo's animals!");
+			if (!this.animalTable.add(anim))
+				throw new IllegalArgumentException("The same animal was passed more than once!");
+		}
+		if (this.animalTable.size() == 0)
 			throw new IllegalArgumentException("The animal set cannot be empty!");
+		this.animalTable.trimToSize();
+	}
 
-		this.animalsSet = new HashSet<>(newAnimalsSet);
+	/*
+	 * Copies the friendships, reusing the cached copy if it is up to date, and
+	 * today's changes, whose keys are sorted so that their rows come out
+	 * sorted
+	 */
+	private ZooDaySnapshot takeSnapshot() {
+		long[] gainedKeys = new long[this.dailyChanges.entryCount()];
+		long[] lostKeys = new long[this.dailyChanges.entryCount()];
+		int gainedCount = 0;
+		int lostCount = 0;
+		for (int entry = 0; entry < this.dailyChanges.entryCount(); entry++) {
+			if (this.dailyChanges.isGained(entry))
+				gainedKeys[gainedCount++] = this.dailyChanges.keyOf(entry);
+			else if (this.dailyChanges.isLost(entry))
+				lostKeys[lostCount++] = this.dailyChanges.keyOf(entry);
+		}
+		gainedKeys = Arrays.copyOf(gainedKeys, gainedCount);
+		lostKeys = Arrays.copyOf(lostKeys, lostCount);
+		Arrays.sort(gainedKeys);
+		Arrays.sort(lostKeys);
+		return new ZooDaySnapshot(getFriendshipCsr(), new FriendshipCsr(this.animalTable, gainedKeys, this.dayCount),
+				new FriendshipCsr(this.animalTable, lostKeys, this.dayCount));
+	}
+
+	private AnimalFriendship toFriendship(long key) {
+		return new AnimalFriendship(this.animalTable.animalAt(FriendshipGraph.smallerId(key)),
+				this.animalTable.animalAt(FriendshipGraph.largerId(key)));
+	}
+
+	/*
+	 * Wraps every friendship that was gained (or lost) today in an
+	 * AnimalFriendship object
+	 */
+	private Set<AnimalFriendship> toFriendshipSet(boolean gained) {
+		Set<AnimalFriendship> friendshipSet = new HashSet<AnimalFriendship>();
+		for (int entry = 0; entry < this.dailyChanges.entryCount(); entry++) {
+			if (gained ? this.dailyChanges.isGained(entry) : this.dailyChanges.isLost(entry))
+				friendshipSet.add(toFriendship(this.dailyChanges.keyOf(entry)));
+		}
+		return friendshipSet;
 	}
-}
\ No newline at end of file
+}
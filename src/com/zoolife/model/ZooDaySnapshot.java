@@ -0,0 +1,176 @@
+package com.zoolife.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An immutable copy of a {@link com.zoolife.model.Zoo} as it was at the end of
+ * a day: its friendships, and the friendships that were gained and lost on
+ * that day (each in compressed sparse row form, see
+ * {@link com.zoolife.model.FriendshipCsr}).
+ * <p>
+ * A zoo that publishes snapshots (see Zoo.setSnapshotPublishing()) takes one
+ * each time a day is over, and hands it to readers through a volatile field.
+ * Getting the latest snapshot therefore never blocks the thread that
+ * simulates the zoo, and a reader that keeps a snapshot sees the whole of one
+ * completed day, however far the simulation has moved on since. Nothing in a
+ * snapshot is written after construction, so any number of threads can read
+ * it, and each query costs time in the number of friends of the animal asked
+ * about rather than in the size of the zoo.
+ *
+ * @see com.zoolife.model.Zoo
+ * @see com.zoolife.model.FriendshipCsr
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public final class ZooDaySnapshot {
+
+	private FriendshipCsr friendships;
+	private FriendshipCsr friendshipsGained;
+	private FriendshipCsr friendshipsLost;
+
+	/**
+	 * @param friendships
+	 *            the friendships at the end of the day
+	 * @param friendshipsGained
+	 *            the friendships that were gained on that day
+	 * @param friendshipsLost
+	 *            the friendships that were lost on that day
+	 */
+	ZooDaySnapshot(FriendshipCsr friendships, FriendshipCsr friendshipsGained, FriendshipCsr friendshipsLost) {
+		this.friendships = friendships;
+		this.friendshipsGained = friendshipsGained;
+		this.friendshipsLost = friendshipsLost;
+	}
+
+	/**
+	 * @param anim
+	 *            the animal whose friends are retrieved
+	 * @return the set of anim's friends at the end of the day
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the animal
+	 * @throws IllegalArgumentException
+	 *             if the animal is not in the zoo
+	 */
+	public Set<Animal> getAnimalFriends(Animal anim) {
+		return getAnimalsInRow(this.friendships, getCheckedAnimalId(anim));
+	}
+
+	/**
+	 * @param anim
+	 *            the animal whose gained friends are retrieved
+	 * @return the set of animals with which anim established a new friendship
+	 *         on the day
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the animal
+	 * @throws IllegalArgumentException
+	 *             if the animal is not in the zoo
+	 */
+	public Set<Animal> getAnimalFriendsGained(Animal anim) {
+		return getAnimalsInRow(this.friendshipsGained, getCheckedAnimalId(anim));
+	}
+
+	/**
+	 * @param anim
+	 *            the animal whose lost friends are retrieved
+	 * @return the set of animals with which anim broke up its friendship on the
+	 *         day
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the animal
+	 * @throws IllegalArgumentException
+	 *             if the animal is not in the zoo
+	 */
+	public Set<Animal> getAnimalFriendsLost(Animal anim) {
+		return getAnimalsInRow(this.friendshipsLost, getCheckedAnimalId(anim));
+	}
+
+	/**
+	 * @param anim
+	 *            the animal whose properties are retrieved
+	 * @return the properties of anim at the end of the day, as they appear in
+	 *         the zoo properties (see Zoo.getZooProperties())
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the animal
+	 * @throws IllegalArgumentException
+	 *             if the animal is not in the zoo
+	 */
+	public TreeMap<String, String> getAnimalProperties(Animal anim) {
+		int id = getCheckedAnimalId(anim);
+		int[] offsets = this.friendships.getOffsets();
+		int[] neighbours = this.friendships.getNeighbours();
+		ArrayList<String> friendsNames = new ArrayList<String>(offsets[id + 1] - offsets[id]);
+		for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+			friendsNames.add(this.friendships.getAnimal(neighbours[i]).getName());
+		}
+		Collections.sort(friendsNames);
+
+		TreeMap<String, String> animProp = anim.getProperties();
+		animProp.put("friends", String.join(", ", friendsNames));
+		animProp.put("friendsNumber", String.valueOf(friendsNames.size()));
+		return animProp;
+	}
+
+	/**
+	 * @return the number of zoo animals
+	 */
+	public int getAnimalsNumber() {
+		return this.friendships.getAnimalCount();
+	}
+
+	/**
+	 * @return the day that the snapshot is of
+	 */
+	public int getDay() {
+		return this.friendships.getDay();
+	}
+
+	/**
+	 * @return the friendships at the end of the day
+	 */
+	public FriendshipCsr getFriendships() {
+		return this.friendships;
+	}
+
+	/**
+	 * @return the friendships that were gained on the day
+	 */
+	public FriendshipCsr getFriendshipsGained() {
+		return this.friendshipsGained;
+	}
+
+	/**
+	 * @return the friendships that were lost on the day
+	 */
+	public FriendshipCsr getFriendshipsLost() {
+		return this.friendshipsLost;
+	}
+
+	private static Set<Animal> getAnimalsInRow(FriendshipCsr csr, int id) {
+		int[] offsets = csr.getOffsets();
+		int[] neighbours = csr.getNeighbours();
+		Set<Animal> animals = new HashSet<Animal>(Math.max(16, ((offsets[id + 1] - offsets[id]) * 4) / 3 + 1));
+		for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+			animals.add(csr.getAnimal(neighbours[i]));
+		}
+		return animals;
+	}
+
+	private int getCheckedAnimalId(Animal anim) {
+		if (anim == null)
+			throw new NullPointerException("Cannot check the friendship of a null Animal object!");
+		int id = this.friendships.getAnimalId(anim);
+		if (id < 0)
+			throw new IllegalArgumentException("Animal is not in this zoo. Cannot know its friends!");
+		return id;
+	}
+}
@@ -0,0 +1,569 @@
+package com.zoolife.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import com.zoolife.model.SimulationEvents.ExportEvent;
+
+/**
+ * Exports the state of a {@link com.zoolife.model.Zoo} in a machine-readable
+ * format: either the friendships gained and lost today, or the property table
+ * of all the animals (the same properties as Zoo.getZooProperties()).
+ * <p>
+ * Three formats are supported:
+ * <ul>
+ * <li>JSON_LINES: one JSON object per friendship change or per animal, e.g.
+ * {"day":3,"change":"added","animal1":"Rex","animal2":"Polly"} or
+ * {"name":"Rex","species":"dog","favFood":"Meat","dogType":"Poodle",
+ * "friendsNumber":1,"friends":["Polly"]}</li>
+ * <li>CSV: the same records as rows, under a header row (written once per
+ * kind of record). The friends' names are joined by ';'</li>
+ * <li>BINARY: a little-endian columnar block per export, starting with the
+ * magic number "ZOOX", the format version, the kind of block (0 for the
+ * property table, 1 for the daily changes), the day count, and the number
+ * of rows. A property table then holds its columns in turn: the species
+ * bytes (as in ZooSnapshot), the names, the favorite foods, the dog types
+ * of the dogs, the wingspans of the birds, the flag of the birds (canSpeak
+ * or isBroiler), the numbers of friends, and the row numbers of the friends
+ * of each animal in turn. Daily changes are a column of change bytes (1 for
+ * added, 0 for removed) followed by two columns of row numbers. Strings are
+ * a length byte followed by UTF-8 bytes</li>
+ * </ul>
+ * The records are written straight from the zoo's id-indexed tables, in id
+ * order, without building any intermediate map, through a single buffer which
+ * is only handed to the sink when full (or on flush() and close()). The row
+ * numbers of the binary format are the animals' ids, i.e. their row in the
+ * property table of the same zoo, and the friends of an animal are not
+ * sorted.
+ *
+ * @see com.zoolife.model.Zoo
+ * @see com.zoolife.model.ZooSnapshot
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public final class ZooExporter implements Closeable {
+
+	/**
+	 * The formats a zoo can be exported in
+	 */
+	public enum Format {
+		BINARY, CSV, JSON_LINES
+	}
+
+	private static final byte ADDED = 1;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final byte CHANGES_BLOCK = 1;
+	private static final String CHANGES_HEADER = "day,change,animal1,animal2\n";
+	private static final byte CHICKEN = 2;
+	private static final byte DOG = 0;
+	private static final int MAGIC = 0x584f4f5a; // "ZOOX" in little-endian
+	private static final byte PARROT = 1;
+	private static final byte PROPERTIES_BLOCK = 0;
+	private static final String PROPERTIES_HEADER = "name,species,favFood,dogType,wingspan,canSpeak,isBroiler,friendsNumber,friends\n";
+	private static final byte REMOVED = 0;
+	private static final String[] SPECIES_NAMES = { "dog", "parrot", "chicken" }; // By species byte
+	private static final int VERSION = 1;
+
+	private ByteBuffer buffer;
+	private boolean changesHeaderWritten; // Only used by CSV
+	private byte[][] encodedNames; // Of the animals of encodedZoo, by id
+	private Zoo encodedZoo;
+	private Format format;
+	private boolean propertiesHeaderWritten; // Only used by CSV
+	private boolean[] quotedNames; // Of the animals of encodedZoo (CSV only)
+	private OutputStream sink;
+
+	/**
+	 * @param sink
+	 *            the stream to write to. It is closed by close()
+	 * @param format
+	 *            the format to export in
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the sink or the format
+	 */
+	public ZooExporter(OutputStream sink, Format format) {
+		if (sink == null)
+			throw new NullPointerException("A null object was passed as the export sink!");
+		if (format == null)
+			throw new NullPointerException("A null object was passed as the export format!");
+		this.sink = sink;
+		this.format = format;
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Flushes the buffered records and closes the sink
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			this.sink.close();
+		}
+	}
+
+	/**
+	 * Exports the friendships that were gained and lost today (i.e. since the
+	 * last call to Zoo.incrementDay())
+	 *
+	 * @param zoo
+	 *            the zoo to export
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the zoo
+	 * @throws IllegalArgumentException
+	 *             if an animal of the zoo is not a dog, a parrot, or a chicken
+	 *             (BINARY only)
+	 * @throws IOException
+	 *             if the sink cannot be written
+	 */
+	public void exportDailyChanges(Zoo zoo) throws IOException {
+		checkZoo(zoo);
+		ExportEvent event = new ExportEvent("dailyChanges", this.format);
+		event.begin();
+		event.finish(zoo, writeDailyChanges(zoo));
+	}
+
+	/**
+	 * Exports the properties of all the zoo animals, with their friends
+	 *
+	 * @param zoo
+	 *            the zoo to export
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the zoo
+	 * @throws IllegalArgumentException
+	 *             if an animal of the zoo is not a dog, a parrot, or a chicken
+	 * @throws IOException
+	 *             if the sink cannot be written
+	 */
+	public void exportZooProperties(Zoo zoo) throws IOException {
+		checkZoo(zoo);
+		ExportEvent event = new ExportEvent("zooProperties", this.format);
+		event.begin();
+		writeZooProperties(zoo);
+		event.finish(zoo, zoo.getFriendsGraph().edgeCount());
+	}
+
+	/**
+	 * Hands the buffered records to the sink, and flushes it
+	 *
+	 * @throws IOException
+	 *             if the sink cannot be written
+	 */
+	public void flush() throws IOException {
+		drain();
+		this.sink.flush();
+	}
+
+	/**
+	 * @return the format that the exporter exports in
+	 */
+	public Format getFormat() {
+		return this.format;
+	}
+
+	private static boolean birdFlag(Animal anim) {
+		return (anim instanceof Parrot) ? ((Parrot) anim).canSpeak() : ((Chicken) anim).isBroiler();
+	}
+
+	/*
+	 * Doubles the quotes, and adds enclosing quotes if the value needs them
+	 */
+	private static String csvString(String value) {
+		if (!needsCsvQuotes(value))
+			return value;
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	private static void checkZoo(Zoo zoo) {
+		if (zoo == null)
+			throw new NullPointerException("A null object was passed as the zoo to export!");
+	}
+
+	private void drain() throws IOException {
+		if (this.buffer.position() > 0) {
+			this.sink.write(this.buffer.array(), 0, this.buffer.position());
+			this.buffer.clear();
+		}
+	}
+
+	/*
+	 * The names of the friends are written many times over, and reading them
+	 * means a random access to each friend, so they are encoded (quoted and
+	 * escaped as needed) once per zoo and then copied byte for byte
+	 */
+	private void encodeNames(Zoo zoo) {
+		if (this.encodedZoo == zoo)
+			return;
+		int animalCount = zoo.getAnimalCount();
+		this.encodedNames = new byte[animalCount][];
+		if (this.format == Format.CSV)
+			this.quotedNames = new boolean[animalCount];
+		for (int id = 0; id < animalCount; id++) {
+			String name = zoo.getAnimal(id).getName();
+			if (this.format == Format.CSV) {
+				this.quotedNames[id] = needsCsvQuotes(name);
+				name = name.replace("\"", "\"\"");
+			} else {
+				name = jsonString(name);
+			}
+			this.encodedNames[id] = name.getBytes(StandardCharsets.UTF_8);
+		}
+		this.encodedZoo = zoo;
+	}
+
+	private void ensureRemaining(int bytes) throws IOException {
+		if (this.buffer.remaining() < bytes)
+			drain();
+	}
+
+	private void exportBinaryZooProperties(Zoo zoo) throws IOException {
+		int animalCount = zoo.getAnimalCount();
+		FriendshipGraph friendsGraph = zoo.getFriendsGraph();
+		writeBlockHeader(PROPERTIES_BLOCK, zoo, animalCount);
+		for (int id = 0; id < animalCount; id++) {
+			ensureRemaining(1);
+			this.buffer.put(speciesOf(zoo.getAnimal(id)));
+		}
+		for (int id = 0; id < animalCount; id++) {
+			writeBinaryString(zoo.getAnimal(id).getName());
+		}
+		for (int id = 0; id < animalCount; id++) {
+			writeBinaryString(zoo.getAnimal(id).getFavFood());
+		}
+		for (int id = 0; id < animalCount; id++) {
+			Animal anim = zoo.getAnimal(id);
+			if (anim instanceof Dog)
+				writeBinaryString(((Dog) anim).getDogType());
+		}
+		for (int id = 0; id < animalCount; id++) {
+			Animal anim = zoo.getAnimal(id);
+			if (anim instanceof Bird) {
+				ensureRemaining(Float.BYTES);
+				this.buffer.putFloat(((Bird) anim).getWingspan());
+			}
+		}
+		for (int id = 0; id < animalCount; id++) {
+			Animal anim = zoo.getAnimal(id);
+			if (anim instanceof Bird) {
+				ensureRemaining(1);
+				this.buffer.put((byte) (birdFlag(anim) ? 1 : 0));
+			}
+		}
+		for (int id = 0; id < animalCount; id++) {
+			ensureRemaining(Integer.BYTES);
+			this.buffer.putInt(friendsGraph.degree(id));
+		}
+		for (int id = 0; id < animalCount; id++) {
+			int degree = friendsGraph.degree(id);
+			for (int i = 0; i < degree; i++) {
+				ensureRemaining(Integer.BYTES);
+				this.buffer.putInt(friendsGraph.neighbourAt(id, i));
+			}
+		}
+	}
+
+	/*
+	 * Escapes the value, and adds the enclosing quotes (also used by
+	 * ZooQueryServer)
+	 */
+	static String jsonString(String value) {
+		StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if ((c == '"') || (c == '\\'))
+				builder.append('\\').append(c);
+			else if (c < 0x20)
+				builder.append(String.format("\\u%04x", (int) c));
+			else
+				builder.append(c);
+		}
+		return builder.append('"').toString();
+	}
+
+	private static boolean needsCsvQuotes(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if ((c == ',') || (c == '"') || (c == ';') || (c == '\n') || (c == '\r'))
+				return true;
+		}
+		return false;
+	}
+
+	private static byte speciesOf(Animal anim) {
+		if (anim instanceof Dog)
+			return DOG;
+		if (anim instanceof Parrot)
+			return PARROT;
+		if (anim instanceof Chicken)
+			return CHICKEN;
+		throw new IllegalArgumentException("Cannot export animals of class " + anim.getClass().getName() + "!");
+	}
+
+	/*
+	 * Writes the characters (which must be ASCII) straight into the buffer's
+	 * array
+	 */
+	private void writeAscii(String value) throws IOException {
+		int length = value.length();
+		ensureRemaining(length);
+		if (length > this.buffer.remaining()) {
+			this.sink.write(value.getBytes(StandardCharsets.US_ASCII));
+			return;
+		}
+		byte[] array = this.buffer.array();
+		int position = this.buffer.position();
+		for (int i = 0; i < length; i++) {
+			array[position++] = (byte) value.charAt(i);
+		}
+		this.buffer.position(position);
+	}
+
+	/*
+	 * The animals' strings have at most 20 characters, hence at most 60 UTF-8
+	 * bytes, so their length fits in a byte
+	 */
+	private void writeBinaryString(String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		ensureRemaining(1 + bytes.length);
+		this.buffer.put((byte) bytes.length).put(bytes);
+	}
+
+	private void writeBlockHeader(byte kind, Zoo zoo, int rowCount) throws IOException {
+		ensureRemaining(4 * Integer.BYTES + 1);
+		this.buffer.putInt(MAGIC).putInt(VERSION).put(kind).putInt(zoo.getDayCount()).putInt(rowCount);
+	}
+
+	private void writeBytes(byte[] bytes) throws IOException {
+		ensureRemaining(bytes.length);
+		if (bytes.length > this.buffer.remaining())
+			this.sink.write(bytes);
+		else
+			this.buffer.put(bytes);
+	}
+
+	private void writeCsvAnimal(Animal anim, int id, FriendshipGraph friendsGraph) throws IOException {
+		writeName(id);
+		writeAscii(",");
+		writeAscii(SPECIES_NAMES[speciesOf(anim)]);
+		writeAscii(",");
+		writeUtf8(csvString(anim.getFavFood()));
+		writeAscii(",");
+		if (anim instanceof Dog)
+			writeUtf8(csvString(((Dog) anim).getDogType()));
+		writeAscii(",");
+		if (anim instanceof Bird)
+			writeAscii(String.valueOf(((Bird) anim).getWingspan()));
+		writeAscii(",");
+		if (anim instanceof Parrot)
+			writeAscii(String.valueOf(((Parrot) anim).canSpeak()));
+		writeAscii(",");
+		if (anim instanceof Chicken)
+			writeAscii(String.valueOf(((Chicken) anim).isBroiler()));
+		writeAscii(",");
+		int degree = friendsGraph.degree(id);
+		writeInt(degree);
+		writeAscii(",");
+		// The names are written into one field, which must be quoted as a whole
+		// if any of them needs it
+		boolean quoted = false;
+		for (int i = 0; (i < degree) && !quoted; i++) {
+			quoted = this.quotedNames[friendsGraph.neighbourAt(id, i)];
+		}
+		if (quoted)
+			writeAscii("\"");
+		for (int i = 0; i < degree; i++) {
+			if (i > 0)
+				writeAscii(";");
+			writeBytes(this.encodedNames[friendsGraph.neighbourAt(id, i)]);
+		}
+		if (quoted)
+			writeAscii("\"");
+		writeAscii("\n");
+	}
+
+	/*
+	 * Returns the number of exported changes
+	 */
+	private int writeDailyChanges(Zoo zoo) throws IOException {
+		DailyChangeJournal dailyChanges = zoo.getDailyChanges();
+		int entryCount = dailyChanges.entryCount();
+
+		if (this.format == Format.BINARY) {
+			int rowCount = 0;
+			for (int entry = 0; entry < entryCount; entry++) {
+				if (dailyChanges.isGained(entry) || dailyChanges.isLost(entry))
+					rowCount++;
+			}
+			writeBlockHeader(CHANGES_BLOCK, zoo, rowCount);
+			for (int entry = 0; entry < entryCount; entry++) {
+				if (dailyChanges.isGained(entry) || dailyChanges.isLost(entry)) {
+					ensureRemaining(1);
+					this.buffer.put(dailyChanges.isGained(entry) ? ADDED : REMOVED);
+				}
+			}
+			for (int pass = 0; pass < 2; pass++) {
+				for (int entry = 0; entry < entryCount; entry++) {
+					if (dailyChanges.isGained(entry) || dailyChanges.isLost(entry)) {
+						long key = dailyChanges.keyOf(entry);
+						ensureRemaining(Integer.BYTES);
+						this.buffer.putInt(
+								(pass == 0) ? FriendshipGraph.smallerId(key) : FriendshipGraph.largerId(key));
+					}
+				}
+			}
+			return rowCount;
+		}
+
+		if ((this.format == Format.CSV) && !this.changesHeaderWritten) {
+			writeAscii(CHANGES_HEADER);
+			this.changesHeaderWritten = true;
+		}
+		encodeNames(zoo);
+		int day = zoo.getDayCount();
+		int rowCount = 0;
+		for (int entry = 0; entry < entryCount; entry++) {
+			if (!dailyChanges.isGained(entry) && !dailyChanges.isLost(entry))
+				continue;
+			String change = dailyChanges.isGained(entry) ? "added" : "removed";
+			long key = dailyChanges.keyOf(entry);
+			rowCount++;
+			if (this.format == Format.CSV) {
+				writeInt(day);
+				writeAscii(",");
+				writeAscii(change);
+				writeAscii(",");
+				writeName(FriendshipGraph.smallerId(key));
+				writeAscii(",");
+				writeName(FriendshipGraph.largerId(key));
+				writeAscii("\n");
+			} else {
+				writeAscii("{\"day\":");
+				writeInt(day);
+				writeAscii(",\"change\":\"");
+				writeAscii(change);
+				writeAscii("\",\"animal1\":");
+				writeName(FriendshipGraph.smallerId(key));
+				writeAscii(",\"animal2\":");
+				writeName(FriendshipGraph.largerId(key));
+				writeAscii("}\n");
+			}
+		}
+		return rowCount;
+	}
+
+	private void writeInt(int value) throws IOException {
+		if (value < 0) {
+			writeAscii(String.valueOf(value));
+			return;
+		}
+		ensureRemaining(10);
+		int divisor = 1;
+		while ((value / divisor) >= 10) {
+			divisor *= 10;
+		}
+		for (; divisor > 0; divisor /= 10) {
+			this.buffer.put((byte) ('0' + ((value / divisor) % 10)));
+		}
+	}
+
+	private void writeJsonAnimal(Animal anim, int id, FriendshipGraph friendsGraph) throws IOException {
+		writeAscii("{\"name\":");
+		writeName(id);
+		writeAscii(",\"species\":\"");
+		writeAscii(SPECIES_NAMES[speciesOf(anim)]);
+		writeAscii("\",\"favFood\":");
+		writeUtf8(jsonString(anim.getFavFood()));
+		if (anim instanceof Dog) {
+			writeAscii(",\"dogType\":");
+			writeUtf8(jsonString(((Dog) anim).getDogType()));
+		} else {
+			writeAscii(",\"wingspan\":");
+			writeAscii(String.valueOf(((Bird) anim).getWingspan()));
+			writeAscii((anim instanceof Parrot) ? ",\"canSpeak\":" : ",\"isBroiler\":");
+			writeAscii(String.valueOf(birdFlag(anim)));
+		}
+		int degree = friendsGraph.degree(id);
+		writeAscii(",\"friendsNumber\":");
+		writeInt(degree);
+		writeAscii(",\"friends\":[");
+		for (int i = 0; i < degree; i++) {
+			if (i > 0)
+				writeAscii(",");
+			writeBytes(this.encodedNames[friendsGraph.neighbourAt(id, i)]);
+		}
+		writeAscii("]}\n");
+	}
+
+	/*
+	 * Writes the encoded name of an animal of encodedZoo as a field of its own
+	 */
+	private void writeName(int id) throws IOException {
+		if ((this.format == Format.CSV) && this.quotedNames[id]) {
+			writeAscii("\"");
+			writeBytes(this.encodedNames[id]);
+			writeAscii("\"");
+		} else {
+			writeBytes(this.encodedNames[id]);
+		}
+	}
+
+	/*
+	 * Writes the characters straight into the buffer's array as long as they
+	 * are ASCII, which is the common case, and falls back on the UTF-8 encoder
+	 * otherwise
+	 */
+	private void writeUtf8(String value) throws IOException {
+		int length = value.length();
+		ensureRemaining(length);
+		if (length <= this.buffer.remaining()) {
+			byte[] array = this.buffer.array();
+			int position = this.buffer.position();
+			int i = 0;
+			while ((i < length) && (value.charAt(i) < 0x80)) {
+				array[position + i] = (byte) value.charAt(i);
+				i++;
+			}
+			if (i == length) {
+				this.buffer.position(position + length);
+				return;
+			}
+		}
+		writeBytes(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void writeZooProperties(Zoo zoo) throws IOException {
+		int animalCount = zoo.getAnimalCount();
+		for (int id = 0; id < animalCount; id++) {
+			speciesOf(zoo.getAnimal(id));
+		}
+		if (this.format == Format.BINARY) {
+			exportBinaryZooProperties(zoo);
+			return;
+		}
+
+		if ((this.format == Format.CSV) && !this.propertiesHeaderWritten) {
+			writeAscii(PROPERTIES_HEADER);
+			this.propertiesHeaderWritten = true;
+		}
+		encodeNames(zoo);
+		FriendshipGraph friendsGraph = zoo.getFriendsGraph();
+		for (int id = 0; id < animalCount; id++) {
+			Animal anim = zoo.getAnimal(id);
+			if (this.format == Format.CSV)
+				writeCsvAnimal(anim, id, friendsGraph);
+			else
+				writeJsonAnimal(anim, id, friendsGraph);
+		}
+	}
+}
@@ -0,0 +1,392 @@
+package com.zoolife.model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the animals and the zoo keeper settings of a zoo from a file, one
+ * record per line, in either of two formats:
+ * <ul>
+ * <li>CSV (the default), with the records <code>dog,name,favFood,dogType</code>,
+ * <code>parrot,name,favFood,wingspan,canSpeak</code>,
+ * <code>chicken,name,favFood,wingspan,isBroiler</code>, and
+ * <code>setting,name,value</code>. Fields may be enclosed in double quotes
+ * (with <code>""</code> standing for a quote), and an optional header line
+ * starting with <code>species</code> (the first line that is neither blank nor
+ * a comment) is skipped.</li>
+ * <li>JSON lines (for files ending in .jsonl, .ndjson, or .json), with one flat
+ * object per line, e.g.
+ * <code>{"species":"parrot","name":"Polly","favFood":"Grain","wingspan":0.3,"canSpeak":true}</code>
+ * or <code>{"setting":"maxGainableFriends","value":2}</code>.</li>
+ * </ul>
+ * In both formats, blank lines and lines starting with # are ignored.
+ * <p>
+ * The file is read through a buffered channel and parsed one line at a time,
+ * so only the resulting animals are held in memory. A malformed record (or one
+ * that would make an invalid animal, or that repeats an animal's name) is
+ * skipped and reported as a warning with its line number.
+ *
+ * @see com.zoolife.model.Loader
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+final class ZooFileReader {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int MAX_WARNINGS = 1000; // Warnings kept in memory
+
+	private Set<Animal> animals;
+	private boolean jsonLines;
+	private int malformedRecords;
+	private Path path;
+	private HashMap<String, Integer> settings;
+	private List<String> warnings;
+
+	/**
+	 * @param path
+	 *            the file to read. Its format is chosen from its extension.
+	 */
+	ZooFileReader(Path path) {
+		this.path = path;
+		String fileName = String.valueOf(path.getFileName()).toLowerCase();
+		this.jsonLines = fileName.endsWith(".jsonl") || fileName.endsWith(".ndjson") || fileName.endsWith(".json");
+		this.animals = new HashSet<Animal>();
+		this.settings = new HashMap<String, Integer>();
+		this.warnings = new ArrayList<String>();
+	}
+
+	/**
+	 * @return the animals read (empty until read() is called)
+	 */
+	Set<Animal> getAnimals() {
+		return this.animals;
+	}
+
+	/**
+	 * @return the number of records that were skipped, which may be larger
+	 *         than the number of warnings kept
+	 */
+	int getMalformedRecords() {
+		return this.malformedRecords;
+	}
+
+	/**
+	 * @return the settings read, by name (empty until read() is called)
+	 */
+	HashMap<String, Integer> getSettings() {
+		return this.settings;
+	}
+
+	/**
+	 * @return the warnings about the skipped records, each starting with the
+	 *         record's line number
+	 */
+	List<String> getWarnings() {
+		return this.warnings;
+	}
+
+	/**
+	 * Reads the whole file
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	void read() throws IOException {
+		// Undecodable bytes become replacement characters, so they only make
+		// their own record malformed
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ);
+				BufferedReader reader = new BufferedReader(Channels.newReader(channel, decoder, BUFFER_SIZE),
+						BUFFER_SIZE)) {
+			int lineNumber = 0;
+			boolean isFirstRecord = true; // The only one that can be a header
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				String record = line.trim();
+				if (record.isEmpty() || record.startsWith("#"))
+					continue;
+				boolean isHeader = isFirstRecord && !this.jsonLines && record.startsWith("species");
+				isFirstRecord = false;
+				try {
+					if (this.jsonLines)
+						readRecord(parseJsonObject(record));
+					else if (!isHeader)
+						readRecord(parseCsvRecord(record));
+				} catch (IllegalArgumentException | NullPointerException e) {
+					warn(lineNumber, e.getMessage());
+				}
+			}
+		}
+	}
+
+	private static Animal createAnimal(HashMap<String, String> fields) {
+		String species = fields.get("species");
+		String name = requiredField(fields, "name");
+		String favFood = requiredField(fields, "favFood");
+		switch (species) {
+		case "dog":
+			return new Dog(name, favFood, requiredField(fields, "dogType"));
+		case "parrot":
+			return new Parrot(name, favFood, parseWingspan(fields), parseBoolean(fields, "canSpeak"));
+		case "chicken":
+			return new Chicken(name, favFood, parseWingspan(fields), parseBoolean(fields, "isBroiler"));
+		default:
+			throw new IllegalArgumentException("Unknown species \"" + species + "\"");
+		}
+	}
+
+	private static boolean parseBoolean(HashMap<String, String> fields, String field) {
+		String value = requiredField(fields, field);
+		if (value.equals("true"))
+			return true;
+		if (value.equals("false"))
+			return false;
+		throw new IllegalArgumentException("The " + field + " field must be true or false");
+	}
+
+	/*
+	 * Maps the fields of a CSV record to the names used in the JSON records
+	 */
+	private static HashMap<String, String> parseCsvRecord(String record) {
+		List<String> values = splitCsvRecord(record);
+		HashMap<String, String> fields = new HashMap<String, String>();
+		String[] names;
+		switch (values.get(0)) {
+		case "dog":
+			names = new String[] { "species", "name", "favFood", "dogType" };
+			break;
+		case "parrot":
+			names = new String[] { "species", "name", "favFood", "wingspan", "canSpeak" };
+			break;
+		case "chicken":
+			names = new String[] { "species", "name", "favFood", "wingspan", "isBroiler" };
+			break;
+		case "setting":
+			values.remove(0);
+			names = new String[] { "setting", "value" };
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown record type \"" + values.get(0) + "\"");
+		}
+		if (values.size() != names.length)
+			throw new IllegalArgumentException("Expected " + names.length + " fields but found " + values.size());
+		for (int i = 0; i < names.length; i++) {
+			fields.put(names[i], values.get(i));
+		}
+		return fields;
+	}
+
+	/*
+	 * Parses a flat JSON object, whose values are strings, numbers, booleans,
+	 * or null (which are all kept as strings)
+	 */
+	private static HashMap<String, String> parseJsonObject(String record) {
+		HashMap<String, String> fields = new HashMap<String, String>();
+		int[] position = { skipWhitespace(record, 0) };
+		expect(record, position, '{');
+		if (peek(record, position) == '}') {
+			position[0]++;
+		} else {
+			while (true) {
+				String key = parseJsonString(record, position);
+				expect(record, position, ':');
+				String value;
+				if (peek(record, position) == '"') {
+					value = parseJsonString(record, position);
+				} else {
+					int start = position[0];
+					while ((position[0] < record.length()) && (",} \t".indexOf(record.charAt(position[0])) < 0)) {
+						position[0]++;
+					}
+					value = record.substring(start, position[0]);
+					if (value.isEmpty() || value.equals("null"))
+						value = null;
+					else if (!value.matches("true|false|-?[0-9.eE+-]+"))
+						throw new IllegalArgumentException("Unsupported JSON value \"" + value + "\"");
+				}
+				if (fields.containsKey(key))
+					throw new IllegalArgumentException("Repeated JSON key \"" + key + "\"");
+				fields.put(key, value);
+				if (peek(record, position) == ',') {
+					position[0]++;
+				} else {
+					expect(record, position, '}');
+					break;
+				}
+			}
+		}
+		if (skipWhitespace(record, position[0]) != record.length())
+			throw new IllegalArgumentException("Unexpected characters after the JSON object");
+		return fields;
+	}
+
+	private static String parseJsonString(String record, int[] position) {
+		expect(record, position, '"');
+		StringBuilder value = new StringBuilder();
+		int i = position[0];
+		while (true) {
+			if (i >= record.length())
+				throw new IllegalArgumentException("Unterminated JSON string");
+			char c = record.charAt(i++);
+			if (c == '"')
+				break;
+			if (c != '\\') {
+				value.append(c);
+				continue;
+			}
+			if (i >= record.length())
+				throw new IllegalArgumentException("Unterminated JSON string");
+			char escaped = record.charAt(i++);
+			switch (escaped) {
+			case '"':
+			case '\\':
+			case '/':
+				value.append(escaped);
+				break;
+			case 'b':
+				value.append('\b');
+				break;
+			case 'f':
+				value.append('\f');
+				break;
+			case 'n':
+				value.append('\n');
+				break;
+			case 'r':
+				value.append('\r');
+				break;
+			case 't':
+				value.append('\t');
+				break;
+			case 'u':
+				if ((i + 4) > record.length())
+					throw new IllegalArgumentException("Invalid JSON escape");
+				try {
+					value.append((char) Integer.parseInt(record.substring(i, i + 4), 16));
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Invalid JSON escape");
+				}
+				i += 4;
+				break;
+			default:
+				throw new IllegalArgumentException("Invalid JSON escape \\" + escaped);
+			}
+		}
+		position[0] = i;
+		return value.toString();
+	}
+
+	private static float parseWingspan(HashMap<String, String> fields) {
+		try {
+			return Float.parseFloat(requiredField(fields, "wingspan"));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("The wingspan field must be a number");
+		}
+	}
+
+	private static void expect(String record, int[] position, char expected) {
+		if (peek(record, position) != expected)
+			throw new IllegalArgumentException("Expected '" + expected + "' at column " + (position[0] + 1));
+		position[0]++;
+	}
+
+	/*
+	 * Skips the whitespace at the position, and returns the character that
+	 * follows it (or 0 at the end of the record)
+	 */
+	private static char peek(String record, int[] position) {
+		position[0] = skipWhitespace(record, position[0]);
+		return (position[0] < record.length()) ? record.charAt(position[0]) : 0;
+	}
+
+	private void readRecord(HashMap<String, String> fields) {
+		if (fields.containsKey("setting")) {
+			String setting = requiredField(fields, "setting");
+			if (!setting.equals("maxLosableFriends") && !setting.equals("maxGainableFriends"))
+				throw new IllegalArgumentException("Unknown setting \"" + setting + "\"");
+			int value;
+			try {
+				value = Integer.parseInt(requiredField(fields, "value"));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("The value of " + setting + " must be an integer");
+			}
+			if (value < 0)
+				throw new IllegalArgumentException("The value of " + setting + " cannot be negative");
+			this.settings.put(setting, value);
+			return;
+		}
+
+		if (fields.get("species") == null)
+			throw new IllegalArgumentException("The record has neither a species nor a setting field");
+		Animal anim = createAnimal(fields);
+		if (!this.animals.add(anim))
+			throw new IllegalArgumentException("An animal named \"" + anim.getName() + "\" was already loaded");
+	}
+
+	private static String requiredField(HashMap<String, String> fields, String field) {
+		String value = fields.get(field);
+		if (value == null)
+			throw new IllegalArgumentException("The " + field + " field is missing");
+		return value;
+	}
+
+	private static int skipWhitespace(String record, int position) {
+		while ((position < record.length()) && Character.isWhitespace(record.charAt(position))) {
+			position++;
+		}
+		return position;
+	}
+
+	private static List<String> splitCsvRecord(String record) {
+		List<String> values = new ArrayList<String>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < record.length(); i++) {
+			char c = record.charAt(i);
+			if (quoted) {
+				if (c != '"') {
+					value.append(c);
+				} else if (((i + 1) < record.length()) && (record.charAt(i + 1) == '"')) {
+					value.append('"');
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				values.add(value.toString().trim());
+				value.setLength(0);
+			} else {
+				value.append(c);
+			}
+		}
+		if (quoted)
+			throw new IllegalArgumentException("Unterminated quoted field");
+		values.add(value.toString().trim());
+		return values;
+	}
+
+	private void warn(int lineNumber, String message) {
+		this.malformedRecords++;
+		if (this.warnings.size() < MAX_WARNINGS)
+			this.warnings.add("line " + lineNumber + ": " + message);
+	}
+}
@@ -1,7 +1,12 @@
 package com.zoolife.model;
 
 import java.util.Random;
-import java.util.Set;
+
+import com.zoolife.metrics.Histogram;
+import com.zoolife.metrics.MetricsRegistry;
+import com.zoolife.metrics.Timer;
+import com.zoolife.model.SimulationEvents.PhaseEvent;
+import com.zoolife.model.SimulationEvents.SimulateDayEvent;
 
 /**
  * This class controls the methods of the {@link com.zoolife.model.Zoo} class
@@ -27,6 +32,34 @@ import java.util.Set;
  * parrot might be left loosing two freinds even if the maximum number of
  * losable friends is 1.
  *
+ * <p>
+ * The simulation works with the animal ids of the Zoo class rather than with
+ * sets of Animal objects. Friends to lose are drawn directly from an animal's
+ * neighbour list, and friends to gain are drawn by rejection sampling against
+ * the friendship network, so each random pick takes constant (expected) time.
+ *
+ * <p>
+ * By default, the animals are processed one at a time with a single random
+ * numbers generator. Calling setParallelism() with a positive value switches
+ * to a parallel mode in which each day is spread over a pool of worker
+ * threads. In that mode, each animal draws from its own random stream (derived
+ * from the seed), and conflicting edits are resolved in animal id order, so a
+ * seeded run gives the same result for any positive parallelism (although not
+ * the same result as the sequential mode).
+ *
+ * <p>
+ * Calling setMetrics() makes the zoo keeper record how long each day takes,
+ * split into its phases, and how many bytes the simulating thread allocates.
+ * In the sequential mode, this means reading the clock twice per animal, which
+ * is noticeable on large zoos. Without metrics, the days are simulated by the
+ * uninstrumented loop.
+ *
+ * <p>
+ * Each day is also reported to Java Flight Recorder, as a
+ * com.zoolife.SimulateDay event and, if the recording enables them, as
+ * com.zoolife.SimulationPhase events (see SimulationEvents). In the sequential
+ * mode, the phase events need the same per-animal timing as the metrics, and
+ * so the days are only timed while the phase events are recorded.
  *
  * @see com.zoolife.model.Zoo
  *
@@ -37,10 +70,18 @@ import java.util.Set;
 
 public class ZooKeeper {
 
+	private IdCandidatePool candidatePool; // Reused for every animal
+	private Histogram dayAllocatedBytes; // null unless metrics are recorded
+	private Timer dayTimer; // null unless metrics are recorded
+	private Timer gainPhaseTimer; // null unless metrics are recorded
+	private Timer losePhaseTimer; // null unless metrics are recorded
 	private int maxGainableFriends;
 	private int maxLosableFriends;
+	private MetricsRegistry metrics;
+	private ParallelDaySimulator parallelSimulator; // null in sequential mode
 
 	private Random randomGenerator;
+	private long randomSeed;
 
 	/**
 	 * The constructor with no seed
@@ -57,7 +98,9 @@ public class ZooKeeper {
 	public ZooKeeper(int maxLosableFriends, int maxGainableFriends) {
 		this.setMaxLosableFriends(maxLosableFriends);
 		this.setMaxGainableFriends(maxGainableFriends);
-		this.randomGenerator = new Random();
+		this.randomSeed = new Random().nextLong();
+		this.randomGenerator = new Random(this.randomSeed);
+		this.candidatePool = new IdCandidatePool();
 	}
 
 	/**
@@ -78,7 +121,9 @@ public class ZooKeeper {
 	public ZooKeeper(int maxLosableFriends, int maxGainableFriends, long randomSeed) {
 		this.setMaxLosableFriends(maxLosableFriends);
 		this.setMaxGainableFriends(maxGainableFriends);
+		this.randomSeed = randomSeed;
 		this.randomGenerator = new Random(randomSeed);
+		this.candidatePool = new IdCandidatePool();
 	}
 
 	/**
@@ -95,6 +140,14 @@ public class ZooKeeper {
 		return this.maxLosableFriends;
 	}
 
+	/**
+	 * @return the number of worker threads used to simulate a day, or 0 if the
+	 *         days are simulated sequentially
+	 */
+	public int getParallelism() {
+		return (this.parallelSimulator == null) ? 0 : this.parallelSimulator.getParallelism();
+	}
+
 	/**
 	 * @param maxGainableFriends
 	 *            The maximum number of friends that each animal can gain (Note
@@ -124,6 +177,50 @@ public class ZooKeeper {
 		this.maxLosableFriends = maxLosableFriends;
 	}
 
+	/**
+	 * Selects between the sequential and the parallel simulation modes (see the
+	 * class description)
+	 *
+	 * @param parallelism
+	 *            0 to simulate the days sequentially (the default), or the
+	 *            number of worker threads over which each day is spread
+	 *
+	 * @throws IllegalArgumentException
+	 *             if parallelism is less than 0
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 0)
+			throw new IllegalArgumentException("The parallelism must be >= 0!");
+		if (parallelism == getParallelism())
+			return;
+		if (this.parallelSimulator != null)
+			this.parallelSimulator.shutdown();
+		this.parallelSimulator = (parallelism == 0) ? null : new ParallelDaySimulator(parallelism);
+		if (this.parallelSimulator != null)
+			this.parallelSimulator.setMetrics(this.metrics);
+	}
+
+	/**
+	 * Starts recording the metrics of the simulation into the passed registry:
+	 * the timer zooKeeper.day, the timers zooKeeper.losePhase and
+	 * zooKeeper.gainPhase (sequential mode) or zooKeeper.drawPhase and
+	 * zooKeeper.applyPhase (parallel mode), and the histogram
+	 * zooKeeper.dayAllocatedBytes (of the bytes allocated by the thread that
+	 * simulates the days, if the JVM measures them)
+	 *
+	 * @param metrics
+	 *            the registry to record into, or null to stop recording
+	 */
+	public void setMetrics(MetricsRegistry metrics) {
+		this.metrics = metrics;
+		this.dayAllocatedBytes = (metrics == null) ? null : metrics.histogram("zooKeeper.dayAllocatedBytes");
+		this.dayTimer = (metrics == null) ? null : metrics.timer("zooKeeper.day");
+		this.gainPhaseTimer = (metrics == null) ? null : metrics.timer("zooKeeper.gainPhase");
+		this.losePhaseTimer = (metrics == null) ? null : metrics.timer("zooKeeper.losePhase");
+		if (this.parallelSimulator != null)
+			this.parallelSimulator.setMetrics(metrics);
+	}
+
 	/**
 	 * Simulates one day in the zoo, establishing and breaking up friendships
 	 * randomly within the constraints of the supplied policy which determines
@@ -135,65 +232,182 @@ public class ZooKeeper {
 	 *
 	 */
 	public void simulateOneDay(Zoo zoo) {
-		zoo.incrementDay();
+		SimulateDayEvent event = new SimulateDayEvent();
+		event.begin();
+		simulateDay(zoo);
+		event.finish(zoo, zoo.getDailyChanges().entryCount());
+	}
 
-		Set<Animal> zooAnimalsSet = zoo.getAnimalsSet();
-		for (Animal currAnimal : zooAnimalsSet) {
-			// lose a random friend and update the new friends' list
-			loseRandomFriend(zoo, currAnimal, this.maxLosableFriends);
-			// Gain a random friend and update the new friends' list
-			gainRandomFriend(zoo, currAnimal, this.maxGainableFriends);
+	/**
+	 * Simulates a number of consecutive days in the zoo (see simulateOneDay())
+	 *
+	 * @param zoo
+	 *            the zoo whose friendship network is to simulated
+	 * @param days
+	 *            the number of days to simulate
+	 *
+	 * @throws IllegalArgumentException
+	 *             if days is less than 0
+	 */
+	public void simulateDays(Zoo zoo, int days) {
+		simulateDays(zoo, days, null);
+	}
+
+	/**
+	 * Simulates a number of consecutive days in the zoo (see simulateOneDay()),
+	 * notifying the passed listener after each day
+	 *
+	 * @param zoo
+	 *            the zoo whose friendship network is to simulated
+	 * @param days
+	 *            the number of days to simulate
+	 * @param listener
+	 *            the listener to notify after each day (can be null)
+	 *
+	 * @throws IllegalArgumentException
+	 *             if days is less than 0
+	 */
+	public void simulateDays(Zoo zoo, int days, SimulationListener listener) {
+		if (days < 0)
+			throw new IllegalArgumentException("The number of days to simulate must be >= 0!");
+		for (int day = 0; day < days; day++) {
+			simulateOneDay(zoo);
+			if (listener != null)
+				listener.daySimulated(zoo);
 		}
 	}
 
-	private void gainRandomFriend(Zoo zoo, Animal anim, int maxGainable) {
+	private void gainRandomFriend(Zoo zoo, int anim, int maxGainable) {
 		/*
-		 * For the current animal get the set of gainable friends, which is
-		 * equal to the set of all animals minus the set of friends that the
-		 * animal already have (and the animal itself).
+		 * The gainable friends are all animals except the animal itself and
+		 * the friends that it already has.
 		 */
-		Set<Animal> gainableFriendsSet = zoo.getAnimalsSet();
-		gainableFriendsSet.removeAll(zoo.getAnimalFirends(anim));
-		gainableFriendsSet.remove(anim);
+		FriendshipGraph friendsGraph = zoo.getFriendsGraph();
+		int animalCount = zoo.getAnimalCount();
+		int gainableCount = animalCount - 1 - friendsGraph.degree(anim);
 
 		int i = 0;
-		while (!gainableFriendsSet.isEmpty() && (i < maxGainable)) {
-			Animal friendToGain = pickRandomFromAnimalSet(gainableFriendsSet);
-			zoo.addFirendship(anim, friendToGain);
-			gainableFriendsSet.remove(friendToGain);
-			i++;
+		while ((gainableCount > 0) && (i < maxGainable)) {
+			if ((gainableCount * 2) < animalCount) {
+				// Most draws would be rejected, so sample from an explicit
+				// pool of the gainable friends instead
+				gainFromCandidatePool(zoo, anim, maxGainable - i);
+				return;
+			}
+			// At least one in two draws is accepted
+			int friendToGain = this.randomGenerator.nextInt(animalCount);
+			if ((friendToGain != anim) && !friendsGraph.hasEdge(anim, friendToGain)) {
+				zoo.addFriendshipById(anim, friendToGain);
+				gainableCount--;
+				i++;
+			}
 		}
 	}
 
-	private void loseRandomFriend(Zoo zoo, Animal anim, int maxLosable) {
-		/*
-		 * For the current animal get the set of losable friends, which is
-		 * equal to the set of all the animal's current friends
-		 */
-		Set<Animal> losableFriendsSet = zoo.getAnimalFirends(anim);
+	private void gainFromCandidatePool(Zoo zoo, int anim, int maxGainable) {
+		FriendshipGraph friendsGraph = zoo.getFriendsGraph();
+		this.candidatePool.clear();
+		for (int candidate = 0; candidate < zoo.getAnimalCount(); candidate++) {
+			if ((candidate != anim) && !friendsGraph.hasEdge(anim, candidate))
+				this.candidatePool.add(candidate);
+		}
 
 		int i = 0;
-		while (!losableFriendsSet.isEmpty() && (i < maxLosable)) {
-			Animal friendToLose = pickRandomFromAnimalSet(losableFriendsSet);
-			zoo.removeFirendship(anim, friendToLose);
-			losableFriendsSet.remove(friendToLose);
+		while (!this.candidatePool.isEmpty() && (i < maxGainable)) {
+			int candidateIndex = this.randomGenerator.nextInt(this.candidatePool.size());
+			zoo.addFriendshipById(anim, this.candidatePool.removeAt(candidateIndex));
 			i++;
 		}
 	}
 
-	private Animal pickRandomFromAnimalSet(Set<Animal> animalSet) {
-		if (animalSet.size() == 0)
-			throw new IllegalArgumentException(
-					"The animal set from which a random element is to be picked cannot be empty!");
+	private void simulateDay(Zoo zoo) {
+		if ((this.dayTimer != null) || PhaseEvent.isRecorded()) {
+			simulateInstrumentedDay(zoo);
+			return;
+		}
+		if (this.parallelSimulator != null) {
+			this.parallelSimulator.simulateOneDay(zoo, this.maxLosableFriends, this.maxGainableFriends,
+					this.randomSeed);
+			return;
+		}
+
+		zoo.incrementDay();
+
+		int animalCount = zoo.getAnimalCount();
+		for (int currAnimal = 0; currAnimal < animalCount; currAnimal++) {
+			// lose a random friend and update the new friends' list
+			loseRandomFriend(zoo, currAnimal, this.maxLosableFriends);
+			// Gain a random friend and update the new friends' list
+			gainRandomFriend(zoo, currAnimal, this.maxGainableFriends);
+		}
+	}
+
+	/*
+	 * Simulates a day while recording its metrics (if any) and its phase
+	 * events (if the recording enables them)
+	 */
+	private void simulateInstrumentedDay(Zoo zoo) {
+		long allocatedBefore = (this.dayTimer == null) ? -1 : MetricsRegistry.currentThreadAllocatedBytes();
+		long dayStart = System.nanoTime();
+		if (this.parallelSimulator != null) {
+			this.parallelSimulator.simulateOneDay(zoo, this.maxLosableFriends, this.maxGainableFriends,
+					this.randomSeed);
+		} else {
+			zoo.incrementDay();
+			PhaseEvent loseEvent = new PhaseEvent("lose");
+			PhaseEvent gainEvent = new PhaseEvent("gain");
+			loseEvent.begin();
+			gainEvent.begin();
+
+			// The phases alternate animal by animal, so each phase's time and
+			// edits are summed over the animals
+			FriendshipGraph friendsGraph = zoo.getFriendsGraph();
+			long loseNanos = 0;
+			long gainNanos = 0;
+			long lostCount = 0;
+			long gainedCount = 0;
+			long time = System.nanoTime();
+			int animalCount = zoo.getAnimalCount();
+			for (int currAnimal = 0; currAnimal < animalCount; currAnimal++) {
+				long edgesBefore = friendsGraph.edgeCount();
+				loseRandomFriend(zoo, currAnimal, this.maxLosableFriends);
+				long loseEnd = System.nanoTime();
+				loseNanos += loseEnd - time;
+				long edgesBetween = friendsGraph.edgeCount();
+				lostCount += edgesBefore - edgesBetween;
+				gainRandomFriend(zoo, currAnimal, this.maxGainableFriends);
+				time = System.nanoTime();
+				gainNanos += time - loseEnd;
+				gainedCount += friendsGraph.edgeCount() - edgesBetween;
+			}
+			if (this.dayTimer != null) {
+				this.losePhaseTimer.record(loseNanos);
+				this.gainPhaseTimer.record(gainNanos);
+			}
+			loseEvent.finish(zoo, lostCount, loseNanos);
+			gainEvent.finish(zoo, gainedCount, gainNanos);
+		}
+		if (this.dayTimer != null)
+			this.dayTimer.record(System.nanoTime() - dayStart);
+		if (allocatedBefore >= 0)
+			this.dayAllocatedBytes.record(MetricsRegistry.currentThreadAllocatedBytes() - allocatedBefore);
+	}
+
+	private void loseRandomFriend(Zoo zoo, int anim, int maxLosable) {
+		/*
+		 * The losable friends are all the animal's current friends. Since a
+		 * lost friend is swap-removed from the neighbour list, the list always
+		 * holds exactly the friends that are left to pick from.
+		 */
+		FriendshipGraph friendsGraph = zoo.getFriendsGraph();
 
-		int randNum = this.randomGenerator.nextInt(animalSet.size());
 		int i = 0;
-		for (Animal currAnim : animalSet) {
-			if (i == randNum)
-				return currAnim;
+		while ((friendsGraph.degree(anim) > 0) && (i < maxLosable)) {
+			int friendToLose = friendsGraph.neighbourAt(anim,
+					this.randomGenerator.nextInt(friendsGraph.degree(anim)));
+			zoo.removeFriendshipById(anim, friendToLose);
 			i++;
 		}
-		return null;
 	}
 
 }
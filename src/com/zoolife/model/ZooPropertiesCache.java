@@ -0,0 +1,104 @@
+package com.zoolife.model;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A cache of the zoo properties (see Zoo.getZooProperties()), which holds the
+ * properties of each animal and keeps them up to date incrementally: when a
+ * friendship is added or removed, only the two animals involved are marked as
+ * dirty, and only the dirty animals have their properties rebuilt the next
+ * time the zoo properties are asked for.
+ * <p>
+ * The cached maps are never handed out for modification. Callers get either a
+ * copy, which (since the cached maps are already sorted) takes time linear in
+ * the number of properties rather than requiring any lookup or sort, or
+ * read-only views of the cached maps, which cost nothing to create.
+ *
+ * @see com.zoolife.model.Zoo
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+final class ZooPropertiesCache {
+
+	private int dirtyCount;
+	private int[] dirtyIds; // The first dirtyCount entries are in use
+	private boolean[] isDirty;
+	private Zoo zoo;
+	private TreeMap<String, TreeMap<String, String>> zooProperties;
+
+	/**
+	 * Creates a cache in which all the animals are dirty
+	 *
+	 * @param zoo
+	 *            the zoo whose properties are cached
+	 */
+	ZooPropertiesCache(Zoo zoo) {
+		this.zoo = zoo;
+		int animalCount = zoo.getAnimalCount();
+		this.dirtyIds = new int[animalCount];
+		this.isDirty = new boolean[animalCount];
+		for (int id = 0; id < animalCount; id++) {
+			this.dirtyIds[id] = id;
+			this.isDirty[id] = true;
+		}
+		this.dirtyCount = animalCount;
+		this.zooProperties = new TreeMap<String, TreeMap<String, String>>();
+	}
+
+	/**
+	 * @return a copy of the up-to-date properties of the zoo
+	 */
+	TreeMap<String, TreeMap<String, String>> getZooProperties() {
+		refresh();
+		TreeMap<String, TreeMap<String, String>> copy = new TreeMap<String, TreeMap<String, String>>(
+				this.zooProperties);
+		copy.replaceAll((name, animProp) -> new TreeMap<String, String>(animProp));
+		return copy;
+	}
+
+	/**
+	 * @return read-only views of the up-to-date properties of the animals, by
+	 *         name. The views must not be used after the zoo changes.
+	 */
+	Iterator<SortedMap<String, String>> iterator() {
+		refresh();
+		Iterator<TreeMap<String, String>> animProps = this.zooProperties.values().iterator();
+		return new Iterator<SortedMap<String, String>>() {
+			@Override
+			public boolean hasNext() {
+				return animProps.hasNext();
+			}
+
+			@Override
+			public SortedMap<String, String> next() {
+				return Collections.unmodifiableSortedMap(animProps.next());
+			}
+		};
+	}
+
+	/**
+	 * Marks an animal whose friends changed as dirty
+	 */
+	void invalidate(int id) {
+		if (!this.isDirty[id]) {
+			this.isDirty[id] = true;
+			this.dirtyIds[this.dirtyCount++] = id;
+		}
+	}
+
+	private void refresh() {
+		for (int i = 0; i < this.dirtyCount; i++) {
+			int id = this.dirtyIds[i];
+			this.isDirty[id] = false;
+			TreeMap<String, String> animProp = this.zoo.buildAnimalProperties(id);
+			this.zooProperties.put(animProp.get("name"), animProp);
+		}
+		this.dirtyCount = 0;
+	}
+}
@@ -0,0 +1,262 @@
+package com.zoolife.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An HTTP server, bound to the loopback address, through which other processes
+ * of the same host can query a {@link com.zoolife.model.Zoo} while it is being
+ * simulated. Every answer is a JSON object, which gives the day it is about:
+ * <ul>
+ * <li>GET /day: the number of animals and friendships, and of friendships
+ * gained and lost on the day</li>
+ * <li>GET /friends?name=...: the friends of an animal</li>
+ * <li>GET /changes?name=...: the friends that an animal gained and lost on the
+ * day (or, without a name, all the friendships that were gained and lost on
+ * the day, as pairs of names)</li>
+ * <li>GET /properties?name=...: the properties of an animal, as in
+ * Zoo.getZooProperties()</li>
+ * </ul>
+ * An unknown path or animal is answered with 404, a missing name with 400, a
+ * method other than GET with 405, and 503 if the zoo stopped publishing
+ * snapshots.
+ * <p>
+ * The answers come from the last snapshot published by the zoo (see
+ * Zoo.setSnapshotPublishing()), never from the zoo itself. Reading a snapshot
+ * takes no lock, so the queries never block the thread that simulates the zoo
+ * (nor each other), and each query about an animal takes time in the number of
+ * its friends rather than in the size of the zoo. The names of the animals are
+ * resolved through a table that is built once, since the animals of a zoo
+ * never change. The queries are answered by a fixed pool of threads, which
+ * keeps the number of threads, and so the latency under load, bounded.
+ *
+ * @see com.zoolife.model.Zoo
+ * @see com.zoolife.model.ZooDaySnapshot
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public final class ZooQueryServer implements AutoCloseable {
+
+	private static final int BACKLOG = 1024; // Connections waiting to be accepted
+
+	private Map<String, Integer> animalIds; // By name, never modified
+	private ExecutorService executor;
+	private HttpServer server;
+	private Zoo zoo;
+
+	/**
+	 * Binds the server to the loopback address, and starts answering queries
+	 *
+	 * @param zoo
+	 *            the zoo to answer queries about, which must publish
+	 *            snapshots
+	 * @param port
+	 *            the port to listen on (0 for any free port, see getPort())
+	 * @param threadsCount
+	 *            the number of threads that answer queries (at least 1)
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the zoo
+	 * @throws IllegalArgumentException
+	 *             if threadsCount is less than 1 or if the port is out of
+	 *             range
+	 * @throws IllegalStateException
+	 *             if the zoo does not publish snapshots
+	 * @throws IOException
+	 *             if the port cannot be bound
+	 */
+	public ZooQueryServer(Zoo zoo, int port, int threadsCount) throws IOException {
+		if (zoo == null)
+			throw new NullPointerException("A null object was passed as the zoo to query!");
+		if (threadsCount < 1)
+			throw new IllegalArgumentException("The number of threads must be >= 1!");
+		ZooDaySnapshot snapshot = zoo.getPublishedSnapshot();
+		if (snapshot == null)
+			throw new IllegalStateException("The zoo does not publish snapshots. Call setSnapshotPublishing() first!");
+		this.zoo = zoo;
+
+		FriendshipCsr friendships = snapshot.getFriendships();
+		this.animalIds = new HashMap<String, Integer>((friendships.getAnimalCount() * 4) / 3 + 1);
+		for (int id = 0; id < friendships.getAnimalCount(); id++) {
+			this.animalIds.put(friendships.getAnimal(id).getName(), id);
+		}
+
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+		this.executor = Executors.newFixedThreadPool(threadsCount, task -> {
+			Thread worker = new Thread(task, "zoo-query-server");
+			worker.setDaemon(true);
+			return worker;
+		});
+		this.server.setExecutor(this.executor);
+		this.server.createContext("/", this::handle);
+		this.server.start();
+	}
+
+	/**
+	 * Stops answering queries. Closing the server again does nothing.
+	 */
+	@Override
+	public void close() {
+		this.server.stop(0);
+		this.executor.shutdown();
+	}
+
+	/**
+	 * @return the port that the server listens on
+	 */
+	public int getPort() {
+		return this.server.getAddress().getPort();
+	}
+
+	private static void appendNames(StringBuilder json, FriendshipCsr csr, int id) {
+		int[] offsets = csr.getOffsets();
+		int[] neighbours = csr.getNeighbours();
+		json.append('[');
+		for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+			if (i > offsets[id])
+				json.append(',');
+			json.append(ZooExporter.jsonString(csr.getAnimal(neighbours[i]).getName()));
+		}
+		json.append(']');
+	}
+
+	/*
+	 * Appends each friendship once, from the row of its animal with the
+	 * smaller id
+	 */
+	private static void appendPairs(StringBuilder json, FriendshipCsr csr) {
+		int[] offsets = csr.getOffsets();
+		int[] neighbours = csr.getNeighbours();
+		boolean isFirst = true;
+		json.append('[');
+		for (int id = 0; id < csr.getAnimalCount(); id++) {
+			for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+				if (neighbours[i] < id)
+					continue;
+				if (!isFirst)
+					json.append(',');
+				isFirst = false;
+				json.append('[').append(ZooExporter.jsonString(csr.getAnimal(id).getName())).append(',')
+						.append(ZooExporter.jsonString(csr.getAnimal(neighbours[i]).getName())).append(']');
+			}
+		}
+		json.append(']');
+	}
+
+	/*
+	 * Answers a query, or returns the status of the error as a negative number
+	 */
+	private int answer(String path, String name, ZooDaySnapshot snapshot, StringBuilder json) {
+		json.append("{\"day\":").append(snapshot.getDay());
+		if ("/day".equals(path)) {
+			json.append(",\"animals\":").append(snapshot.getAnimalsNumber());
+			json.append(",\"friendships\":").append(snapshot.getFriendships().getFriendshipCount());
+			json.append(",\"gained\":").append(snapshot.getFriendshipsGained().getFriendshipCount());
+			json.append(",\"lost\":").append(snapshot.getFriendshipsLost().getFriendshipCount());
+			return 200;
+		}
+		if ("/changes".equals(path) && (name == null)) {
+			json.append(",\"gained\":");
+			appendPairs(json, snapshot.getFriendshipsGained());
+			json.append(",\"lost\":");
+			appendPairs(json, snapshot.getFriendshipsLost());
+			return 200;
+		}
+		if (!"/friends".equals(path) && !"/changes".equals(path) && !"/properties".equals(path))
+			return -404;
+		if (name == null)
+			return -400;
+		Integer id = this.animalIds.get(name);
+		if (id == null)
+			return -404;
+
+		json.append(",\"name\":").append(ZooExporter.jsonString(name));
+		switch (path) {
+		case "/friends":
+			json.append(",\"friends\":");
+			appendNames(json, snapshot.getFriendships(), id);
+			break;
+		case "/changes":
+			json.append(",\"gained\":");
+			appendNames(json, snapshot.getFriendshipsGained(), id);
+			json.append(",\"lost\":");
+			appendNames(json, snapshot.getFriendshipsLost(), id);
+			break;
+		default:
+			TreeMap<String, String> animProp = snapshot
+					.getAnimalProperties(snapshot.getFriendships().getAnimal(id));
+			json.append(",\"properties\":{");
+			boolean isFirst = true;
+			for (Map.Entry<String, String> property : animProp.entrySet()) {
+				if (!isFirst)
+					json.append(',');
+				isFirst = false;
+				json.append(ZooExporter.jsonString(property.getKey())).append(':')
+						.append(ZooExporter.jsonString(property.getValue()));
+			}
+			json.append('}');
+		}
+		return 200;
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			int status;
+			StringBuilder json = new StringBuilder(256);
+			ZooDaySnapshot snapshot = this.zoo.getPublishedSnapshot();
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				status = 405;
+			} else if (snapshot == null) {
+				status = 503;
+			} else {
+				status = answer(exchange.getRequestURI().getPath(), nameOf(exchange.getRequestURI().getRawQuery()),
+						snapshot, json);
+			}
+			if (status < 0) {
+				status = -status;
+				json.setLength(0);
+			}
+			if (status == 200)
+				json.append('}');
+			else
+				json.append("{\"error\":").append(status).append('}');
+
+			byte[] body = json.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(status, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/*
+	 * Returns the value of the name parameter of the query, or null
+	 */
+	private static String nameOf(String rawQuery) {
+		if (rawQuery == null)
+			return null;
+		for (String parameter : rawQuery.split("&")) {
+			if (parameter.startsWith("name="))
+				return URLDecoder.decode(parameter.substring("name=".length()), StandardCharsets.UTF_8);
+		}
+		return null;
+	}
+}
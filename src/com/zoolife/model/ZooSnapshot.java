@@ -0,0 +1,405 @@
+package com.zoolife.model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import com.zoolife.model.SimulationEvents.SnapshotEvent;
+
+/**
+ * Saves the whole state of a {@link com.zoolife.model.Zoo} (its animals, its
+ * friendship network, its day count, and the friendships gained and lost
+ * today) to a compact binary file, and restores zoos from such files.
+ * <p>
+ * The file holds, in little-endian order:
+ * <ol>
+ * <li>a header: the magic number "ZOOS", the format version, the number of
+ * animals, the day count, the number of friendships, and the numbers of
+ * friendships gained and lost today</li>
+ * <li>the animal table, in id order: a species byte, the name and the favorite
+ * food (each as a length byte followed by UTF-8 bytes), and the species
+ * fields</li>
+ * <li>the friendship network in compressed sparse row form: the number of
+ * friends of each animal, followed by the ids of the friends of each animal
+ * in turn</li>
+ * <li>the packed keys (see FriendshipGraph.friendshipKey()) of the friendships
+ * gained today, followed by those lost today</li>
+ * </ol>
+ * A snapshot is written through a FileChannel to a temporary file, which is
+ * forced to disk and then moved over the target file, so an interrupted save
+ * never leaves a partial snapshot behind. It is read back through
+ * memory-mapped windows of the file, with the ids copied in bulk straight into
+ * the arrays of the restored network. No text is parsed, and files larger than
+ * what a single MappedByteBuffer can map are supported.
+ *
+ * @see com.zoolife.model.Zoo
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public final class ZooSnapshot {
+
+	private static final int BUFFER_SIZE = 1 << 20; // Of the write buffer
+	private static final byte CHICKEN = 2;
+	private static final byte DOG = 0;
+	private static final int HEADER_BYTES = 32;
+	private static final int MAGIC = 0x534f4f5a; // "ZOOS" in little-endian
+	private static final int MIN_ANIMAL_BYTES = 4; // A dog with empty strings
+	private static final byte PARROT = 1;
+	private static final int VERSION = 1;
+	private static final long WINDOW_SIZE = 1L << 26; // Of the mapped windows
+
+	private ZooSnapshot() {
+	}
+
+	/**
+	 * Restores a zoo from a snapshot file
+	 *
+	 * @param path
+	 *            the snapshot file
+	 * @return a zoo in the same state as the saved one
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the file
+	 * @throws IOException
+	 *             if the file cannot be read, or if it is not a valid snapshot
+	 */
+	public static Zoo load(Path path) throws IOException {
+		if (path == null)
+			throw new NullPointerException("A null object was passed as the snapshot file!");
+		SnapshotEvent event = new SnapshotEvent("load", path.toString());
+		event.begin();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedInput input = new MappedInput(channel);
+			if ((input.getInt() != MAGIC) || (input.getInt() != VERSION))
+				throw new IOException(path + " is not a zoo snapshot (or has an unsupported version)");
+			int animalCount = input.getInt();
+			int dayCount = input.getInt();
+			long edgeCount = input.getLong();
+			int gainedCount = input.getInt();
+			int lostCount = input.getInt();
+			if ((animalCount <= 0) || (dayCount < 0) || (edgeCount < 0) || (gainedCount < 0) || (lostCount < 0))
+				throw corrupted(path, "invalid header");
+			// The counts size the allocations below, so they are first checked
+			// against the size of the file (each term is at most the size of
+			// the file, so their sum cannot overflow)
+			long fileSize = channel.size();
+			long maxEdgeCount = ((long) animalCount * (animalCount - 1)) / 2;
+			if ((animalCount > (fileSize / (MIN_ANIMAL_BYTES + Integer.BYTES))) || (edgeCount > maxEdgeCount)
+					|| (edgeCount > (fileSize / (2 * Integer.BYTES)))
+					|| (((long) gainedCount + lostCount) > (fileSize / Long.BYTES)))
+				throw corrupted(path, "invalid header");
+			if ((HEADER_BYTES + ((long) animalCount * (MIN_ANIMAL_BYTES + Integer.BYTES))
+					+ (edgeCount * 2 * Integer.BYTES) + (((long) gainedCount + lostCount) * Long.BYTES)) > fileSize)
+				throw corrupted(path, "truncated");
+
+			AnimalTable animalTable = new AnimalTable(animalCount);
+			for (int id = 0; id < animalCount; id++) {
+				Animal anim;
+				try {
+					anim = readAnimal(input);
+				} catch (IllegalArgumentException | NullPointerException e) {
+					throw corrupted(path, "invalid animal " + id);
+				}
+				if (!animalTable.add(anim))
+					throw corrupted(path, "repeated animal " + anim.getName());
+			}
+
+			int[] degrees = new int[animalCount];
+			input.getInts(degrees, 0, animalCount);
+			long degreesSum = 0;
+			for (int degree : degrees) {
+				if (degree < 0)
+					throw corrupted(path, "negative number of friends");
+				degreesSum += degree;
+			}
+			if (degreesSum != (edgeCount * 2))
+				throw corrupted(path, "inconsistent number of friendships");
+			// Each animal's friends with smaller ids must be exactly the animals
+			// that listed it as a friend. Rather than looking each friendship up,
+			// this is checked by comparing sums of hashed ids
+			FriendshipGraph friendsGraph = new FriendshipGraph(animalCount, edgeCount);
+			long[] listedBySmaller = new long[animalCount];
+			for (int id = 0; id < animalCount; id++) {
+				int[] neighbours = new int[degrees[id]];
+				input.getInts(neighbours, 0, neighbours.length);
+				if (!friendsGraph.restoreNeighbours(id, neighbours))
+					throw corrupted(path, "invalid friends of animal " + id);
+				long smallerFriends = 0;
+				for (int neighbour : neighbours) {
+					if (neighbour > id)
+						listedBySmaller[neighbour] += fingerprint(id);
+					else
+						smallerFriends += fingerprint(neighbour);
+				}
+				if (smallerFriends != listedBySmaller[id])
+					throw corrupted(path, "asymmetric friendships of animal " + id);
+			}
+			if (friendsGraph.edgeCount() != edgeCount)
+				throw corrupted(path, "repeated friendships");
+
+			Zoo zoo = new Zoo(animalTable, friendsGraph, dayCount);
+			DailyChangeJournal dailyChanges = zoo.getDailyChanges();
+			for (int i = 0; i < (gainedCount + lostCount); i++) {
+				long key = input.getLong();
+				int smallerId = FriendshipGraph.smallerId(key);
+				int largerId = FriendshipGraph.largerId(key);
+				if ((smallerId < 0) || (smallerId >= largerId) || (largerId >= animalCount))
+					throw corrupted(path, "invalid daily change");
+				// A gained friendship exists, a lost one does not
+				if (friendsGraph.hasEdge(smallerId, largerId) != (i < gainedCount))
+					throw corrupted(path, "daily change inconsistent with the friendships");
+				if (i < gainedCount)
+					dailyChanges.recordAdded(smallerId, largerId);
+				else
+					dailyChanges.recordRemoved(smallerId, largerId);
+			}
+			if (dailyChanges.entryCount() != (gainedCount + lostCount))
+				throw corrupted(path, "repeated daily change");
+			event.finish(zoo, edgeCount);
+			return zoo;
+		}
+	}
+
+	/**
+	 * Saves the state of a zoo to a snapshot file
+	 *
+	 * @param zoo
+	 *            the zoo to save
+	 * @param path
+	 *            the snapshot file to (over)write
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the zoo or the file
+	 * @throws IllegalArgumentException
+	 *             if an animal of the zoo is not a dog, a parrot, or a chicken
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void save(Zoo zoo, Path path) throws IOException {
+		if (zoo == null)
+			throw new NullPointerException("A null object was passed as the zoo to save!");
+		if (path == null)
+			throw new NullPointerException("A null object was passed as the snapshot file!");
+		SnapshotEvent event = new SnapshotEvent("save", path.toString());
+		event.begin();
+		int animalCount = zoo.getAnimalCount();
+		for (int id = 0; id < animalCount; id++) {
+			Animal anim = zoo.getAnimal(id);
+			if (!(anim instanceof Dog) && !(anim instanceof Parrot) && !(anim instanceof Chicken))
+				throw new IllegalArgumentException("Cannot save animals of class " + anim.getClass().getName() + "!");
+		}
+
+		FriendshipGraph friendsGraph = zoo.getFriendsGraph();
+		DailyChangeJournal dailyChanges = zoo.getDailyChanges();
+		int gainedCount = 0;
+		int lostCount = 0;
+		for (int entry = 0; entry < dailyChanges.entryCount(); entry++) {
+			if (dailyChanges.isGained(entry))
+				gainedCount++;
+			else if (dailyChanges.isLost(entry))
+				lostCount++;
+		}
+
+		Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(animalCount).putInt(zoo.getDayCount());
+			buffer.putLong(friendsGraph.edgeCount()).putInt(gainedCount).putInt(lostCount);
+
+			for (int id = 0; id < animalCount; id++) {
+				// At most 1 + (1 + 60) * 3 + 4 + 1 bytes per animal
+				ensureRemaining(channel, buffer, 256);
+				writeAnimal(buffer, zoo.getAnimal(id));
+			}
+
+			for (int id = 0; id < animalCount; id++) {
+				ensureRemaining(channel, buffer, Integer.BYTES);
+				buffer.putInt(friendsGraph.degree(id));
+			}
+			for (int id = 0; id < animalCount; id++) {
+				int degree = friendsGraph.degree(id);
+				for (int i = 0; i < degree; i++) {
+					ensureRemaining(channel, buffer, Integer.BYTES);
+					buffer.putInt(friendsGraph.neighbourAt(id, i));
+				}
+			}
+
+			for (int pass = 0; pass < 2; pass++) {
+				for (int entry = 0; entry < dailyChanges.entryCount(); entry++) {
+					if ((pass == 0) ? dailyChanges.isGained(entry) : dailyChanges.isLost(entry)) {
+						ensureRemaining(channel, buffer, Long.BYTES);
+						buffer.putLong(dailyChanges.keyOf(entry));
+					}
+				}
+			}
+
+			flush(channel, buffer);
+			channel.force(true);
+		}
+		Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		event.finish(zoo, friendsGraph.edgeCount());
+	}
+
+	private static IOException corrupted(Path path, String reason) {
+		return new IOException(path + " is a corrupted zoo snapshot: " + reason);
+	}
+
+	private static void ensureRemaining(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		if (buffer.remaining() < bytes)
+			flush(channel, buffer);
+	}
+
+	/*
+	 * The finalization step of MurmurHash3, so that different sets of ids are
+	 * very unlikely to have the same sum
+	 */
+	private static long fingerprint(int id) {
+		long value = id + 1;
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static Animal readAnimal(MappedInput input) throws IOException {
+		byte species = input.get();
+		String name = readString(input);
+		String favFood = readString(input);
+		switch (species) {
+		case DOG:
+			return new Dog(name, favFood, readString(input));
+		case PARROT:
+			return new Parrot(name, favFood, input.getFloat(), input.get() != 0);
+		case CHICKEN:
+			return new Chicken(name, favFood, input.getFloat(), input.get() != 0);
+		default:
+			throw new IllegalArgumentException("Unknown species " + species);
+		}
+	}
+
+	private static String readString(MappedInput input) throws IOException {
+		byte[] bytes = new byte[input.get() & 0xff];
+		input.getBytes(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeAnimal(ByteBuffer buffer, Animal anim) {
+		if (anim instanceof Dog) {
+			buffer.put(DOG);
+			writeString(buffer, anim.getName());
+			writeString(buffer, anim.getFavFood());
+			writeString(buffer, ((Dog) anim).getDogType());
+		} else if (anim instanceof Parrot) {
+			buffer.put(PARROT);
+			writeString(buffer, anim.getName());
+			writeString(buffer, anim.getFavFood());
+			buffer.putFloat(((Parrot) anim).getWingspan()).put((byte) (((Parrot) anim).canSpeak() ? 1 : 0));
+		} else {
+			buffer.put(CHICKEN);
+			writeString(buffer, anim.getName());
+			writeString(buffer, anim.getFavFood());
+			buffer.putFloat(((Chicken) anim).getWingspan()).put((byte) (((Chicken) anim).isBroiler() ? 1 : 0));
+		}
+	}
+
+	/*
+	 * The animals' strings have at most 20 characters, hence at most 60 UTF-8
+	 * bytes, so their length fits in a byte
+	 */
+	private static void writeString(ByteBuffer buffer, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		buffer.put((byte) bytes.length).put(bytes);
+	}
+
+	/*
+	 * Reads a file through a sliding memory-mapped window, which is moved
+	 * forward whenever the next value does not fit in what is left of it
+	 */
+	private static final class MappedInput {
+
+		private FileChannel channel;
+		private MappedByteBuffer window;
+		private long windowStart; // The file position of the window
+
+		MappedInput(FileChannel channel) throws IOException {
+			this.channel = channel;
+			map(0);
+		}
+
+		byte get() throws IOException {
+			require(1);
+			return this.window.get();
+		}
+
+		void getBytes(byte[] bytes) throws IOException {
+			require(bytes.length);
+			this.window.get(bytes);
+		}
+
+		float getFloat() throws IOException {
+			require(Float.BYTES);
+			return this.window.getFloat();
+		}
+
+		int getInt() throws IOException {
+			require(Integer.BYTES);
+			return this.window.getInt();
+		}
+
+		/*
+		 * Copies count ints in bulk, window by window
+		 */
+		void getInts(int[] values, int offset, int count) throws IOException {
+			while (count > 0) {
+				require(Integer.BYTES);
+				int chunk = Math.min(count, this.window.remaining() / Integer.BYTES);
+				this.window.asIntBuffer().get(values, offset, chunk);
+				this.window.position(this.window.position() + (chunk * Integer.BYTES));
+				offset += chunk;
+				count -= chunk;
+			}
+		}
+
+		long getLong() throws IOException {
+			require(Long.BYTES);
+			return this.window.getLong();
+		}
+
+		private void map(long position) throws IOException {
+			long size = Math.min(WINDOW_SIZE, this.channel.size() - position);
+			this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+			this.window.order(ByteOrder.LITTLE_ENDIAN);
+			this.windowStart = position;
+		}
+
+		private void require(int bytes) throws IOException {
+			if (this.window.remaining() >= bytes)
+				return;
+			map(this.windowStart + this.window.position());
+			if (this.window.remaining() < bytes)
+				throw new EOFException("The zoo snapshot is truncated");
+		}
+	}
+}
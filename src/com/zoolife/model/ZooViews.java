@@ -0,0 +1,322 @@
+package com.zoolife.model;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * The read-only views that the {@link com.zoolife.model.Zoo} class hands out
+ * instead of copies (see Zoo.getAnimalsView(), Zoo.getFriendsView(), etc.).
+ * A view reads the zoo's own storage, so creating one costs nothing, and the
+ * only objects created while iterating are the Animal references that are
+ * already there or one AnimalFriendship per visited friendship.
+ * <p>
+ * The views are live: they always reflect the current state of the zoo, and
+ * so must not be iterated (or streamed) while the zoo changes. Their
+ * spliterators split the underlying arrays by index range, so a parallel
+ * stream spreads the work evenly over its threads. Any attempt to modify a
+ * view throws an UnsupportedOperationException.
+ *
+ * @see com.zoolife.model.Zoo
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+final class ZooViews {
+
+	private ZooViews() {
+	}
+
+	/*
+	 * The zoo animals, in id order
+	 */
+	static final class AnimalsView extends AbstractSet<Animal> {
+
+		private AnimalTable animalTable;
+
+		AnimalsView(AnimalTable animalTable) {
+			this.animalTable = animalTable;
+		}
+
+		@Override
+		public boolean contains(Object obj) {
+			return (obj instanceof Animal) && (this.animalTable.idOf((Animal) obj) >= 0);
+		}
+
+		@Override
+		public Iterator<Animal> iterator() {
+			return new Iterator<Animal>() {
+
+				private int nextId;
+
+				@Override
+				public boolean hasNext() {
+					return this.nextId < AnimalsView.this.animalTable.size();
+				}
+
+				@Override
+				public Animal next() {
+					if (!hasNext())
+						throw new NoSuchElementException();
+					return AnimalsView.this.animalTable.animalAt(this.nextId++);
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return this.animalTable.size();
+		}
+
+		@Override
+		public Spliterator<Animal> spliterator() {
+			// The animals never change, so the view can be split like an array
+			return IntStream.range(0, this.animalTable.size()).mapToObj(this.animalTable::animalAt).spliterator();
+		}
+	}
+
+	/*
+	 * The current friendships, in the slot order of the graph's edge set
+	 */
+	static final class CurrentFriendshipsView extends FriendshipsView {
+
+		CurrentFriendshipsView(Zoo zoo) {
+			super(zoo);
+		}
+
+		@Override
+		public boolean contains(Object obj) {
+			long key = keyOf(obj);
+			return (key != 0) && this.zoo.getFriendsGraph().edges().contains(key);
+		}
+
+		@Override
+		public int size() {
+			return this.zoo.getFriendsGraph().edges().size();
+		}
+
+		@Override
+		int indexCount() {
+			return this.zoo.getFriendsGraph().edges().capacity();
+		}
+
+		@Override
+		long keyAt(int slot) {
+			return this.zoo.getFriendsGraph().edges().valueAt(slot);
+		}
+	}
+
+	/*
+	 * The friendships that were gained (or lost) today, in journal order
+	 */
+	static final class DailyFriendshipsView extends FriendshipsView {
+
+		private boolean gained;
+
+		DailyFriendshipsView(Zoo zoo, boolean gained) {
+			super(zoo);
+			this.gained = gained;
+		}
+
+		/**
+		 * Follows the journal entries that touch the first animal
+		 */
+		@Override
+		public boolean contains(Object obj) {
+			long key = keyOf(obj);
+			if (key == 0)
+				return false;
+			DailyChangeJournal dailyChanges = this.zoo.getDailyChanges();
+			int id = FriendshipGraph.smallerId(key);
+			for (int entry = dailyChanges.firstEntryOf(id); entry >= 0; entry = dailyChanges.nextEntryOf(entry,
+					id)) {
+				if (dailyChanges.keyOf(entry) == key)
+					return keyAt(entry) != 0;
+			}
+			return false;
+		}
+
+		/**
+		 * Counts the matching journal entries (in time linear in the number of
+		 * friendships touched today)
+		 */
+		@Override
+		public int size() {
+			int size = 0;
+			int entryCount = this.zoo.getDailyChanges().entryCount();
+			for (int entry = 0; entry < entryCount; entry++) {
+				if (keyAt(entry) != 0)
+					size++;
+			}
+			return size;
+		}
+
+		@Override
+		int indexCount() {
+			return this.zoo.getDailyChanges().entryCount();
+		}
+
+		@Override
+		long keyAt(int entry) {
+			DailyChangeJournal dailyChanges = this.zoo.getDailyChanges();
+			if (this.gained ? dailyChanges.isGained(entry) : dailyChanges.isLost(entry))
+				return dailyChanges.keyOf(entry);
+			return 0;
+		}
+	}
+
+	/*
+	 * A set of friendships that are stored as packed keys at the indexes of
+	 * an array (some of which hold no friendship of the set)
+	 */
+	abstract static class FriendshipsView extends AbstractSet<AnimalFriendship> {
+
+		Zoo zoo; // Read by the subclasses
+
+		FriendshipsView(Zoo zoo) {
+			this.zoo = zoo;
+		}
+
+		@Override
+		public Iterator<AnimalFriendship> iterator() {
+			return new Iterator<AnimalFriendship>() {
+
+				private int nextIndex = findFrom(0);
+
+				@Override
+				public boolean hasNext() {
+					return this.nextIndex < indexCount();
+				}
+
+				@Override
+				public AnimalFriendship next() {
+					if (!hasNext())
+						throw new NoSuchElementException();
+					AnimalFriendship friendship = toFriendship(keyAt(this.nextIndex));
+					this.nextIndex = findFrom(this.nextIndex + 1);
+					return friendship;
+				}
+			};
+		}
+
+		@Override
+		public Spliterator<AnimalFriendship> spliterator() {
+			return new IndexRangeSpliterator(this, 0, indexCount(), size());
+		}
+
+		/**
+		 * @return the number of indexes, some of which may hold no friendship
+		 *         of the set
+		 */
+		abstract int indexCount();
+
+		/**
+		 * @return the packed key of the friendship at the passed index, or 0
+		 *         if the index holds no friendship of the set
+		 */
+		abstract long keyAt(int index);
+
+		/**
+		 * @return the packed key of the passed friendship, or 0 if it is not a
+		 *         friendship between two animals of the zoo
+		 */
+		long keyOf(Object obj) {
+			if (!(obj instanceof AnimalFriendship))
+				return 0;
+			Iterator<Animal> itr = ((AnimalFriendship) obj).getIterator();
+			int id1 = this.zoo.getAnimalId(itr.next());
+			int id2 = this.zoo.getAnimalId(itr.next());
+			if ((id1 < 0) || (id2 < 0) || (id1 == id2))
+				return 0;
+			return FriendshipGraph.friendshipKey(id1, id2);
+		}
+
+		AnimalFriendship toFriendship(long key) {
+			return new AnimalFriendship(this.zoo.getAnimal(FriendshipGraph.smallerId(key)),
+					this.zoo.getAnimal(FriendshipGraph.largerId(key)));
+		}
+
+		private int findFrom(int index) {
+			int indexCount = indexCount();
+			while ((index < indexCount) && (keyAt(index) == 0)) {
+				index++;
+			}
+			return index;
+		}
+	}
+
+	/*
+	 * Splits the indexes of a FriendshipsView in halves. Only the view as a
+	 * whole has an exact size: the friendships are not evenly spread over the
+	 * indexes, so the size of a half is an estimate.
+	 */
+	private static final class IndexRangeSpliterator implements Spliterator<AnimalFriendship> {
+
+		private static final int MIN_SPLIT_LENGTH = 1 << 10; // Of an index range
+
+		private int endIndex;
+		private long estimatedSize;
+		private int index;
+		private boolean isSized; // true until the first split
+		private FriendshipsView view;
+
+		IndexRangeSpliterator(FriendshipsView view, int startIndex, int endIndex, long estimatedSize) {
+			this.view = view;
+			this.index = startIndex;
+			this.endIndex = endIndex;
+			this.estimatedSize = estimatedSize;
+			this.isSized = true;
+		}
+
+		@Override
+		public int characteristics() {
+			return Spliterator.DISTINCT | Spliterator.NONNULL | (this.isSized ? Spliterator.SIZED : 0);
+		}
+
+		@Override
+		public long estimateSize() {
+			return this.estimatedSize;
+		}
+
+		@Override
+		public void forEachRemaining(Consumer<? super AnimalFriendship> action) {
+			for (; this.index < this.endIndex; this.index++) {
+				long key = this.view.keyAt(this.index);
+				if (key != 0)
+					action.accept(this.view.toFriendship(key));
+			}
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super AnimalFriendship> action) {
+			while (this.index < this.endIndex) {
+				long key = this.view.keyAt(this.index++);
+				if (key != 0) {
+					action.accept(this.view.toFriendship(key));
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public Spliterator<AnimalFriendship> trySplit() {
+			int length = this.endIndex - this.index;
+			if (length < MIN_SPLIT_LENGTH)
+				return null;
+			int middle = this.index + (length >>> 1);
+			this.estimatedSize >>>= 1;
+			this.isSized = false;
+			IndexRangeSpliterator prefix = new IndexRangeSpliterator(this.view, this.index, middle,
+					this.estimatedSize);
+			prefix.isSized = false;
+			this.index = middle;
+			return prefix;
+		}
+	}
+}
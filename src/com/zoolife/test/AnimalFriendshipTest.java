@@ -49,6 +49,17 @@ public class AnimalFriendshipTest {
 		Assert.assertEquals(friendshipOne, friendshipTwo);
 	}
 
+	@Test
+	public void FriendshipObjectsWithTheSameSetOfAnimalsShouldHaveTheSameHashCode() {
+		Dog dog = new Dog("dog", "Food", "Hunting dog");
+		Chicken chicken = new Chicken("chicken", "Food", 0.5f, false);
+
+		AnimalFriendship friendshipOne = new AnimalFriendship(dog, chicken);
+		AnimalFriendship friendshipTwo = new AnimalFriendship(chicken, dog);
+
+		Assert.assertEquals(friendshipOne.hashCode(), friendshipTwo.hashCode());
+	}
+
 	@Test
 	public void ifAnimalOneIsFriendWithAnimalTwoThenAnimalTwoShouldBeFriendWithAnimalOne() {
 		Dog dog = new Dog("dog", "Food", "Hunting dog");
@@ -0,0 +1,116 @@
+package com.zoolife.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zoolife.model.Animal;
+import com.zoolife.model.AnimalFriendship;
+import com.zoolife.model.ConcurrentZooEditor;
+import com.zoolife.model.Loader;
+import com.zoolife.model.Loader.DegreeDistribution;
+import com.zoolife.model.Zoo;
+
+/**
+ * Tests of the {@link com.zoolife.model.ConcurrentZooEditor} class
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public class ConcurrentZooEditorTests {
+
+	@Test
+	public void concurrentEditsShouldBeAppliedOnceAndKeepTheDailyChanges() throws InterruptedException {
+		Zoo zoo = new Loader().generateZoo(400, 1, 1, 1, DegreeDistribution.UNIFORM, 4, 13);
+		zoo.incrementDay();
+		List<Animal> animals = new ArrayList<Animal>(zoo.getAnimalsView());
+		Set<AnimalFriendship> initialFriendships = zoo.getFriendsSet();
+
+		// Every thread tries every edit: each one must succeed exactly once
+		final int threadsCount = 8;
+		AtomicInteger addedCount = new AtomicInteger();
+		AtomicInteger removedCount = new AtomicInteger();
+		AtomicInteger unseenEditsCount = new AtomicInteger();
+		List<Thread> writers = new ArrayList<Thread>();
+		try (ConcurrentZooEditor editor = zoo.startConcurrentEdits(threadsCount)) {
+			for (int t = 0; t < threadsCount; t++) {
+				writers.add(new Thread(() -> {
+					for (int i = 0; i < animals.size(); i++) {
+						Animal anim = animals.get(i);
+						Animal next = animals.get((i + 1) % animals.size());
+						boolean wereFriends = initialFriendships.contains(new AnimalFriendship(anim, next));
+						if (wereFriends) {
+							if (editor.removeFriendship(anim, next))
+								removedCount.incrementAndGet();
+						} else if (editor.addFriendship(anim, next)) {
+							addedCount.incrementAndGet();
+						}
+						if (editor.areFriends(next, anim) == wereFriends)
+							unseenEditsCount.incrementAndGet();
+					}
+				}));
+			}
+			for (Thread writer : writers) {
+				writer.start();
+			}
+			for (Thread writer : writers) {
+				writer.join();
+			}
+		}
+
+		Set<AnimalFriendship> expectedAdded = new HashSet<AnimalFriendship>();
+		Set<AnimalFriendship> expectedRemoved = new HashSet<AnimalFriendship>();
+		for (int i = 0; i < animals.size(); i++) {
+			AnimalFriendship friendship = new AnimalFriendship(animals.get(i),
+					animals.get((i + 1) % animals.size()));
+			if (initialFriendships.contains(friendship))
+				expectedRemoved.add(friendship);
+			else
+				expectedAdded.add(friendship);
+		}
+		Assert.assertEquals(0, unseenEditsCount.get());
+		Assert.assertEquals(expectedAdded.size(), addedCount.get());
+		Assert.assertEquals(expectedRemoved.size(), removedCount.get());
+		Assert.assertEquals(expectedAdded, zoo.getDailyFriendsAdded());
+		Assert.assertEquals(expectedRemoved, zoo.getDailyFriendsRemoved());
+		for (Animal anim : animals) {
+			for (Animal friend : zoo.getAnimalFirends(anim)) {
+				Assert.assertTrue(zoo.getAnimalFirends(friend).contains(anim));
+			}
+		}
+	}
+
+	@Test
+	public void friendshipRemovedAndAddedBackThroughTheEditorShouldNotBeADailyChange() {
+		Zoo zoo = new Loader().generateZoo(50, 1, 1, 1, DegreeDistribution.UNIFORM, 4, 5);
+		zoo.incrementDay();
+		AnimalFriendship friendship = zoo.getFriendsView().iterator().next();
+		List<Animal> pair = new ArrayList<Animal>();
+		friendship.getIterator().forEachRemaining(pair::add);
+
+		try (ConcurrentZooEditor editor = zoo.startConcurrentEdits(1)) {
+			Assert.assertTrue(editor.removeFriendship(pair.get(0), pair.get(1)));
+			Assert.assertFalse(editor.removeFriendship(pair.get(1), pair.get(0)));
+			Assert.assertTrue(zoo.areFriends(pair.get(0), pair.get(1)));
+			Assert.assertTrue(editor.addFriendship(pair.get(1), pair.get(0)));
+		}
+		Assert.assertTrue(zoo.areFriends(pair.get(0), pair.get(1)));
+		Assert.assertTrue(zoo.getDailyFriendsAdded().isEmpty());
+		Assert.assertTrue(zoo.getDailyFriendsRemoved().isEmpty());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void startingADayWhileAnEditorIsOpenShouldRaiseIllegalStateException() {
+		Zoo zoo = new Loader().generateZoo(10, 1, 1, 1, DegreeDistribution.UNIFORM, 2, 1);
+		zoo.incrementDay();
+		zoo.startConcurrentEdits(2);
+		zoo.incrementDay();
+	}
+}
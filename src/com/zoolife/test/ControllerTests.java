@@ -0,0 +1,137 @@
+package com.zoolife.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zoolife.control.Controller;
+import com.zoolife.model.Loader;
+import com.zoolife.model.Loader.DegreeDistribution;
+import com.zoolife.model.Zoo;
+import com.zoolife.model.ZooExporter;
+import com.zoolife.model.ZooExporter.Format;
+import com.zoolife.model.ZooKeeper;
+import com.zoolife.model.ZooSnapshot;
+import com.zoolife.view.Viewer;
+
+/**
+ * Tests of the {@link com.zoolife.control.Controller} class
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public class ControllerTests {
+
+	@Test
+	public void headlessCsvRunShouldGiveRowsWithTheColumnsOfTheirHeader() throws IOException {
+		Zoo zoo = new Loader().generateZoo(200, 1, 1, 1, DegreeDistribution.UNIFORM, 3, 8);
+		ByteArrayOutputStream changes = new ByteArrayOutputStream();
+		ByteArrayOutputStream properties = new ByteArrayOutputStream();
+		new Controller(new Viewer(new StringWriter())).runHeadless(zoo, new ZooKeeper(2, 2, 8), 5,
+				new ZooExporter(changes, Format.CSV), new ZooExporter(properties, Format.CSV), null, 0);
+
+		for (ByteArrayOutputStream csv : Arrays.asList(changes, properties)) {
+			String[] lines = csv.toString("UTF-8").split("\n");
+			int columnsCount = columnsCountOf(lines[0]);
+			for (int i = 1; i < lines.length; i++) {
+				Assert.assertEquals("Row " + i + ": " + lines[i], columnsCount, columnsCountOf(lines[i]));
+			}
+		}
+		Assert.assertEquals(201, properties.toString("UTF-8").split("\n").length);
+	}
+
+	@Test
+	public void headlessRunShouldExportEveryDayAndSaveTheLastState() throws IOException {
+		Zoo zoo = new Loader().generateZoo(200, 1, 1, 1, DegreeDistribution.UNIFORM, 3, 6);
+		ByteArrayOutputStream changes = new ByteArrayOutputStream();
+		ByteArrayOutputStream properties = new ByteArrayOutputStream();
+		StringWriter summary = new StringWriter();
+		Path snapshotPath = Files.createTempFile("zoolife", ".snapshot");
+		try {
+			new Controller(new Viewer(summary)).runHeadless(zoo, new ZooKeeper(2, 2, 6), 5,
+					new ZooExporter(changes, Format.CSV), new ZooExporter(properties, Format.CSV), snapshotPath, 2);
+
+			String[] lines = changes.toString("UTF-8").split("\n");
+			Assert.assertEquals("day,change,animal1,animal2", lines[0]);
+			Assert.assertTrue(lines[1].startsWith("1,"));
+			Assert.assertTrue(lines[lines.length - 1].startsWith("5,"));
+			Assert.assertTrue(properties.toString("UTF-8").startsWith("name,"));
+			Assert.assertTrue(summary.toString().contains("Saved 3 snapshots"));
+			Assert.assertEquals(zoo.getFriendsSet(), ZooSnapshot.load(snapshotPath).getFriendsSet());
+		} finally {
+			Files.delete(snapshotPath);
+		}
+	}
+
+	@Test
+	public void headlessRunWithOneCsvExporterForTheChangesAndThePropertiesShouldRaiseIllegalArgumentException()
+			throws IOException {
+		Zoo zoo = new Loader().generateZoo(20, 1, 1, 1, DegreeDistribution.UNIFORM, 3, 9);
+		ZooExporter exporter = new ZooExporter(new ByteArrayOutputStream(), Format.CSV);
+		try {
+			new Controller(new Viewer(new StringWriter())).runHeadless(zoo, new ZooKeeper(2, 2, 9), 1, exporter,
+					exporter, null, 0);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		Assert.assertEquals(0, zoo.getDayCount());
+	}
+
+	@Test
+	public void scriptShouldRunItsCommandsInOrder() throws IOException {
+		Zoo zoo = new Loader().generateZoo(100, 1, 1, 1, DegreeDistribution.UNIFORM, 2, 7);
+		Path snapshotPath = Files.createTempFile("zoolife", ".snapshot");
+		Path exportPath = Files.createTempFile("zoolife", ".csv");
+		StringWriter display = new StringWriter();
+		try {
+			new Controller(new Viewer(display)).runScript(zoo, new ZooKeeper(2, 2, 7),
+					Arrays.asList("# A scenario", "simulate 3", "snapshot " + snapshotPath, "", "SIMULATE 2",
+							"display", "export " + exportPath));
+
+			Assert.assertEquals(5, zoo.getDayCount());
+			Assert.assertEquals(3, ZooSnapshot.load(snapshotPath).getDayCount());
+			Assert.assertTrue(display.toString().contains("The zoo has 100 animals:"));
+			Assert.assertEquals(101, Files.readAllLines(exportPath).size());
+		} finally {
+			Files.delete(snapshotPath);
+			Files.delete(exportPath);
+		}
+	}
+
+	@Test
+	public void scriptWithAnInvalidCommandShouldRunNoCommand() throws IOException {
+		Zoo zoo = new Loader().generateZoo(100, 1, 1, 1, DegreeDistribution.UNIFORM, 2, 7);
+		try {
+			new Controller(new Viewer(new StringWriter())).runScript(zoo, new ZooKeeper(2, 2, 7),
+					Arrays.asList("simulate 3", "simulate three"));
+			Assert.fail("The invalid command should have been reported");
+		} catch (IllegalArgumentException e) {
+			Assert.assertTrue(e.getMessage().startsWith("line 2:"));
+		}
+		Assert.assertEquals(0, zoo.getDayCount());
+	}
+
+	/*
+	 * Counts the columns of a CSV row, whose quoted fields can hold commas
+	 */
+	private static int columnsCountOf(String row) {
+		int columnsCount = 1;
+		boolean isQuoted = false;
+		for (int i = 0; i < row.length(); i++) {
+			if (row.charAt(i) == '"')
+				isQuoted = !isQuoted;
+			else if ((row.charAt(i) == ',') && !isQuoted)
+				columnsCount++;
+		}
+		return columnsCount;
+	}
+}
@@ -0,0 +1,78 @@
+package com.zoolife.test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zoolife.model.Animal;
+import com.zoolife.model.AnimalFriendship;
+import com.zoolife.model.FriendshipCsr;
+import com.zoolife.model.Loader;
+import com.zoolife.model.Loader.DegreeDistribution;
+import com.zoolife.model.Zoo;
+import com.zoolife.model.ZooKeeper;
+
+/**
+ * Tests of the {@link com.zoolife.model.FriendshipCsr} class
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public class FriendshipCsrTests {
+
+	@Test
+	public void csrShouldBeReusedUntilTheZooChanges() {
+		Zoo zoo = new Loader().generateZoo(500, 1, 1, 1, DegreeDistribution.UNIFORM, 4, 3);
+		ZooKeeper zKeeper = new ZooKeeper(2, 2, 3);
+		zKeeper.simulateOneDay(zoo);
+
+		FriendshipCsr csr = zoo.getFriendshipCsr();
+		Assert.assertSame(csr, zoo.getFriendshipCsr());
+		Assert.assertEquals(zoo.getDayCount(), csr.getDay());
+		int[] neighbours = csr.getNeighbours().clone();
+
+		zKeeper.simulateOneDay(zoo);
+		FriendshipCsr nextCsr = zoo.getFriendshipCsr();
+		Assert.assertNotSame(csr, nextCsr);
+		Assert.assertEquals(zoo.getDayCount(), nextCsr.getDay());
+		Assert.assertEquals(zoo.getDayCount() - 1, csr.getDay());
+		Assert.assertArrayEquals(neighbours, csr.getNeighbours());
+	}
+
+	@Test
+	public void csrShouldHoldTheFriendshipsOfTheZooInSortedRows() {
+		Zoo zoo = new Loader().generateZoo(2000, 1, 1, 1, DegreeDistribution.POWER_LAW, 5, 11);
+		new ZooKeeper(3, 3, 11).simulateDays(zoo, 3);
+
+		FriendshipCsr csr = zoo.getFriendshipCsr();
+		int[] offsets = csr.getOffsets();
+		int[] neighbours = csr.getNeighbours();
+		Assert.assertEquals(2000, csr.getAnimalCount());
+		Assert.assertEquals(zoo.getFriendsSet().size(), csr.getFriendshipCount());
+		Assert.assertEquals(neighbours.length, offsets[csr.getAnimalCount()]);
+
+		Set<AnimalFriendship> friendships = new HashSet<AnimalFriendship>();
+		for (int id = 0; id < csr.getAnimalCount(); id++) {
+			Animal anim = csr.getAnimal(id);
+			Assert.assertEquals(id, csr.getAnimalId(anim));
+			Assert.assertEquals(zoo.getFriendsNumber(anim), csr.degree(id));
+			for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+				if (i > offsets[id])
+					Assert.assertTrue(neighbours[i - 1] < neighbours[i]);
+				Assert.assertTrue(csr.areFriends(neighbours[i], id));
+				friendships.add(new AnimalFriendship(anim, csr.getAnimal(neighbours[i])));
+			}
+		}
+		Assert.assertEquals(zoo.getFriendsSet(), friendships);
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void readingAnUnknownIdShouldRaiseIndexOutOfBoundsException() {
+		Zoo zoo = new Loader().generateZoo(10, 1, 1, 1, DegreeDistribution.UNIFORM, 2, 1);
+		zoo.getFriendshipCsr().degree(10);
+	}
+}
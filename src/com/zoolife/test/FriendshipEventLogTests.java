@@ -0,0 +1,194 @@
+package com.zoolife.test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zoolife.model.Animal;
+import com.zoolife.model.AnimalFriendship;
+import com.zoolife.model.FriendshipEventLog;
+import com.zoolife.model.Loader;
+import com.zoolife.model.Loader.DegreeDistribution;
+import com.zoolife.model.Zoo;
+import com.zoolife.model.ZooKeeper;
+
+/**
+ * Tests of the {@link com.zoolife.model.FriendshipEventLog} class
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public class FriendshipEventLogTests {
+
+	@Test
+	public void replayingTheLogShouldRebuildTheStateOfEveryLoggedDay() throws IOException {
+		Zoo zoo = new Loader().generateZoo(500, 1, 1, 1, DegreeDistribution.SMALL_WORLD, 4, 1);
+		Path directory = Files.createTempDirectory("zoolife-log");
+		try (FriendshipEventLog log = new FriendshipEventLog(directory, zoo, 2, 3, 1000)) {
+			List<Set<AnimalFriendship>> friendsSets = new ArrayList<Set<AnimalFriendship>>();
+			List<Set<AnimalFriendship>> dailyFriendsAdded = new ArrayList<Set<AnimalFriendship>>();
+			friendsSets.add(zoo.getFriendsSet());
+			dailyFriendsAdded.add(zoo.getDailyFriendsAdded());
+			new ZooKeeper(2, 2, 1).simulateDays(zoo, 10, simulatedZoo -> {
+				friendsSets.add(simulatedZoo.getFriendsSet());
+				dailyFriendsAdded.add(simulatedZoo.getDailyFriendsAdded());
+			});
+
+			for (int day = 0; day <= 10; day++) {
+				Zoo replayedZoo = log.replayUpTo(day);
+				Assert.assertEquals(day, replayedZoo.getDayCount());
+				Assert.assertEquals(friendsSets.get(day), replayedZoo.getFriendsSet());
+				Assert.assertEquals(dailyFriendsAdded.get(day), replayedZoo.getDailyFriendsAdded());
+			}
+			log.sync();
+			Assert.assertEquals(friendsSets.get(10), FriendshipEventLog.replay(directory, 10).getFriendsSet());
+		} finally {
+			deleteDirectory(directory);
+		}
+	}
+
+	@Test
+	public void compactionShouldBoundTheLogFilesAndKeepTheLatestState() throws Exception {
+		Zoo zoo = new Loader().generateZoo(500, 1, 1, 1, DegreeDistribution.UNIFORM, 4, 2);
+		Path directory = Files.createTempDirectory("zoolife-log");
+		try {
+			try (FriendshipEventLog log = new FriendshipEventLog(directory, zoo, 1, 2, 3)) {
+				new ZooKeeper(2, 2, 2).simulateDays(zoo, 41);
+				// The first call may return a compaction that was already
+				// running, and that left the latest segments out
+				log.compact().get();
+				log.compact().get();
+				Assert.assertEquals(2, countFiles(directory));
+
+				try {
+					log.replayUpTo(1);
+					Assert.fail("Days before the latest snapshot should not be replayable");
+				} catch (IllegalArgumentException e) {
+					// Expected
+				}
+			}
+
+			Zoo replayedZoo = FriendshipEventLog.replay(directory, Integer.MAX_VALUE);
+			Assert.assertEquals(41, replayedZoo.getDayCount());
+			Assert.assertEquals(zoo.getFriendsSet(), replayedZoo.getFriendsSet());
+			Assert.assertEquals(zoo.getDailyFriendsRemoved(), replayedZoo.getDailyFriendsRemoved());
+		} finally {
+			deleteDirectory(directory);
+		}
+	}
+
+	@Test
+	public void failedCompactionsShouldNotStopTheDaysFromBeingLogged() throws IOException {
+		Zoo zoo = new Loader().generateZoo(200, 1, 1, 1, DegreeDistribution.UNIFORM, 4, 3);
+		Path directory = Files.createTempDirectory("zoolife-log");
+		Path snapshot = directory.resolve("snapshot-0000000000.zsnap");
+		Path savedSnapshot = Files.createTempFile("zoolife", ".zsnap");
+		try {
+			FriendshipEventLog log = new FriendshipEventLog(directory, zoo, 1, 1, 1);
+			// Every compaction fails without the snapshot that it starts from
+			Files.move(snapshot, savedSnapshot, StandardCopyOption.REPLACE_EXISTING);
+			new ZooKeeper(2, 2, 3).simulateDays(zoo, 6);
+			Assert.assertEquals(6, zoo.getDayCount());
+			try {
+				log.close();
+				Assert.fail("The failed compactions should be reported when the log is closed");
+			} catch (IOException e) {
+				// Expected
+			}
+
+			Files.move(savedSnapshot, snapshot);
+			Zoo replayedZoo = FriendshipEventLog.replay(directory, Integer.MAX_VALUE);
+			Assert.assertEquals(6, replayedZoo.getDayCount());
+			Assert.assertEquals(zoo.getFriendsSet(), replayedZoo.getFriendsSet());
+			Assert.assertEquals(zoo.getDailyFriendsAdded(), replayedZoo.getDailyFriendsAdded());
+		} finally {
+			Files.deleteIfExists(savedSnapshot);
+			deleteDirectory(directory);
+		}
+	}
+
+	@Test
+	public void failedAppendsShouldLeaveTheZooAsTheLogKnowsIt() throws Exception {
+		Zoo zoo = new Loader().generateZoo(300, 1, 1, 1, DegreeDistribution.UNIFORM, 0, 5);
+		List<Animal> animals = new ArrayList<Animal>(zoo.getAnimalsView());
+		Path directory = Files.createTempDirectory("zoolife-log");
+		try {
+			FriendshipEventLog log = new FriendshipEventLog(directory, zoo, 1000, 1000, 1000);
+			zoo.incrementDay();
+			zoo.addFirendship(animals.get(0), animals.get(1));
+			// The segment can no longer be written
+			Field channelField = FriendshipEventLog.class.getDeclaredField("segmentChannel");
+			channelField.setAccessible(true);
+			((FileChannel) channelField.get(log)).close();
+
+			// Fill the buffer of the log until an append has to write it
+			Animal failedAnim1 = null;
+			Animal failedAnim2 = null;
+			for (int i = 2; (i < animals.size()) && (failedAnim1 == null); i++) {
+				for (int j = i + 1; (j < animals.size()) && (failedAnim1 == null); j++) {
+					try {
+						zoo.addFirendship(animals.get(i), animals.get(j));
+					} catch (UncheckedIOException e) {
+						failedAnim1 = animals.get(i);
+						failedAnim2 = animals.get(j);
+					}
+				}
+			}
+			Assert.assertNotNull(failedAnim1);
+			Assert.assertFalse(zoo.areFriends(failedAnim1, failedAnim2));
+			try {
+				zoo.removeFirendship(animals.get(0), animals.get(1));
+				Assert.fail("The removal should not have been logged");
+			} catch (UncheckedIOException e) {
+				// Expected
+			}
+			Assert.assertTrue(zoo.areFriends(animals.get(0), animals.get(1)));
+
+			// Once the segment can be written again, no record is missing
+			channelField.set(log, FileChannel.open(directory.resolve("segment-0000000001.log"),
+					StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+			zoo.removeFirendship(animals.get(0), animals.get(1));
+			zoo.addFirendship(failedAnim1, failedAnim2);
+			log.close();
+			Zoo replayedZoo = FriendshipEventLog.replay(directory, Integer.MAX_VALUE);
+			Assert.assertEquals(zoo.getFriendsSet(), replayedZoo.getFriendsSet());
+			Assert.assertEquals(zoo.getDailyFriendsAdded(), replayedZoo.getDailyFriendsAdded());
+		} finally {
+			deleteDirectory(directory);
+		}
+	}
+
+	private static int countFiles(Path directory) throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (@SuppressWarnings("unused")
+			Path file : files) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static void deleteDirectory(Path directory) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+}
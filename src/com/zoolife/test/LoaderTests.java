@@ -0,0 +1,166 @@
+package com.zoolife.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zoolife.model.Animal;
+import com.zoolife.model.Chicken;
+import com.zoolife.model.Dog;
+import com.zoolife.model.Loader;
+import com.zoolife.model.Loader.DegreeDistribution;
+import com.zoolife.model.Parrot;
+import com.zoolife.model.Zoo;
+
+/**
+ * Tests of the {@link com.zoolife.model.Loader} class
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public class LoaderTests {
+
+	@Test
+	public void generatedAnimalsShouldHaveUniqueNamesAndOnlyTheSpeciesWithAWeight() {
+		Collection<Animal> animals = new Loader().generateAnimals(5000, 1, 0, 0, 42);
+		Set<String> names = new HashSet<String>();
+		for (Animal anim : animals) {
+			Assert.assertTrue(anim instanceof Dog);
+			names.add(anim.getName());
+		}
+		Assert.assertEquals(5000, animals.size());
+		Assert.assertEquals(5000, names.size());
+	}
+
+	@Test
+	public void generatorWithTheSameSeedShouldProduceTheSameZoo() {
+		Loader loader = new Loader();
+		for (DegreeDistribution distribution : DegreeDistribution.values()) {
+			Zoo zoo1 = loader.generateZoo(2000, 1, 1, 1, distribution, 4, 7);
+			Zoo zoo2 = loader.generateZoo(2000, 1, 1, 1, distribution, 4, 7);
+			Assert.assertEquals(zoo1.getZooProperties(), zoo2.getZooProperties());
+			Assert.assertEquals(zoo1.getFriendsSet(), zoo2.getFriendsSet());
+		}
+	}
+
+	@Test
+	public void generatedZooShouldHaveTheRequestedMeanNumberOfFriends() {
+		Loader loader = new Loader();
+		for (DegreeDistribution distribution : DegreeDistribution.values()) {
+			Zoo zoo = loader.generateZoo(3000, 2, 1, 1, distribution, 6, 3);
+			long friendsNumbers = 0;
+			for (Animal anim : zoo.getAnimalsSet()) {
+				friendsNumbers += zoo.getFriendsNumber(anim);
+			}
+			double meanFriendsNumber = friendsNumbers / 3000.0;
+			Assert.assertTrue(distribution + ": " + meanFriendsNumber,
+					(meanFriendsNumber > 5.9) && (meanFriendsNumber <= 6));
+			Assert.assertEquals(friendsNumbers / 2, zoo.getFriendsSet().size());
+
+			// The initial friendships were not established on the first day
+			zoo.incrementDay();
+			Assert.assertTrue(zoo.getDailyFriendsAdded().isEmpty());
+		}
+	}
+
+	@Test
+	public void powerLawZooShouldHaveAnimalsWithManyMoreFriendsThanTheMean() {
+		Zoo zoo = new Loader().generateZoo(20000, 1, 1, 1, DegreeDistribution.POWER_LAW, 4, 11);
+		int maxFriendsNumber = 0;
+		for (Animal anim : zoo.getAnimalsSet()) {
+			maxFriendsNumber = Math.max(maxFriendsNumber, zoo.getFriendsNumber(anim));
+		}
+		Assert.assertTrue(maxFriendsNumber > 40);
+	}
+
+	@Test
+	public void loaderShouldReadAnimalsAndSettingsFromCsvAndReportMalformedRows() throws IOException {
+		Path file = writeTempFile(".csv", "species,name,favFood,details",
+				"dog,Rex,Meat,Guard dog",
+				"\"parrot\",\"Polly, Jr.\",Grain,0.3,true",
+				"# a comment",
+				"",
+				"chicken,Henny,Corn,not a number,false",
+				"cat,Tom,Fish",
+				"chicken,Henny,Corn,0.7,false",
+				"dog,Rex,Bones,Racing dog",
+				"setting,maxGainableFriends,3");
+		try {
+			Loader loader = new Loader(file);
+			Set<Animal> animals = loader.loadAnimals();
+			Assert.assertEquals(3, animals.size());
+			Assert.assertTrue(animals.contains(new Dog("Rex", "Meat", "Guard dog")));
+			Assert.assertTrue(animals.contains(new Parrot("Polly, Jr.", "Grain", 0.3f, true)));
+			Assert.assertTrue(animals.contains(new Chicken("Henny", "Corn", 0.7f, false)));
+			Assert.assertEquals(1, loader.loadMaxLosableFriends());
+			Assert.assertEquals(3, loader.maxGainableFriends());
+
+			Assert.assertEquals(3, loader.getMalformedRecordsCount());
+			Assert.assertEquals(3, loader.getLoadWarnings().size());
+			Assert.assertTrue(loader.getLoadWarnings().get(0).startsWith("line 6:"));
+			Assert.assertTrue(loader.getLoadWarnings().get(1).startsWith("line 7:"));
+			Assert.assertTrue(loader.getLoadWarnings().get(2).startsWith("line 9:"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void csvHeaderAfterCommentsAndBlankLinesShouldBeSkipped() throws IOException {
+		Path file = writeTempFile(".csv", "# The animals of the zoo",
+				"",
+				"species,name,favFood,details",
+				"dog,Rex,Meat,Guard dog",
+				"species,name,favFood,details");
+		try {
+			Loader loader = new Loader(file);
+			Set<Animal> animals = loader.loadAnimals();
+			Assert.assertEquals(1, animals.size());
+			Assert.assertTrue(animals.contains(new Dog("Rex", "Meat", "Guard dog")));
+			// Only the first record can be a header
+			Assert.assertEquals(1, loader.getMalformedRecordsCount());
+			Assert.assertTrue(loader.getLoadWarnings().get(0).startsWith("line 5:"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void loaderShouldReadAnimalsAndSettingsFromJsonLinesAndReportMalformedRows() throws IOException {
+		Path file = writeTempFile(".jsonl",
+				"{\"species\": \"dog\", \"name\": \"Rex\", \"favFood\": \"Meat\", \"dogType\": \"Guard dog\"}",
+				"{\"species\":\"parrot\",\"name\":\"Polly \\\"P\\\"\",\"favFood\":\"Grain\",\"wingspan\":0.3,\"canSpeak\":true}",
+				"{\"species\":\"chicken\",\"name\":\"Henny\",\"favFood\":\"Corn\",\"wingspan\":0.7}",
+				"{\"species\":\"dog\",\"name\":\"Rex 2\"",
+				"{\"setting\":\"maxLosableFriends\",\"value\":2}");
+		try {
+			Loader loader = new Loader(file);
+			Set<Animal> animals = loader.loadAnimals();
+			Assert.assertEquals(2, animals.size());
+			Assert.assertTrue(animals.contains(new Parrot("Polly \"P\"", "Grain", 0.3f, true)));
+			Assert.assertEquals(2, loader.loadMaxLosableFriends());
+			Assert.assertEquals(1, loader.maxGainableFriends());
+			Assert.assertEquals(2, loader.getMalformedRecordsCount());
+			Assert.assertTrue(loader.getLoadWarnings().get(0).startsWith("line 3:"));
+			Assert.assertTrue(loader.getLoadWarnings().get(1).startsWith("line 4:"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static Path writeTempFile(String suffix, String... lines) throws IOException {
+		Path file = Files.createTempFile("zoolife", suffix);
+		Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+		return file;
+	}
+}
@@ -0,0 +1,120 @@
+package com.zoolife.test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.AttributeList;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zoolife.metrics.Histogram;
+import com.zoolife.metrics.MetricsRegistry;
+import com.zoolife.model.Loader;
+import com.zoolife.model.Loader.DegreeDistribution;
+import com.zoolife.model.Zoo;
+import com.zoolife.model.ZooKeeper;
+
+/**
+ * Tests of the {@link com.zoolife.metrics.MetricsRegistry} class
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public class MetricsRegistryTests {
+
+	@Test
+	public void histogramShouldBeExactForTheMeanAndMaxAndCloseForPercentiles() {
+		Histogram histogram = new Histogram();
+		for (int value = 1; value <= 1000; value++) {
+			histogram.record(value);
+		}
+		Assert.assertEquals(1000, histogram.getCount());
+		Assert.assertEquals(500.5, histogram.getMean(), 1e-9);
+		Assert.assertEquals(1000, histogram.getMax());
+		Assert.assertTrue((histogram.getPercentile(50) >= 500) && (histogram.getPercentile(50) < 563));
+		Assert.assertTrue((histogram.getPercentile(99) >= 990) && (histogram.getPercentile(99) <= 1000));
+		Assert.assertEquals(1, histogram.getPercentile(0));
+	}
+
+	@Test
+	public void jmxClientsShouldOnlyComputeTheMetricsTheyRead() throws JMException {
+		MetricsRegistry metrics = new MetricsRegistry();
+		AtomicInteger gaugeReads = new AtomicInteger();
+		AtomicInteger histogramReads = new AtomicInteger();
+		metrics.gauge("zoo.gauge", () -> gaugeReads.incrementAndGet());
+		metrics.histogramGauge("zoo.histogram", () -> {
+			histogramReads.incrementAndGet();
+			Histogram histogram = new Histogram();
+			histogram.record(7);
+			return histogram;
+		});
+		metrics.counter("zoo.counter").increment();
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = metrics.registerMBean("lazyMetricsTest");
+		try {
+			Assert.assertEquals(7, server.getMBeanInfo(objectName).getAttributes().length);
+			Assert.assertEquals(0, gaugeReads.get() + histogramReads.get());
+
+			Assert.assertEquals(1.0, server.getAttribute(objectName, "zoo.counter"));
+			Assert.assertEquals(0, gaugeReads.get() + histogramReads.get());
+			AttributeList attributes = server.getAttributes(objectName,
+					new String[] { "zoo.histogram.max", "zoo.histogram.p50", "zoo.histogram.count" });
+			Assert.assertEquals(3, attributes.size());
+			Assert.assertEquals(1, histogramReads.get());
+			Assert.assertEquals(0, gaugeReads.get());
+		} finally {
+			server.unregisterMBean(objectName);
+		}
+		Map<String, Double> values = metrics.getValues(Arrays.asList("zoo.histogram.p99", "zoo.unknown"));
+		Assert.assertEquals(1, values.size());
+		Assert.assertEquals(7, values.get("zoo.histogram.p99"), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void reusingTheNameOfAMetricForAnotherKindShouldRaiseIllegalArgumentException() {
+		MetricsRegistry metrics = new MetricsRegistry();
+		metrics.counter("zoo.metric").increment();
+		metrics.timer("zoo.metric");
+	}
+
+	@Test
+	public void simulationShouldRecordItsMetricsAndExposeThemThroughJmx() throws JMException {
+		Zoo zoo = new Loader().generateZoo(1000, 1, 1, 1, DegreeDistribution.UNIFORM, 4, 8);
+		ZooKeeper zKeeper = new ZooKeeper(2, 2, 8);
+		MetricsRegistry metrics = new MetricsRegistry();
+		zoo.setMetrics(metrics);
+		zKeeper.setMetrics(metrics);
+		zKeeper.simulateDays(zoo, 4);
+
+		Map<String, Double> values = metrics.getValues();
+		Assert.assertEquals(4, values.get("zooKeeper.day.count"), 0);
+		Assert.assertEquals(4, values.get("zooKeeper.losePhase.count"), 0);
+		Assert.assertEquals(2000 + values.get("zoo.friendshipsAdded") - values.get("zoo.friendshipsRemoved"),
+				values.get("zoo.friendships"), 0);
+		Assert.assertEquals(values.get("zoo.friendships") / 500, values.get("zoo.degree.mean"), 1e-9);
+		Assert.assertTrue(values.get("zoo.degree.max") >= values.get("zoo.degree.p99"));
+
+		ObjectName objectName = metrics.registerMBean("metricsTest");
+		try {
+			Assert.assertEquals(4.0,
+					ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "zoo.day"));
+		} finally {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		}
+
+		// Without metrics, nothing more is recorded
+		zoo.setMetrics(null);
+		zKeeper.setMetrics(null);
+		zKeeper.simulateDays(zoo, 1);
+		Assert.assertEquals(4, metrics.getValues().get("zooKeeper.day.count"), 0);
+	}
+}
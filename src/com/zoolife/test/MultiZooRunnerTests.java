@@ -0,0 +1,160 @@
+package com.zoolife.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zoolife.model.Animal;
+import com.zoolife.model.Loader;
+import com.zoolife.model.Loader.DegreeDistribution;
+import com.zoolife.model.MultiZooRunner;
+import com.zoolife.model.MultiZooRunner.ZooRun;
+import com.zoolife.model.Zoo;
+import com.zoolife.model.ZooKeeper;
+
+/**
+ * Tests of the {@link com.zoolife.model.MultiZooRunner} class
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public class MultiZooRunnerTests {
+
+	@Test
+	public void zoosRunTogetherShouldGiveTheSameResultsAsZoosRunAlone() {
+		Loader loader = new Loader();
+		Zoo animalsSource = loader.generateZoo(300, 1, 1, 1, DegreeDistribution.UNIFORM, 0, 3);
+		List<Zoo> zoos = new ArrayList<Zoo>();
+		List<Zoo> expectedZoos = new ArrayList<Zoo>();
+		for (int seed = 0; seed < 40; seed++) {
+			zoos.add(loader.generateZoo(animalsSource, DegreeDistribution.SMALL_WORLD, 4, seed));
+			Zoo expectedZoo = loader.generateZoo(animalsSource, DegreeDistribution.SMALL_WORLD, 4, seed);
+			new ZooKeeper(2, 2, seed).simulateDays(expectedZoo, 5 + (seed % 7));
+			expectedZoos.add(expectedZoo);
+		}
+
+		try (MultiZooRunner runner = new MultiZooRunner(3, 0)) {
+			List<ZooRun> runs = new ArrayList<ZooRun>();
+			for (int seed = 0; seed < zoos.size(); seed++) {
+				runs.add(runner.submit("zoo" + seed, zoos.get(seed), new ZooKeeper(2, 2, seed), 5 + (seed % 7)));
+			}
+			for (ZooRun run : runs) {
+				Assert.assertSame(run.getZoo(), run.getCompletion().join());
+				Assert.assertEquals(run.getDays(), run.getCompletedDays());
+				Assert.assertTrue(run.isDone());
+			}
+			// The finished runs are not kept
+			Assert.assertTrue(runner.getRuns().isEmpty());
+		}
+
+		Animal anim = animalsSource.getAnimalsView().iterator().next();
+		for (int seed = 0; seed < zoos.size(); seed++) {
+			Zoo zoo = zoos.get(seed);
+			Assert.assertEquals(expectedZoos.get(seed).getFriendsSet(), zoo.getFriendsSet());
+			Assert.assertEquals(expectedZoos.get(seed).getDailyFriendsAdded(), zoo.getDailyFriendsAdded());
+			// The animals are shared, not copied
+			Assert.assertTrue(zoo.getAnimalsView().contains(anim));
+		}
+	}
+
+	@Test
+	public void aGiantZooShouldNotStarveTheSmallOnes() throws InterruptedException {
+		Loader loader = new Loader();
+		Zoo giantZoo = loader.generateZoo(20000, 1, 1, 1, DegreeDistribution.UNIFORM, 5, 1);
+		Zoo smallSource = loader.generateZoo(50, 1, 1, 1, DegreeDistribution.UNIFORM, 0, 2);
+
+		// A single worker, which the giant zoo would otherwise hold until done
+		try (MultiZooRunner runner = new MultiZooRunner(1, TimeUnit.MILLISECONDS.toNanos(1))) {
+			ZooRun giantRun = runner.submit("giant", giantZoo, new ZooKeeper(3, 3, 1), Integer.MAX_VALUE);
+			List<ZooRun> smallRuns = new ArrayList<ZooRun>();
+			for (int seed = 0; seed < 20; seed++) {
+				Zoo zoo = loader.generateZoo(smallSource, DegreeDistribution.UNIFORM, 3, seed);
+				smallRuns.add(runner.submit("small" + seed, zoo, new ZooKeeper(1, 1, seed), 30));
+			}
+			for (ZooRun run : smallRuns) {
+				run.getCompletion().join();
+				Assert.assertEquals(30, run.getCompletedDays());
+			}
+			Assert.assertFalse(giantRun.isDone());
+			Assert.assertEquals(Arrays.asList(giantRun), runner.getRuns());
+
+			giantRun.cancel();
+			try {
+				giantRun.getCompletion().join();
+				Assert.fail("The giant zoo should have been cancelled");
+			} catch (CancellationException e) {
+				// expected
+			}
+			Assert.assertEquals(giantZoo.getDayCount(), giantRun.getCompletedDays());
+			Assert.assertTrue(giantRun.getBusyNanos() > 0);
+		}
+	}
+
+	@Test
+	public void anErrorThrownByAListenerShouldCompleteTheRunExceptionally() {
+		Zoo zoo = new Loader().generateZoo(100, 1, 1, 1, DegreeDistribution.UNIFORM, 2, 5);
+		try (MultiZooRunner runner = new MultiZooRunner(1)) {
+			ZooRun run = runner.submit("failing", zoo, new ZooKeeper(1, 1, 5), 10, 1, simulatedZoo -> {
+				throw new StackOverflowError();
+			});
+			try {
+				run.getCompletion().join();
+				Assert.fail("The run should have failed");
+			} catch (CompletionException e) {
+				Assert.assertTrue(e.getCause() instanceof StackOverflowError);
+			}
+			Assert.assertEquals(1, run.getCompletedDays());
+			// The worker is still there for the other zoos
+			Assert.assertSame(zoo, runner.submit("next", zoo, new ZooKeeper(1, 1, 5), 2).getCompletion().join());
+		}
+	}
+
+	@Test
+	public void cancellingTheCompletionShouldStopTheZoo() throws InterruptedException {
+		Zoo zoo = new Loader().generateZoo(100, 1, 1, 1, DegreeDistribution.UNIFORM, 2, 6);
+		CountDownLatch firstDay = new CountDownLatch(1);
+		try (MultiZooRunner runner = new MultiZooRunner(1, 0)) {
+			ZooRun run = runner.submit("endless", zoo, new ZooKeeper(1, 1, 6), Integer.MAX_VALUE, 1,
+					simulatedZoo -> firstDay.countDown());
+			Assert.assertTrue(firstDay.await(10, TimeUnit.SECONDS));
+
+			Assert.assertTrue(run.getCompletion().cancel(false));
+			// Only the day that was being simulated can still end
+			Thread.sleep(50);
+			int dayCount = zoo.getDayCount();
+			Thread.sleep(100);
+			Assert.assertEquals(dayCount, zoo.getDayCount());
+			Assert.assertTrue(runner.getRuns().isEmpty());
+		}
+	}
+
+	@Test
+	public void closingTheRunnerShouldCancelTheUnfinishedZoos() throws InterruptedException {
+		Loader loader = new Loader();
+		Zoo zoo = loader.generateZoo(100, 1, 1, 1, DegreeDistribution.UNIFORM, 2, 4);
+		CountDownLatch firstDay = new CountDownLatch(1);
+		MultiZooRunner runner = new MultiZooRunner(2);
+		ZooRun run = runner.submit("endless", zoo, new ZooKeeper(1, 1, 4), Integer.MAX_VALUE, 1,
+				simulatedZoo -> firstDay.countDown());
+		Assert.assertTrue(firstDay.await(10, TimeUnit.SECONDS));
+
+		runner.close();
+		Assert.assertTrue(run.getCompletion().isCancelled());
+		Assert.assertEquals(zoo.getDayCount(), run.getCompletedDays());
+		try {
+			runner.submit("late", zoo, new ZooKeeper(1, 1), 1);
+			Assert.fail("A closed runner should refuse new zoos");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+}
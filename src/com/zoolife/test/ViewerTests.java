@@ -0,0 +1,80 @@
+package com.zoolife.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zoolife.model.Chicken;
+import com.zoolife.model.Dog;
+import com.zoolife.model.Loader;
+import com.zoolife.model.Loader.DegreeDistribution;
+import com.zoolife.model.Parrot;
+import com.zoolife.model.Zoo;
+import com.zoolife.model.ZooKeeper;
+import com.zoolife.view.Viewer;
+
+/**
+ * Tests of the {@link com.zoolife.view.Viewer} class
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public class ViewerTests {
+
+	@Test
+	public void streamingTheZooPropertiesShouldRenderTheSameAsTheirCopy() {
+		Zoo zoo = new Loader().generateZoo(300, 1, 1, 1, DegreeDistribution.SMALL_WORLD, 3, 4);
+		new ZooKeeper(2, 2, 4).simulateDays(zoo, 2);
+
+		StringWriter streamed = new StringWriter();
+		new Viewer(streamed).displayZooProperties(zoo);
+		StringWriter copied = new StringWriter();
+		new Viewer(copied).displayZooProperties(zoo.getZooProperties());
+
+		Assert.assertTrue(streamed.toString().contains("The zoo has 300 animals:"));
+		Assert.assertEquals(copied.toString(), streamed.toString());
+	}
+
+	@Test(expected = UncheckedIOException.class)
+	public void failingToWriteToTheSinkShouldRaiseUncheckedIOException() {
+		OutputStream closedPipe = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("Broken pipe");
+			}
+		};
+		new Viewer(closedPipe).displayGoodbyeMsg();
+	}
+
+	@Test
+	public void displayMethodsShouldFlushTheirWholeOutputToTheSink() {
+		Dog dog = new Dog("Rex", "Meat", "Poodle");
+		Parrot parrot = new Parrot("Polly", "Seeds", 0.3f, true);
+		Chicken chicken = new Chicken("Henny", "Corn", 0.5f, false);
+		Zoo zoo = new Zoo(Arrays.asList(dog, parrot, chicken));
+		zoo.incrementDay();
+		zoo.addFirendship(dog, parrot);
+		zoo.addFirendship(dog, chicken);
+
+		StringWriter sink = new StringWriter();
+		new Viewer(sink).displayZooProperties(zoo);
+		String output = sink.toString();
+
+		Assert.assertTrue(output.contains("-> Rex is a poodle whose favorite food is meat."));
+		Assert.assertTrue(output.contains("Rex is friends with Henny and Polly"));
+		Assert.assertTrue(output.contains("Polly is friends with Rex."));
+		Assert.assertTrue(output.endsWith("\n\n"));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void constructingViewerWithNullSinkShouldRaiseNullPointerException() {
+		new Viewer((StringWriter) null);
+	}
+}
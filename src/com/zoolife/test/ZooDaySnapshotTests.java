@@ -0,0 +1,97 @@
+package com.zoolife.test;
+
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zoolife.model.Animal;
+import com.zoolife.model.FriendshipCsr;
+import com.zoolife.model.Loader;
+import com.zoolife.model.Loader.DegreeDistribution;
+import com.zoolife.model.Zoo;
+import com.zoolife.model.ZooDaySnapshot;
+import com.zoolife.model.ZooKeeper;
+
+/**
+ * Tests of the {@link com.zoolife.model.ZooDaySnapshot} class
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public class ZooDaySnapshotTests {
+
+	@Test
+	public void publishedSnapshotShouldHoldTheLastCompletedDay() {
+		Zoo zoo = new Loader().generateZoo(1000, 1, 1, 1, DegreeDistribution.UNIFORM, 4, 7);
+		ZooKeeper zKeeper = new ZooKeeper(2, 2, 7);
+		Assert.assertNull(zoo.getPublishedSnapshot());
+		zoo.setSnapshotPublishing(true);
+		Assert.assertEquals(0, zoo.getPublishedSnapshot().getDay());
+
+		zKeeper.simulateDays(zoo, 2);
+		ZooDaySnapshot snapshot = zoo.getPublishedSnapshot();
+		Assert.assertEquals(1, snapshot.getDay());
+		zoo.publishSnapshot();
+		snapshot = zoo.getPublishedSnapshot();
+		Assert.assertEquals(2, snapshot.getDay());
+		TreeMap<String, TreeMap<String, String>> zooProperties = zoo.getZooProperties();
+		for (Animal anim : zoo.getAnimalsView()) {
+			Assert.assertEquals(zoo.getAnimalFirends(anim), snapshot.getAnimalFriends(anim));
+			Assert.assertEquals(zoo.getAnimalFriendsGained(anim), snapshot.getAnimalFriendsGained(anim));
+			Assert.assertEquals(zoo.getAnimalFriendsLost(anim), snapshot.getAnimalFriendsLost(anim));
+			Assert.assertEquals(zooProperties.get(anim.getName()), snapshot.getAnimalProperties(anim));
+		}
+
+		// The snapshot does not follow the zoo
+		Animal anim = zoo.getAnimalsView().iterator().next();
+		TreeMap<String, String> animProperties = snapshot.getAnimalProperties(anim);
+		zKeeper.simulateDays(zoo, 3);
+		Assert.assertEquals(animProperties, snapshot.getAnimalProperties(anim));
+		Assert.assertEquals(4, zoo.getPublishedSnapshot().getDay());
+
+		zoo.setSnapshotPublishing(false);
+		Assert.assertNull(zoo.getPublishedSnapshot());
+	}
+
+	@Test
+	public void readersShouldSeeConsistentSnapshotsWhileTheZooIsSimulated() throws InterruptedException {
+		Zoo zoo = new Loader().generateZoo(2000, 1, 1, 1, DegreeDistribution.POWER_LAW, 5, 9);
+		ZooKeeper zKeeper = new ZooKeeper(3, 3, 9);
+		zoo.setSnapshotPublishing(true);
+
+		AtomicReference<String> readerError = new AtomicReference<String>();
+		Thread reader = new Thread(() -> {
+			int lastDay = 0;
+			while (lastDay < 20) {
+				ZooDaySnapshot snapshot = zoo.getPublishedSnapshot();
+				if (snapshot.getDay() < lastDay)
+					readerError.set("The day went back from " + lastDay + " to " + snapshot.getDay());
+				lastDay = snapshot.getDay();
+				FriendshipCsr friendships = snapshot.getFriendships();
+				for (int id = 0; id < friendships.getAnimalCount(); id += 97) {
+					int[] offsets = friendships.getOffsets();
+					for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+						if (!friendships.areFriends(friendships.getNeighbours()[i], id))
+							readerError.set("Asymmetric friendship on day " + lastDay);
+					}
+				}
+			}
+		});
+		reader.start();
+		zKeeper.simulateDays(zoo, 21);
+		reader.join(10000);
+
+		Assert.assertFalse(reader.isAlive());
+		Assert.assertNull(readerError.get());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void publishingWithoutEnablingShouldRaiseIllegalStateException() {
+		Zoo zoo = new Loader().generateZoo(10, 1, 1, 1, DegreeDistribution.UNIFORM, 2, 1);
+		zoo.publishSnapshot();
+	}
+}
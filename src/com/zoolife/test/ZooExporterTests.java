@@ -0,0 +1,108 @@
+package com.zoolife.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zoolife.model.Chicken;
+import com.zoolife.model.Dog;
+import com.zoolife.model.Parrot;
+import com.zoolife.model.Zoo;
+import com.zoolife.model.ZooExporter;
+import com.zoolife.model.ZooExporter.Format;
+
+/**
+ * Tests of the {@link com.zoolife.model.ZooExporter} class
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public class ZooExporterTests {
+
+	private Dog dog = new Dog("Rex", "Meat", "Poodle");
+	private Parrot parrot = new Parrot("Polly \"P\"", "Seeds", 0.25f, true);
+	private Chicken chicken = new Chicken("Henny, Jr", "Corn", 0.5f, false);
+
+	@Test
+	public void jsonLinesExportShouldHoldOneObjectPerChangeAndPerAnimal() throws IOException {
+		Zoo zoo = createZoo();
+		ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		try (ZooExporter exporter = new ZooExporter(sink, Format.JSON_LINES)) {
+			exporter.exportDailyChanges(zoo);
+			exporter.exportZooProperties(zoo);
+		}
+
+		String[] lines = sink.toString("UTF-8").split("\n");
+		Assert.assertEquals(5, lines.length);
+		Assert.assertTrue(lines[0].matches("\\{\"day\":2,\"change\":\"(added|removed)\",\"animal1\":.*\\}"));
+		Assert.assertTrue(Arrays.asList(lines).contains(
+				"{\"name\":\"Polly \\\"P\\\"\",\"species\":\"parrot\",\"favFood\":\"Seeds\",\"wingspan\":0.25,"
+						+ "\"canSpeak\":true,\"friendsNumber\":0,\"friends\":[]}"));
+		Assert.assertTrue(Arrays.asList(lines).contains(
+				"{\"name\":\"Rex\",\"species\":\"dog\",\"favFood\":\"Meat\",\"dogType\":\"Poodle\","
+						+ "\"friendsNumber\":1,\"friends\":[\"Henny, Jr\"]}"));
+	}
+
+	@Test
+	public void csvExportShouldQuoteFieldsAndWriteEachHeaderOnce() throws IOException {
+		Zoo zoo = createZoo();
+		ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		try (ZooExporter exporter = new ZooExporter(sink, Format.CSV)) {
+			exporter.exportZooProperties(zoo);
+			exporter.exportZooProperties(zoo);
+		}
+
+		String[] lines = sink.toString("UTF-8").split("\n");
+		Assert.assertEquals(7, lines.length);
+		Assert.assertEquals("name,species,favFood,dogType,wingspan,canSpeak,isBroiler,friendsNumber,friends", lines[0]);
+		Assert.assertTrue(Arrays.asList(lines).contains("Rex,dog,Meat,Poodle,,,,1,\"Henny, Jr\""));
+		Assert.assertTrue(Arrays.asList(lines).contains("\"Henny, Jr\",chicken,Corn,,0.5,,false,1,Rex"));
+		Assert.assertTrue(Arrays.asList(lines).contains("\"Polly \"\"P\"\"\",parrot,Seeds,,0.25,true,,0,"));
+	}
+
+	@Test
+	public void binaryExportShouldHoldTheChangesAsColumnsOfIds() throws IOException {
+		Zoo zoo = createZoo();
+		ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		try (ZooExporter exporter = new ZooExporter(sink, Format.BINARY)) {
+			exporter.exportDailyChanges(zoo);
+		}
+
+		ByteBuffer block = ByteBuffer.wrap(sink.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+		Assert.assertEquals("ZOOX", new String(sink.toByteArray(), 0, 4, StandardCharsets.US_ASCII));
+		block.position(8);
+		Assert.assertEquals(1, block.get());
+		Assert.assertEquals(2, block.getInt());
+		Assert.assertEquals(2, block.getInt());
+		byte[] changes = { block.get(), block.get() };
+		Arrays.sort(changes);
+		Assert.assertEquals(0, changes[0]);
+		Assert.assertEquals(1, changes[1]);
+		int smaller1 = block.getInt();
+		int smaller2 = block.getInt();
+		Assert.assertTrue(smaller1 < block.getInt());
+		Assert.assertTrue(smaller2 < block.getInt());
+		Assert.assertFalse(block.hasRemaining());
+	}
+
+	/*
+	 * On day 2, the dog lost the parrot and gained the chicken as a friend
+	 */
+	private Zoo createZoo() {
+		Zoo zoo = new Zoo(Arrays.asList(this.dog, this.parrot, this.chicken));
+		zoo.incrementDay();
+		zoo.addFirendship(this.dog, this.parrot);
+		zoo.incrementDay();
+		zoo.removeFirendship(this.dog, this.parrot);
+		zoo.addFirendship(this.dog, this.chicken);
+		return zoo;
+	}
+}
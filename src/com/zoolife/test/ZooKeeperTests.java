@@ -1,6 +1,15 @@
 package com.zoolife.test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -81,6 +90,154 @@ public class ZooKeeperTests {
 		Assert.assertEquals(goodZooOne.getDailyFriendsRemoved(), goodZooTwo.getDailyFriendsRemoved());
 	}
 
+	@Test
+	public void parallelSimulationShouldNotDependOnTheNumberOfThreads() {
+		HashSet<Animal> goodAnimalsSet = new HashSet<Animal>();
+		for (int i = 0; i < 10000; i++) {
+			goodAnimalsSet.add(new Dog("dog" + i, "Food", "Hunting dog"));
+		}
+		Zoo goodZooOne = new Zoo(goodAnimalsSet);
+		Zoo goodZooTwo = new Zoo(goodAnimalsSet);
+
+		ZooKeeper zKeeperOne = new ZooKeeper(1, 2, 1234);
+		zKeeperOne.setParallelism(1);
+		ZooKeeper zKeeperTwo = new ZooKeeper(1, 2, 1234);
+		zKeeperTwo.setParallelism(4);
+
+		for (int i = 0; i < 5; i++) {
+			zKeeperOne.simulateOneDay(goodZooOne);
+			zKeeperTwo.simulateOneDay(goodZooTwo);
+		}
+		zKeeperOne.setParallelism(0);
+		zKeeperTwo.setParallelism(0);
+
+		Assert.assertEquals(goodZooOne.getFriendsSet(), goodZooTwo.getFriendsSet());
+		Assert.assertEquals(goodZooOne.getDailyFriendsAdded(), goodZooTwo.getDailyFriendsAdded());
+		Assert.assertEquals(goodZooOne.getDailyFriendsRemoved(), goodZooTwo.getDailyFriendsRemoved());
+	}
+
+	@Test
+	public void parallelDaysWithManyFriendsToGainShouldDrawThemWithoutReplacement() {
+		HashSet<Animal> goodAnimalsSet = new HashSet<Animal>();
+		for (int i = 0; i < 20000; i++) {
+			goodAnimalsSet.add(new Dog("dog" + i, "Food", "Hunting dog"));
+		}
+		Zoo goodZoo = new Zoo(goodAnimalsSet);
+
+		// Above 16 friends to gain, the drawn friends are checked through a
+		// hash set (and not by scanning the whole zoo for each animal)
+		ZooKeeper zKeeper = new ZooKeeper(0, 40, 1234);
+		zKeeper.setParallelism(2);
+		zKeeper.simulateOneDay(goodZoo);
+		zKeeper.setParallelism(0);
+
+		for (Animal anim : goodAnimalsSet) {
+			Assert.assertTrue(goodZoo.getAnimalFirends(anim).size() >= 40);
+		}
+		Assert.assertTrue(goodZoo.getFriendsSet().size() <= (40 * 20000));
+	}
+
+	@Test
+	public void simulatedDaysShouldBeReportedAsFlightRecorderEvents() throws IOException {
+		HashSet<Animal> goodAnimalsSet = new HashSet<Animal>();
+		for (int i = 0; i < 50; i++) {
+			goodAnimalsSet.add(new Dog("dog" + i, "Food", "Hunting dog"));
+		}
+		Zoo goodZoo = new Zoo(goodAnimalsSet);
+		ZooKeeper zKeeper = new ZooKeeper(2, 3, 1234);
+
+		Path recordingFile = Files.createTempFile("zoolife", ".jfr");
+		List<RecordedEvent> events;
+		try {
+			try (Recording recording = new Recording()) {
+				recording.enable("com.zoolife.SimulateDay").withoutThreshold();
+				recording.enable("com.zoolife.SimulationPhase").withoutThreshold();
+				recording.start();
+				for (int i = 0; i < 3; i++) {
+					zKeeper.simulateOneDay(goodZoo);
+				}
+				recording.stop();
+				recording.dump(recordingFile);
+			}
+			events = RecordingFile.readAllEvents(recordingFile);
+		} finally {
+			Files.delete(recordingFile);
+		}
+
+		int daysCount = 0;
+		int phasesCount = 0;
+		for (RecordedEvent event : events) {
+			String eventName = event.getEventType().getName();
+			if (eventName.equals("com.zoolife.SimulateDay")) {
+				daysCount++;
+				Assert.assertEquals(daysCount, event.getInt("day"));
+			} else if (eventName.equals("com.zoolife.SimulationPhase")) {
+				phasesCount++;
+				Assert.assertTrue(event.getString("phase").equals("lose") || event.getString("phase").equals("gain"));
+			} else {
+				continue;
+			}
+			Assert.assertEquals(50, event.getInt("animalCount"));
+			Assert.assertTrue(event.getLong("edgesTouched") > 0);
+		}
+		Assert.assertEquals(3, daysCount);
+		Assert.assertEquals(6, phasesCount);
+	}
+
+	@Test
+	public void simulatingManyDaysShouldKeepTheFriendshipNetworkSymmetric() {
+		HashSet<Animal> goodAnimalsSet = new HashSet<Animal>();
+		for (int i = 0; i < 50; i++) {
+			goodAnimalsSet.add(new Dog("dog" + i, "Food", "Hunting dog"));
+		}
+		Zoo goodZoo = new Zoo(goodAnimalsSet);
+
+		ZooKeeper zKeeper = new ZooKeeper(2, 3, 1234);
+		for (int i = 0; i < 20; i++) {
+			zKeeper.simulateOneDay(goodZoo);
+		}
+
+		for (Animal anim : goodAnimalsSet) {
+			Set<Animal> friends = goodZoo.getAnimalFirends(anim);
+			Assert.assertEquals(friends.size(), goodZoo.getFriendsNumber(anim));
+			Assert.assertFalse(friends.contains(anim));
+			for (Animal friend : friends) {
+				Assert.assertTrue(goodZoo.getAnimalFirends(friend).contains(anim));
+			}
+		}
+	}
+
+	@Test
+	public void simulatingManyDaysShouldNotifyTheListenerOncePerDay() {
+		Dog dog = new Dog("dog", "Food", "Hunting dog");
+		Chicken chicken = new Chicken("chicken", "Food", 0.5f, false);
+		Parrot parrot = new Parrot("parrot", "Food", 0.5f, true);
+
+		HashSet<Animal> goodAnimalsSet = new HashSet<Animal>();
+		goodAnimalsSet.add(dog);
+		goodAnimalsSet.add(chicken);
+		goodAnimalsSet.add(parrot);
+		Zoo goodZooOne = new Zoo(goodAnimalsSet);
+		Zoo goodZooTwo = new Zoo(goodAnimalsSet);
+
+		ZooKeeper zKeeperOne = new ZooKeeper(1, 1, 1234);
+		ZooKeeper zKeeperTwo = new ZooKeeper(1, 1, 1234);
+
+		final int[] notifiedDays = new int[1];
+		zKeeperOne.simulateDays(goodZooOne, 10, zoo -> {
+			notifiedDays[0]++;
+			Assert.assertEquals(notifiedDays[0], zoo.getDayCount());
+		});
+		for (int i = 0; i < 10; i++) {
+			zKeeperTwo.simulateOneDay(goodZooTwo);
+		}
+
+		Assert.assertEquals(10, notifiedDays[0]);
+		Assert.assertEquals(goodZooOne.getFriendsSet(), goodZooTwo.getFriendsSet());
+		Assert.assertEquals(goodZooOne.getDailyFriendsAdded(), goodZooTwo.getDailyFriendsAdded());
+		Assert.assertEquals(goodZooOne.getDailyFriendsRemoved(), goodZooTwo.getDailyFriendsRemoved());
+	}
+
 	@Test
 	public void ZooKeeperShouldSimulateZooLife() {
 		Dog dog = new Dog("dog", "Food", "Hunting dog");
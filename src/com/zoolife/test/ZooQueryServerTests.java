@@ -0,0 +1,139 @@
+package com.zoolife.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zoolife.model.Animal;
+import com.zoolife.model.Loader;
+import com.zoolife.model.Loader.DegreeDistribution;
+import com.zoolife.model.Zoo;
+import com.zoolife.model.ZooKeeper;
+import com.zoolife.model.ZooQueryServer;
+
+/**
+ * Tests of the {@link com.zoolife.model.ZooQueryServer} class
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public class ZooQueryServerTests {
+
+	@Test
+	public void queriesShouldBeAnsweredFromTheLastCompletedDay() throws IOException {
+		Zoo zoo = new Loader().generateZoo(200, 1, 1, 1, DegreeDistribution.UNIFORM, 3, 5);
+		zoo.setSnapshotPublishing(true);
+		new ZooKeeper(2, 2, 5).simulateDays(zoo, 3);
+		// The third day is only published when the fourth one starts
+		Assert.assertEquals(2, zoo.getPublishedSnapshot().getDay());
+		zoo.publishSnapshot();
+
+		try (ZooQueryServer server = new ZooQueryServer(zoo, 0, 2)) {
+			Animal anim = zoo.getAnimalsView().iterator().next();
+			String name = URLEncoder.encode(anim.getName(), StandardCharsets.UTF_8);
+
+			String day = get(server, "/day", 200);
+			Assert.assertTrue(day.startsWith("{\"day\":3,\"animals\":200,"));
+
+			String friends = get(server, "/friends?name=" + name, 200);
+			Assert.assertTrue(friends.startsWith("{\"day\":3,\"name\":\"" + anim.getName() + "\",\"friends\":["));
+			for (Animal friend : zoo.getAnimalFirends(anim)) {
+				Assert.assertTrue(friends.contains("\"" + friend.getName() + "\""));
+			}
+			Assert.assertEquals(zoo.getAnimalFirends(anim).size(), countNames(friends));
+
+			String changes = get(server, "/changes?name=" + name, 200);
+			Assert.assertEquals(zoo.getAnimalFriendsGained(anim).size() + zoo.getAnimalFriendsLost(anim).size(),
+					countNames(changes));
+			String allChanges = get(server, "/changes", 200);
+			Assert.assertEquals(2 * (zoo.getDailyFriendsAdded().size() + zoo.getDailyFriendsRemoved().size()),
+					countNames(allChanges));
+
+			String properties = get(server, "/properties?name=" + name, 200);
+			Assert.assertTrue(properties.contains("\"friendsNumber\":\"" + zoo.getAnimalFirends(anim).size() + "\""));
+
+			get(server, "/friends", 400);
+			get(server, "/friends?name=Nobody", 404);
+			get(server, "/nothing", 404);
+		}
+	}
+
+	@Test
+	public void queriesShouldBeAnsweredWhileTheZooIsSimulated() throws IOException, InterruptedException {
+		Zoo zoo = new Loader().generateZoo(1000, 1, 1, 1, DegreeDistribution.POWER_LAW, 4, 8);
+		zoo.setSnapshotPublishing(true);
+		List<String> names = new ArrayList<String>();
+		for (Animal anim : zoo.getAnimalsView()) {
+			names.add(URLEncoder.encode(anim.getName(), StandardCharsets.UTF_8));
+		}
+		Collections.shuffle(names, new Random(8));
+
+		try (ZooQueryServer server = new ZooQueryServer(zoo, 0, 4)) {
+			AtomicReference<String> clientError = new AtomicReference<String>();
+			Thread client = new Thread(() -> {
+				int lastDay = 0;
+				try {
+					for (int i = 0; i < 200; i++) {
+						String friends = get(server, "/friends?name=" + names.get(i), 200);
+						int day = Integer.parseInt(friends.substring("{\"day\":".length(), friends.indexOf(',')));
+						if (day < lastDay)
+							clientError.set("The day went back from " + lastDay + " to " + day);
+						lastDay = day;
+					}
+				} catch (IOException | AssertionError e) {
+					clientError.set(e.toString());
+				}
+			});
+			client.start();
+			new ZooKeeper(3, 3, 8).simulateDays(zoo, 20);
+			client.join(30000);
+
+			Assert.assertFalse(client.isAlive());
+			Assert.assertNull(clientError.get());
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void servingAZooThatDoesNotPublishSnapshotsShouldRaiseIllegalStateException() throws IOException {
+		Zoo zoo = new Loader().generateZoo(10, 1, 1, 1, DegreeDistribution.UNIFORM, 2, 1);
+		new ZooQueryServer(zoo, 0, 1).close();
+	}
+
+	/*
+	 * Counts the quoted names after the "name" of the answer
+	 */
+	private static int countNames(String json) {
+		int start = json.indexOf(",\"name\":");
+		start = (start < 0) ? json.indexOf(",\"gained\":") : json.indexOf(',', start + 1);
+		int quotes = 0;
+		for (int i = start; i < json.length(); i++) {
+			if (json.charAt(i) == '"')
+				quotes++;
+		}
+		// Two quotes per name, and two per "gained" and "lost" (or "friends")
+		return (quotes / 2) - (json.contains("\"gained\":") ? 2 : 1);
+	}
+
+	private static String get(ZooQueryServer server, String pathAndQuery, int expectedStatus) throws IOException {
+		URL url = new URL("http://localhost:" + server.getPort() + pathAndQuery);
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		Assert.assertEquals(expectedStatus, connection.getResponseCode());
+		try (InputStream in = (expectedStatus == 200) ? connection.getInputStream()
+				: connection.getErrorStream()) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+}
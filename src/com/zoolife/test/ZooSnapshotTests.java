@@ -0,0 +1,115 @@
+package com.zoolife.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zoolife.model.Animal;
+import com.zoolife.model.Dog;
+import com.zoolife.model.Loader;
+import com.zoolife.model.Loader.DegreeDistribution;
+import com.zoolife.model.Zoo;
+import com.zoolife.model.ZooKeeper;
+import com.zoolife.model.ZooSnapshot;
+
+/**
+ * Tests of the {@link com.zoolife.model.ZooSnapshot} class
+ *
+ * @author Tarek Oraby
+ * @version 1.0
+ *
+ */
+
+public class ZooSnapshotTests {
+
+	@Test
+	public void restoredZooShouldBeInTheSameStateAsTheSavedOne() throws IOException {
+		Zoo zoo = new Loader().generateZoo(5000, 1, 1, 1, DegreeDistribution.POWER_LAW, 4, 5);
+		new ZooKeeper(2, 2, 5).simulateDays(zoo, 3);
+		Path file = Files.createTempFile("zoolife", ".snapshot");
+		try {
+			ZooSnapshot.save(zoo, file);
+			Zoo restoredZoo = ZooSnapshot.load(file);
+
+			Assert.assertEquals(zoo.getDayCount(), restoredZoo.getDayCount());
+			Assert.assertEquals(zoo.getZooProperties(), restoredZoo.getZooProperties());
+			Assert.assertEquals(zoo.getFriendsSet(), restoredZoo.getFriendsSet());
+			Assert.assertEquals(zoo.getDailyFriendsAdded(), restoredZoo.getDailyFriendsAdded());
+			Assert.assertEquals(zoo.getDailyFriendsRemoved(), restoredZoo.getDailyFriendsRemoved());
+			for (Animal anim : zoo.getAnimalsSet()) {
+				Assert.assertEquals(zoo.getAnimalFriendsGained(anim), restoredZoo.getAnimalFriendsGained(anim));
+				Assert.assertEquals(zoo.getAnimalFriendsLost(anim), restoredZoo.getAnimalFriendsLost(anim));
+			}
+
+			// Both zoos should evolve identically from here
+			new ZooKeeper(2, 2, 9).simulateDays(zoo, 2);
+			new ZooKeeper(2, 2, 9).simulateDays(restoredZoo, 2);
+			Assert.assertEquals(zoo.getFriendsSet(), restoredZoo.getFriendsSet());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void loadingASnapshotWithAHugeFriendshipCountShouldRaiseIOException() throws IOException {
+		Zoo zoo = new Loader().generateZoo(100, 1, 1, 1, DegreeDistribution.UNIFORM, 4, 5);
+		Path file = Files.createTempFile("zoolife", ".snapshot");
+		try {
+			ZooSnapshot.save(zoo, file);
+			byte[] bytes = Files.readAllBytes(file);
+			// The number of friendships follows the magic, version, animal
+			// count and day count
+			ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putLong(16, 1L << 40);
+			Files.write(file, bytes);
+			ZooSnapshot.load(file);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void loadingASnapshotWhoseDailyChangesContradictTheFriendshipsShouldRaiseIOException()
+			throws IOException {
+		List<Animal> animals = new ArrayList<Animal>();
+		for (int i = 0; i < 3; i++) {
+			animals.add(new Dog("dog" + i, "Food", "Hunting dog"));
+		}
+		Zoo zoo = new Zoo(animals);
+		zoo.incrementDay();
+		zoo.addFirendship(animals.get(0), animals.get(1));
+		Path file = Files.createTempFile("zoolife", ".snapshot");
+		try {
+			ZooSnapshot.save(zoo, file);
+			byte[] bytes = Files.readAllBytes(file);
+			// The gained friendship (the last record) becomes one between
+			// animals 0 and 2, who are not friends
+			ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putLong(bytes.length - Long.BYTES, 2L);
+			Files.write(file, bytes);
+			ZooSnapshot.load(file);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void loadingATruncatedSnapshotShouldRaiseIOException() throws IOException {
+		Zoo zoo = new Loader().generateZoo(100, 1, 1, 1, DegreeDistribution.UNIFORM, 4, 5);
+		Path file = Files.createTempFile("zoolife", ".snapshot");
+		try {
+			ZooSnapshot.save(zoo, file);
+			byte[] bytes = Files.readAllBytes(file);
+			Files.write(file, Arrays.copyOf(bytes, bytes.length - 5));
+			ZooSnapshot.load(file);
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
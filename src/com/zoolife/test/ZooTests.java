@@ -1,7 +1,11 @@
 package com.zoolife.test;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -10,8 +14,11 @@ import com.zoolife.model.Animal;
 import com.zoolife.model.AnimalFriendship;
 import com.zoolife.model.Chicken;
 import com.zoolife.model.Dog;
+import com.zoolife.model.Loader;
+import com.zoolife.model.Loader.DegreeDistribution;
 import com.zoolife.model.Parrot;
 import com.zoolife.model.Zoo;
+import com.zoolife.model.ZooKeeper;
 
 /**
  * Tests of the {@link com.zoolife.model.Zoo} class
@@ -32,6 +39,15 @@ public class ZooTests {
 		new Zoo(badAnimalsSet);
 	}
 
+	@Test(expected = IllegalArgumentException.class)
+	public void constructingZooWithTheSameAnimalTwiceShouldRaiseIllegalArgumentException() {
+		List<Animal> animals = new ArrayList<Animal>();
+		animals.add(new Dog("dog1", "Food", "Hunting dog"));
+		animals.add(new Dog("dog2", "Food", "Hunting dog"));
+		animals.add(new Dog("dog1", "Food", "Hunting dog"));
+		new Zoo(animals);
+	}
+
 	@Test
 	public void constructingZooWithGoodAnimalSetShouldNotRaiseException() {
 		Dog dog = new Dog("dog", "Food", "Hunting dog");
@@ -68,6 +84,98 @@ public class ZooTests {
 		Assert.assertEquals(isOneFriendWithTwo, isTwoFriendWithOne);
 	}
 
+	@Test
+	public void friendLookupsShouldReflectAddedAndRemovedFriendships() {
+		Dog dog = new Dog("dog", "Food", "Hunting dog");
+		Chicken chicken = new Chicken("chicken", "Food", 0.5f, false);
+		Parrot parrot = new Parrot("parrot", "Food", 0.5f, true);
+
+		HashSet<Animal> goodAnimalsSet = new HashSet<Animal>();
+		goodAnimalsSet.add(dog);
+		goodAnimalsSet.add(chicken);
+		goodAnimalsSet.add(parrot);
+		Zoo goodZoo = new Zoo(goodAnimalsSet);
+
+		goodZoo.incrementDay();
+		goodZoo.addFirendship(dog, chicken);
+		goodZoo.addFirendship(dog, parrot);
+		goodZoo.incrementDay();
+		goodZoo.removeFirendship(dog, chicken);
+		goodZoo.addFirendship(chicken, parrot);
+
+		Assert.assertEquals(1, goodZoo.getFriendsNumber(dog));
+		Assert.assertEquals("chicken, dog", goodZoo.getFriendsNames(parrot));
+		Assert.assertTrue(goodZoo.getAnimalFirends(dog).contains(parrot));
+		Assert.assertTrue(goodZoo.getAnimalFriendsLost(chicken).contains(dog));
+		Assert.assertTrue(goodZoo.getAnimalFriendsGained(parrot).contains(chicken));
+		Assert.assertTrue(goodZoo.getAnimalFriendsGained(dog).isEmpty());
+	}
+
+	@Test
+	public void zooPropertiesShouldReflectFriendshipChangesAndBeCopies() {
+		Dog dog = new Dog("dog", "Food", "Hunting dog");
+		Chicken chicken = new Chicken("chicken", "Food", 0.5f, false);
+		Parrot parrot = new Parrot("parrot", "Food", 0.5f, true);
+
+		HashSet<Animal> goodAnimalsSet = new HashSet<Animal>();
+		goodAnimalsSet.add(dog);
+		goodAnimalsSet.add(chicken);
+		goodAnimalsSet.add(parrot);
+		Zoo goodZoo = new Zoo(goodAnimalsSet);
+
+		goodZoo.incrementDay();
+		goodZoo.addFirendship(dog, chicken);
+		TreeMap<String, TreeMap<String, String>> zooProperties = goodZoo.getZooProperties();
+		Assert.assertEquals("chicken", zooProperties.get("dog").get("friends"));
+		Assert.assertEquals("0", zooProperties.get("parrot").get("friendsNumber"));
+		zooProperties.get("dog").put("friends", "nobody");
+		zooProperties.remove("chicken");
+
+		goodZoo.addFirendship(dog, parrot);
+		zooProperties = goodZoo.getZooProperties();
+		Assert.assertEquals(3, zooProperties.size());
+		Assert.assertEquals("chicken, parrot", zooProperties.get("dog").get("friends"));
+		Assert.assertEquals("2", zooProperties.get("dog").get("friendsNumber"));
+		Assert.assertEquals("dog", zooProperties.get("chicken").get("friends"));
+		Assert.assertEquals("1", zooProperties.get("parrot").get("friendsNumber"));
+		Assert.assertEquals("true", zooProperties.get("parrot").get("canSpeak"));
+	}
+
+	@Test
+	public void readOnlyViewsShouldMatchTheCopiesAndFollowTheZoo() {
+		Zoo zoo = new Loader().generateZoo(3000, 1, 1, 1, DegreeDistribution.UNIFORM, 6, 21);
+		ZooKeeper zKeeper = new ZooKeeper(2, 2, 21);
+		zKeeper.simulateOneDay(zoo);
+
+		Set<AnimalFriendship> friendsView = zoo.getFriendsView();
+		Set<AnimalFriendship> dailyFriendsRemovedView = zoo.getDailyFriendsRemovedView();
+		Assert.assertEquals(zoo.getAnimalsSet(), zoo.getAnimalsView());
+		Assert.assertEquals(zoo.getFriendsSet(), friendsView);
+		Assert.assertEquals(zoo.getDailyFriendsAdded(), zoo.getDailyFriendsAddedView());
+		Assert.assertEquals(zoo.getDailyFriendsRemoved(), dailyFriendsRemovedView);
+
+		// The views follow the zoo, and split well enough for parallel streams
+		zKeeper.simulateOneDay(zoo);
+		Assert.assertEquals(zoo.getFriendsSet(), friendsView);
+		Assert.assertEquals(zoo.getDailyFriendsRemoved(), dailyFriendsRemovedView);
+		Assert.assertEquals(zoo.getFriendsSet(), friendsView.parallelStream().collect(Collectors.toSet()));
+		Assert.assertEquals(friendsView.size(), friendsView.parallelStream().count());
+		Assert.assertEquals(zoo.getAnimalsSet(),
+				zoo.getAnimalsView().parallelStream().collect(Collectors.toSet()));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void modifyingAReadOnlyViewShouldRaiseUnsupportedOperationException() {
+		Dog dog = new Dog("dog", "Food", "Hunting dog");
+		Chicken chicken = new Chicken("chicken", "Food", 0.5f, false);
+
+		HashSet<Animal> goodAnimalsSet = new HashSet<Animal>();
+		goodAnimalsSet.add(dog);
+		goodAnimalsSet.add(chicken);
+		Zoo goodZoo = new Zoo(goodAnimalsSet);
+		goodZoo.getFriendsView().add(new AnimalFriendship(dog, chicken));
+	}
+
 	@Test
 	public void zooShouldBeAbleToAddandRemoveFriends() {
 		Dog dog = new Dog("dog", "Food", "Hunting dog");
@@ -91,6 +199,60 @@ public class ZooTests {
 		Assert.assertEquals(friendshipsNum, 2);
 	}
 
+	@Test
+	public void removingOrCheckingTheFriendshipOfAnAnimalWithItselfShouldRaiseIllegalArgumentException() {
+		Zoo zoo = new Loader().generateZoo(10, 1, 1, 1, DegreeDistribution.UNIFORM, 2, 3);
+		zoo.incrementDay();
+		// The animal with id 0, whose friendship with itself packs to 0
+		Animal anim = zoo.getAnimalsView().iterator().next();
+		int friendsNumber = zoo.getAnimalFirends(anim).size();
+		Set<AnimalFriendship> friendships = zoo.getFriendsSet();
+
+		try {
+			zoo.removeFirendship(anim, anim);
+			Assert.fail("Removing the friendship of an animal with itself should fail");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			zoo.areFriends(anim, anim);
+			Assert.fail("Checking the friendship of an animal with itself should fail");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		Assert.assertEquals(friendsNumber, zoo.getAnimalFirends(anim).size());
+		Assert.assertEquals(friendships, zoo.getFriendsSet());
+	}
+
+	@Test
+	public void friendshipsRemovedAndAddedBackOnTheSameDayShouldNotCountAsDailyChanges() {
+		Dog dog = new Dog("dog", "Food", "Hunting dog");
+		Chicken chicken = new Chicken("chicken", "Food", 0.5f, false);
+		Parrot parrot = new Parrot("parrot", "Food", 0.5f, true);
+
+		HashSet<Animal> goodAnimalsSet = new HashSet<Animal>();
+		goodAnimalsSet.add(dog);
+		goodAnimalsSet.add(chicken);
+		goodAnimalsSet.add(parrot);
+		Zoo goodZoo = new Zoo(goodAnimalsSet);
+		goodZoo.incrementDay();
+		goodZoo.addFirendship(dog, chicken);
+		goodZoo.incrementDay();
+		goodZoo.removeFirendship(dog, chicken);
+		goodZoo.addFirendship(dog, chicken);
+		goodZoo.addFirendship(dog, parrot);
+		goodZoo.removeFirendship(dog, parrot);
+
+		Assert.assertTrue(goodZoo.getDailyFriendsAdded().isEmpty());
+		Assert.assertTrue(goodZoo.getDailyFriendsRemoved().isEmpty());
+
+		goodZoo.incrementDay();
+		goodZoo.removeFirendship(dog, chicken);
+
+		Assert.assertTrue(goodZoo.getDailyFriendsAdded().isEmpty());
+		Assert.assertTrue(goodZoo.getDailyFriendsRemoved().contains(new AnimalFriendship(chicken, dog)));
+	}
+
 	@Test
 	public void zooShouldBeAbleToUpdateDailyFriendsipsSets() {
 		Dog dog = new Dog("dog", "Food", "Hunting dog");
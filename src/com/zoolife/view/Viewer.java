@@ -3,7 +3,15 @@
  */
 package com.zoolife.view;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
@@ -15,6 +23,12 @@ import com.zoolife.model.Zoo;
 
 /**
  * The Viewer class
+ * <p>
+ * All output goes to a sink (the standard output by default) through a large
+ * buffer, which is flushed once at the end of each display method rather than
+ * after every line. If the sink cannot be written (e.g. a closed pipe or a full
+ * disk), the display method that flushes the buffer throws an
+ * UncheckedIOException.
  *
  * @author Tarek Oraby
  * @version 1.0
@@ -22,93 +36,207 @@ import com.zoolife.model.Zoo;
  */
 public final class Viewer {
 
-	public void displayAfterInput() {
-		System.out.println();
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private PrintWriter out; // The buffered sink
+
+	/**
+	 * Creates a viewer that writes to the standard output
+	 */
+	public Viewer() {
+		this(System.out);
+	}
+
+	/**
+	 * @param sink
+	 *            the stream to write to (in the platform's default charset)
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the sink
+	 */
+	public Viewer(OutputStream sink) {
+		this(new OutputStreamWriter(checkSink(sink)));
+	}
+
+	/**
+	 * @param sink
+	 *            the writer to write to
+	 *
+	 * @throws NullPointerException
+	 *             if a null object was passed as the sink
+	 */
+	public Viewer(Writer sink) {
+		this.out = new PrintWriter(new BufferedWriter(checkSink(sink), BUFFER_SIZE));
+	}
 
+	public void displayAfterInput() {
+		this.out.println();
+		flush();
 	}
 
 	public void displayAppIntro() {
-		System.out.println("\n\n***** ZOOLIFE: A simulator of life in the zoo *****");
-		System.out.println("Version: 1.0\n");
-		System.out.println("--> Description:");
-		System.out.println("This application simulates life among a number of zoo animals.");
-		System.out.println("Each animal can have several friends among other animals from the zoo."
+		this.out.println("\n\n***** ZOOLIFE: A simulator of life in the zoo *****");
+		this.out.println("Version: 1.0\n");
+		this.out.println("--> Description:");
+		this.out.println("This application simulates life among a number of zoo animals.");
+		this.out.println("Each animal can have several friends among other animals from the zoo."
 				+ "\nEvery day each animal randomly loses one friend (if there are any) and gets from zero to one new friend."
 				+ "\nIf A is a friend of B then B is a friend of A automatically. At the beginning: nobody has friends.\n");
+		flush();
 	}
 
 	public void displayExitConfirmationMsg() {
-		System.out.println("Are you sure you want to quit? [y/n]");
-
+		this.out.println("Are you sure you want to quit? [y/n]");
+		flush();
 	}
 
 	public void displayExitWarningMsg() {
-		System.out.println("Any simulated zoo life will be lost forever ... ");
-
+		this.out.println("Any simulated zoo life will be lost forever ... ");
+		flush();
 	}
 
 	public void displayGoodbyeMsg() {
-		System.out.println("\nZooLife is now Terminated. Adios!");
+		this.out.println("\nZooLife is now Terminated. Adios!");
+		flush();
+	}
 
+	/**
+	 * Displays how long the parts of a headless run took
+	 *
+	 * @param zoo
+	 *            the simulated zoo
+	 * @param days
+	 *            the number of simulated days
+	 * @param simulationNanos
+	 *            the time spent simulating
+	 * @param exportNanos
+	 *            the time spent exporting the results
+	 * @param snapshotNanos
+	 *            the time spent saving snapshots
+	 * @param snapshotsCount
+	 *            the number of saved snapshots
+	 */
+	public void displayHeadlessSummary(Zoo zoo, int days, long simulationNanos, long exportNanos,
+			long snapshotNanos, int snapshotsCount) {
+		this.out.println("Simulated " + days + " days of a zoo of " + zoo.getAnimalsNumber() + " animals in "
+				+ toMillis(simulationNanos) + " ms (" + toMillis(simulationNanos / Math.max(1, days))
+				+ " ms per day)");
+		this.out.println("Exported the results in " + toMillis(exportNanos) + " ms");
+		this.out.println("Saved " + snapshotsCount + " snapshots in " + toMillis(snapshotNanos) + " ms");
+		this.out.println("The zoo is now at day no. " + zoo.getDayCount());
+		flush();
 	}
 
 	public void displayInvalidInputEnteredMsg(String userInput) {
-		System.out.println("Sorry! I don't understand ... \n" + "You entered \"" + userInput
+		this.out.println("Sorry! I don't understand ... \n" + "You entered \"" + userInput
 				+ "\", which is not a valid input.\n");
+		flush();
+	}
 
+	/**
+	 * Displays the warnings about the malformed records of a loaded file
+	 *
+	 * @param loadWarnings
+	 *            the warnings, as returned by Loader.getLoadWarnings()
+	 * @param malformedRecordsCount
+	 *            the total number of malformed records
+	 */
+	public void displayLoadWarnings(List<String> loadWarnings, int malformedRecordsCount) {
+		if (malformedRecordsCount == 0)
+			return;
+		this.out.println(malformedRecordsCount + " malformed records were skipped:");
+		for (String warning : loadWarnings) {
+			this.out.println("-> " + warning);
+		}
+		if (malformedRecordsCount > loadWarnings.size())
+			this.out.println("-> ... (" + (malformedRecordsCount - loadWarnings.size()) + " more)");
+		flush();
 	}
 
 	public void displayRepeatedString(String strToRepeat, int numRepetitions) {
-		System.out.println(new String(new char[numRepetitions]).replace("\0", strToRepeat));
-
+		printRepeatedString(strToRepeat, numRepetitions);
+		flush();
 	}
 
 	public void displaySimulationResults(Zoo zoo) {
-		System.out.print("and its done!\n");
+		this.out.print("and its done!\n");
 		displayRandomIntroMessage();
 
-		Set<AnimalFriendship> dailyFriendsAdded = zoo.getDailyFriendsAdded();
+		Set<AnimalFriendship> dailyFriendsAdded = zoo.getDailyFriendsAddedView();
 		if ((dailyFriendsAdded.size() == 0) || (dailyFriendsAdded == null)) {
-			System.out.println("\nThere were no new friendships today!");
+			this.out.println("\nThere were no new friendships today!");
 		} else {
-			System.out.println("\nThe following animals became friends:");
+			this.out.println("\nThe following animals became friends:");
 			for (AnimalFriendship newFriendship : dailyFriendsAdded) {
 				Iterator<Animal> itr = newFriendship.getIterator();
-				System.out.println("-> " + itr.next().getName() + " and " + itr.next().getName());
+				this.out.println("-> " + itr.next().getName() + " and " + itr.next().getName());
 			}
 		}
 
-		Set<AnimalFriendship> dailyFriendsRemoved = zoo.getDailyFriendsRemoved();
+		Set<AnimalFriendship> dailyFriendsRemoved = zoo.getDailyFriendsRemovedView();
 		if (dailyFriendsRemoved.size() == 0) {
-			System.out.println("\nAnd happily, no animal lost a friend toady!");
+			this.out.println("\nAnd happily, no animal lost a friend toady!");
 		} else {
-			System.out.println("\nSadly, the following animals broke up:");
-			for (AnimalFriendship lostFriendship : zoo.getDailyFriendsRemoved()) {
+			this.out.println("\nSadly, the following animals broke up:");
+			for (AnimalFriendship lostFriendship : dailyFriendsRemoved) {
 				Iterator<Animal> itr = lostFriendship.getIterator();
-				System.out.println("-> " + itr.next().getName() + " and " + itr.next().getName());
+				this.out.println("-> " + itr.next().getName() + " and " + itr.next().getName());
 			}
 		}
+		flush();
 	}
 
 	public void displaySimulationStartingMessage(Zoo zoo) {
-		displayRepeatedString("-", 60);
-		System.out.print("\nSimulation of day no. " + (zoo.getDayCount() + 1) + " is now beginnig ... ");
+		printRepeatedString("-", 60);
+		this.out.print("\nSimulation of day no. " + (zoo.getDayCount() + 1) + " is now beginnig ... ");
+		flush();
 	}
 
 	public void displayVaildInputs() {
-		System.out.println("--> Usage:");
-		System.out.println("\t.D or d: \tDisplays all zoo animals with their properties and friends' names.");
-		System.out.println("\t.S or s: \tSimulates one day in the zoo and displays what happened on that day");
-		System.out.println("\t.Q or q: \tExits ZooLife\n");
+		this.out.println("--> Usage:");
+		this.out.println("\t.D or d: \tDisplays all zoo animals with their properties and friends' names.");
+		this.out.println("\t.S or s: \tSimulates one day in the zoo and displays what happened on that day");
+		this.out.println("\t.Q or q: \tExits ZooLife\n");
+		flush();
+	}
+
+	/**
+	 * Displays the properties of all the zoo animals, streaming them from the
+	 * zoo one animal at a time
+	 *
+	 * @param zoo
+	 *            the zoo to display
+	 */
+	public void displayZooProperties(Zoo zoo) {
+		displayZooProperties(zoo.getAnimalsNumber(), zoo.getZooPropertiesIterator());
 	}
 
+	/**
+	 * Displays the properties of the zoo animals, as returned by
+	 * Zoo.getZooProperties()
+	 *
+	 * @param treeMap
+	 *            the properties of each animal by name
+	 */
 	public void displayZooProperties(TreeMap<String, TreeMap<String, String>> treeMap) {
-		displayRepeatedString("-", 80);
-		System.out.print("\nThe zoo has " + treeMap.size() + " animals:\n\n");
+		displayZooProperties(treeMap.size(), treeMap.values().iterator());
+	}
 
-		for (Map.Entry<String, TreeMap<String, String>> entry : treeMap.entrySet()) {
-			entry.getKey();
-			TreeMap<String, String> animalEntryValue = entry.getValue();
+	/**
+	 * Displays the properties of the zoo animals one at a time, in the order
+	 * in which the iterator returns them
+	 *
+	 * @param animalsNumber
+	 *            the number of animals
+	 * @param animalsProperties
+	 *            the properties of each animal
+	 */
+	public void displayZooProperties(int animalsNumber, Iterator<? extends Map<String, String>> animalsProperties) {
+		printRepeatedString("-", 80);
+		this.out.print("\nThe zoo has " + animalsNumber + " animals:\n\n");
+
+		while (animalsProperties.hasNext()) {
+			Map<String, String> animalEntryValue = animalsProperties.next();
 
 			String animalName = animalEntryValue.get("name");
 			String animalSpecies = animalEntryValue.get("species");
@@ -116,36 +244,43 @@ public final class Viewer {
 			String animalFriends = animalEntryValue.get("friends");
 			int animalFriendsNumber = Integer.parseInt(animalEntryValue.get("friendsNumber"));
 
-			System.out.print("-> " + animalName + " ");
+			this.out.print("-> " + animalName + " ");
 			switch (animalSpecies) {
 			case "dog":
 				String dogType = animalEntryValue.get("dogType");
-				System.out.print("is " + (checkIfBeginsWithVowel(dogType) ? "an" : "a") + " " + dogType.toLowerCase());
-				System.out.print(" whose favorite food is " + animalFavfood.toLowerCase() + ".\n");
-				System.out.print(animalName + " ");
+				this.out.print("is " + (checkIfBeginsWithVowel(dogType) ? "an" : "a") + " " + dogType.toLowerCase());
+				this.out.print(" whose favorite food is " + animalFavfood.toLowerCase() + ".\n");
+				this.out.print(animalName + " ");
 				displayAnimalsFriendships(animalFriendsNumber, animalFriends);
-				System.out.print("\n\n");
+				this.out.print("\n\n");
 				break;
 			case "chicken":
 				boolean isBroiler = Boolean.parseBoolean(animalEntryValue.get("isBroiler"));
-				System.out.print("is a " + (isBroiler ? "broiler" : "non-broiler") + " chicken.");
-				System.out.print(" Its favorite food is " + animalFavfood.toLowerCase());
-				System.out.print(", and its wingspan is " + animalEntryValue.get("wingspan") + ".\n");
-				System.out.print(animalName + " ");
+				this.out.print("is a " + (isBroiler ? "broiler" : "non-broiler") + " chicken.");
+				this.out.print(" Its favorite food is " + animalFavfood.toLowerCase());
+				this.out.print(", and its wingspan is " + animalEntryValue.get("wingspan") + ".\n");
+				this.out.print(animalName + " ");
 				displayAnimalsFriendships(animalFriendsNumber, animalFriends);
-				System.out.print("\n\n");
+				this.out.print("\n\n");
 				break;
 			case "parrot":
 				boolean canSpeak = Boolean.parseBoolean(animalEntryValue.get("canSpeak"));
-				System.out.print("is a " + (canSpeak ? "speaking" : "non-speaking") + " parrot.");
-				System.out.print(" Its favorite food is " + animalFavfood.toLowerCase());
-				System.out.print(", and its wingspan is " + animalEntryValue.get("wingspan") + ".\n");
-				System.out.print(animalName + " ");
+				this.out.print("is a " + (canSpeak ? "speaking" : "non-speaking") + " parrot.");
+				this.out.print(" Its favorite food is " + animalFavfood.toLowerCase());
+				this.out.print(", and its wingspan is " + animalEntryValue.get("wingspan") + ".\n");
+				this.out.print(animalName + " ");
 				displayAnimalsFriendships(animalFriendsNumber, animalFriends);
-				System.out.print("\n\n");
+				this.out.print("\n\n");
 				break;
 			}
 		}
+		flush();
+	}
+
+	private static <T> T checkSink(T sink) {
+		if (sink == null)
+			throw new NullPointerException("A null object was passed as the viewer's sink!");
+		return sink;
 	}
 
 	private boolean checkIfBeginsWithVowel(String str) {
@@ -157,43 +292,61 @@ public final class Viewer {
 	private void displayAnimalsFriendships(int animalFriendsNumber, String animalFriends) {
 
 		if (animalFriendsNumber == 0) {
-			System.out.print("has no friends.");
+			this.out.print("has no friends.");
 			return;
 		}
 
-		System.out.print("is friends with ");
+		this.out.print("is friends with ");
 		switch (animalFriendsNumber) {
 		case 1:
-			System.out.print(animalFriends + ".");
+			this.out.print(animalFriends + ".");
 			break;
 		case 2:
-			System.out.print(animalFriends.replace(",", " and"));
+			this.out.print(animalFriends.replace(",", " and"));
 			break;
 		default:
 			int lastCommaInd = animalFriends.lastIndexOf(",");
 			String animalFriendsEdited = animalFriends.substring(0, lastCommaInd) + ", and"
 					+ animalFriends.substring(lastCommaInd + 1);
-			System.out.print(animalFriendsEdited + ".");
+			this.out.print(animalFriendsEdited + ".");
 			break;
 		}
 
 	}
 
+	/*
+	 * A PrintWriter swallows the errors of its sink, so they are checked for
+	 * after each flush
+	 */
+	private void flush() {
+		this.out.flush();
+		if (this.out.checkError())
+			throw new UncheckedIOException(new IOException("Cannot write the output of ZooLife!"));
+	}
+
+	private void printRepeatedString(String strToRepeat, int numRepetitions) {
+		this.out.println(new String(new char[numRepetitions]).replace("\0", strToRepeat));
+	}
+
+	private static String toMillis(long nanos) {
+		return String.format("%.1f", nanos / 1e6);
+	}
+
 	private void displayRandomIntroMessage() {
 		Random randomGenerator = new Random();
 		int randomInt = randomGenerator.nextInt(4);
 		switch (randomInt) {
 		case 0:
-			System.out.println("A lot has happened today.");
+			this.out.println("A lot has happened today.");
 			break;
 		case 1:
-			System.out.println("What a day!");
+			this.out.println("What a day!");
 			break;
 		case 2:
-			System.out.println("The animals were busy today.");
+			this.out.println("The animals were busy today.");
 			break;
 		case 3:
-			System.out.println("The zoo keeper was busy toady.");
+			this.out.println("The zoo keeper was busy toady.");
 			break;
 		}
 